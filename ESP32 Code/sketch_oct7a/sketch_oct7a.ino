@@ -20,6 +20,51 @@ bool wasConnected = false;
 unsigned long lastReconnectAttempt = 0;
 const unsigned long RECONNECT_INTERVAL = 3000; // Try to reconnect every 3 seconds
 
+// Binary protocol, mirrors WearableProtocol in the app:
+//   0xA5 | version | type | sequence (u16) | millis (u32) | payload length | payload | CRC-8
+// little-endian, CRC-8 (poly 0x07, init 0) over everything after the magic byte.
+// The app opens every connection with HELLO; until it does, presses go out as text lines,
+// so an app that predates the binary protocol keeps working.
+const uint8_t FRAME_MAGIC = 0xA5;
+const uint8_t PROTOCOL_VERSION = 1;
+const uint8_t TYPE_PRESS = 0x01;
+const uint8_t TYPE_TRIPLE_PRESS = 0x02;
+const uint8_t TYPE_HELLO = 0x03;
+const uint8_t TYPE_ACK = 0x04;
+const int HEADER_SIZE = 10;
+const int MAX_PAYLOAD = 16;
+const int MAX_FRAME_SIZE = HEADER_SIZE + MAX_PAYLOAD + 1;
+
+volatile bool binaryMode = false;    // The app said HELLO on this connection
+volatile bool linkReset = false;     // Set by the BT callback, handled in loop()
+uint32_t bootNonce = 0;              // Tells the app a reboot restarted the sequence numbers
+uint16_t nextSequence = 0;
+
+// Frames not yet acknowledged: sent and waiting for an ACK, or pressed while out of range and
+// waiting for the next HELLO. Each keeps the millis() of the press, so the app judges a replayed
+// burst by when it happened rather than when it arrived.
+struct PendingFrame {
+  bool used;
+  uint8_t type;
+  uint16_t sequence;
+  uint32_t timeMs;
+  unsigned long lastSentMs;
+};
+const int PENDING_CAPACITY = 16;     // Five whole bursts; the oldest frame goes first when full
+const unsigned long RETRANSMIT_INTERVAL_MS = 1000;
+PendingFrame pending[PENDING_CAPACITY];
+int pendingHead = 0;                 // Next slot to fill; also the oldest once full
+
+uint8_t rxFrame[MAX_FRAME_SIZE];
+int rxLength = 0;
+
+// Non-blocking LED pattern; while one runs it owns the LED and updateLedStatus() stands aside
+int patternBlinksLeft = 0;
+unsigned long patternOnMs = 0;
+unsigned long patternOffMs = 0;
+unsigned long patternStepAt = 0;
+bool patternLedOn = false;
+
 // Button press variables
 int pressCount = 0;
 unsigned long windowStartMs = 0;
@@ -32,11 +77,14 @@ static void btCallback(esp_spp_cb_event_t event, esp_spp_cb_param_t *param) {
     case ESP_SPP_SRV_OPEN_EVT: // Client connected
       btConnected = true;
       wasConnected = true;
+      binaryMode = false;
+      linkReset = true;
       Serial.println("Android device connected");
       break;
 
     case ESP_SPP_CLOSE_EVT: // Client disconnected
       btConnected = false;
+      binaryMode = false;
       Serial.println("Android device disconnected - will attempt to reconnect");
       lastReconnectAttempt = millis(); // Start reconnect timer
       break;
@@ -71,6 +119,8 @@ void setup() {
 
   SerialBT.setTimeout(100); // Read timeout
 
+  bootNonce = esp_random();
+
   Serial.println("Bluetooth SPP started. Device name: ESP32_SheGuard");
   Serial.println("Pair and connect from your Android app");
   Serial.println("Auto-reconnect is enabled");
@@ -78,9 +128,12 @@ void setup() {
 
 void loop() {
   handleConnection();    // Manage Bluetooth connection
+  handleIncoming();      // HELLO and ACKs from the app
+  retransmitPending();   // Resend frames the app hasn't acknowledged
   updateLedStatus();     // Update LED based on connection state
   handleButton();        // Check for button presses
 
+  // Loop tick; nothing above blocks, so a press is never more than this late to be seen
   delay(10);
 }
 
@@ -110,11 +163,7 @@ void attemptReconnect() {
   if (!SerialBT.connected()) {
     Serial.println("Advertising for connections...");
     // Blink to indicate reconnect attempt
-    digitalWrite(blueLedPin, HIGH);
-    delay(100);
-    digitalWrite(blueLedPin, LOW);
-    delay(100);
-    digitalWrite(blueLedPin, HIGH);
+    startLedPattern(1, 100, 100);
   }
 }
 
@@ -123,6 +172,10 @@ void updateLedStatus() {
   static bool ledState = HIGH;
   unsigned long currentTime = millis();
 
+  if (runLedPattern()) {
+    return;
+  }
+
   if (btConnected) {
     // When connected - LED is OFF
     digitalWrite(blueLedPin, LOW);
@@ -175,17 +228,15 @@ void handleButton() {
 void onButtonClick() {
   unsigned long now = millis();
 
-  // Send a short newline-terminated message per press to avoid coalescing in Android
+  // One frame per press, so the app can count them itself. Out of range, the press is kept
+  // and replayed once the app is back.
+  sendEvent(TYPE_PRESS);
   if (btConnected) {
-    SerialBT.println("P");  // distinct frame for each press
-    SerialBT.flush();
     Serial.println("Sent button press to app");
   } else {
-    Serial.println("Button pressed but no connection");
+    Serial.println("Button pressed but no connection - queued");
     // Visual feedback for button press without connection
-    digitalWrite(blueLedPin, HIGH);
-    delay(50);
-    digitalWrite(blueLedPin, LOW);
+    startLedPattern(1, 50, 0);
   }
 
   if (now - windowStartMs > MULTI_PRESS_WINDOW_MS) {
@@ -198,37 +249,177 @@ void onButtonClick() {
     pressCount = 0;
     windowStartMs = 0;
 
-    // Send exact trigger the Android app listens for
+    // Only apps on the text protocol wait for this line. A binary app counts the PRESS frames
+    // itself, and a burst frame on top of them would be counted a second time.
+    if (btConnected && !binaryMode) {
+      sendEvent(TYPE_TRIPLE_PRESS);
+    }
     if (btConnected) {
-      SerialBT.println("TRIPLE_PRESS_ACTION"); // exact payload expected by app
-      SerialBT.flush();
       Serial.println("Sent TRIPLE_PRESS_ACTION - SOS Triggered!");
-
       // Visual confirmation
-      for (int i = 0; i < 3; i++) {
-        digitalWrite(blueLedPin, HIGH);
-        delay(100);
-        digitalWrite(blueLedPin, LOW);
-        delay(100);
-      }
+      startLedPattern(3, 100, 100);
     } else {
-      Serial.println("Triple press detected, but no Bluetooth connection.");
+      Serial.println("Triple press detected, but no Bluetooth connection - queued");
       // Error pattern
-      for (int i = 0; i < 5; i++) {
-        digitalWrite(blueLedPin, HIGH);
-        delay(50);
-        digitalWrite(blueLedPin, LOW);
-        delay(50);
-      }
+      startLedPattern(5, 50, 50);
     }
   }
 }
 
-void blinkLed(int times, int delayMs) {
-  for (int i = 0; i < times; i++) {
-    digitalWrite(blueLedPin, HIGH);
-    delay(delayMs);
+void startLedPattern(int blinks, unsigned long onMs, unsigned long offMs) {
+  patternBlinksLeft = blinks;
+  patternOnMs = onMs;
+  patternOffMs = offMs;
+  patternLedOn = false;
+  patternStepAt = millis();
+}
+
+// Advances the running pattern, if any; returns whether it still owns the LED
+bool runLedPattern() {
+  if (patternBlinksLeft == 0 && !patternLedOn) {
+    return false;
+  }
+  unsigned long now = millis();
+  if ((long) (now - patternStepAt) < 0) {
+    return true;
+  }
+  if (patternLedOn) {
     digitalWrite(blueLedPin, LOW);
-    delay(delayMs);
+    patternLedOn = false;
+    patternStepAt = now + patternOffMs;
+  } else if (patternBlinksLeft > 0) {
+    digitalWrite(blueLedPin, HIGH);
+    patternLedOn = true;
+    patternBlinksLeft--;
+    patternStepAt = now + patternOnMs;
+  }
+  return patternBlinksLeft > 0 || patternLedOn || (long) (now - patternStepAt) < 0;
+}
+
+uint8_t crc8(const uint8_t *data, int length) {
+  uint8_t crc = 0;
+  for (int i = 0; i < length; i++) {
+    crc ^= data[i];
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x80) ? (uint8_t)((crc << 1) ^ 0x07) : (uint8_t)(crc << 1);
+    }
+  }
+  return crc;
+}
+
+void sendFrame(uint8_t type, uint16_t sequence, uint32_t timeMs, const uint8_t *payload, uint8_t payloadLength) {
+  uint8_t frame[MAX_FRAME_SIZE];
+  frame[0] = FRAME_MAGIC;
+  frame[1] = PROTOCOL_VERSION;
+  frame[2] = type;
+  frame[3] = sequence & 0xFF;
+  frame[4] = sequence >> 8;
+  frame[5] = timeMs & 0xFF;
+  frame[6] = (timeMs >> 8) & 0xFF;
+  frame[7] = (timeMs >> 16) & 0xFF;
+  frame[8] = timeMs >> 24;
+  frame[9] = payloadLength;
+  if (payloadLength > 0) {
+    memcpy(frame + HEADER_SIZE, payload, payloadLength);
   }
-}
\ No newline at end of file
+  frame[HEADER_SIZE + payloadLength] = crc8(frame + 1, HEADER_SIZE + payloadLength - 1);
+  SerialBT.write(frame, HEADER_SIZE + payloadLength + 1);
+  SerialBT.flush();
+}
+
+void sendEvent(uint8_t type) {
+  if (btConnected && !binaryMode) {
+    // Text protocol for apps that never said HELLO
+    SerialBT.println(type == TYPE_TRIPLE_PRESS ? "TRIPLE_PRESS_ACTION" : "P");
+    SerialBT.flush();
+    return;
+  }
+
+  PendingFrame &slot = pending[pendingHead];
+  if (slot.used) {
+    Serial.printf("Pending queue full, dropping frame %u\n", slot.sequence);
+  }
+  slot.used = true;
+  slot.type = type;
+  slot.sequence = nextSequence++;
+  slot.timeMs = millis();
+  slot.lastSentMs = millis();
+  pendingHead = (pendingHead + 1) % PENDING_CAPACITY;
+  if (binaryMode) {
+    sendFrame(slot.type, slot.sequence, slot.timeMs, NULL, 0);
+  }
+}
+
+void retransmitPending() {
+  if (!binaryMode) {
+    return;
+  }
+  unsigned long now = millis();
+  // Oldest first, so the app sees presses in the order they happened
+  for (int i = 0; i < PENDING_CAPACITY; i++) {
+    PendingFrame &slot = pending[(pendingHead + i) % PENDING_CAPACITY];
+    if (slot.used && now - slot.lastSentMs >= RETRANSMIT_INTERVAL_MS) {
+      sendFrame(slot.type, slot.sequence, slot.timeMs, NULL, 0);
+      slot.lastSentMs = now;
+    }
+  }
+}
+
+void handleIncoming() {
+  if (linkReset) {
+    linkReset = false;
+    rxLength = 0;
+  }
+  while (SerialBT.available()) {
+    int b = SerialBT.read();
+    if (b < 0) {
+      break;
+    }
+    // The app only ever sends binary frames; skip anything until a magic byte
+    if (rxLength == 0 && b != FRAME_MAGIC) {
+      continue;
+    }
+    rxFrame[rxLength++] = (uint8_t) b;
+    if (rxLength == 2 && b != PROTOCOL_VERSION) {
+      rxLength = 0;
+      continue;
+    }
+    if (rxLength < HEADER_SIZE) {
+      continue;
+    }
+    int payloadLength = rxFrame[9];
+    if (payloadLength > MAX_PAYLOAD) {
+      rxLength = 0;
+      continue;
+    }
+    if (rxLength < HEADER_SIZE + payloadLength + 1) {
+      continue;
+    }
+    if (crc8(rxFrame + 1, HEADER_SIZE + payloadLength - 1) == rxFrame[HEADER_SIZE + payloadLength]) {
+      onAppFrame(rxFrame[2], rxFrame[3] | (rxFrame[4] << 8));
+    }
+    rxLength = 0;
+  }
+}
+
+void onAppFrame(uint8_t type, uint16_t sequence) {
+  if (type == TYPE_HELLO) {
+    binaryMode = true;
+    uint8_t nonce[4] = {
+      (uint8_t) (bootNonce & 0xFF), (uint8_t) ((bootNonce >> 8) & 0xFF),
+      (uint8_t) ((bootNonce >> 16) & 0xFF), (uint8_t) (bootNonce >> 24)
+    };
+    sendFrame(TYPE_HELLO, 0, millis(), nonce, sizeof(nonce));
+    Serial.println("App speaks the binary protocol");
+    // Replay whatever was pressed out of range or never acknowledged, oldest first, right away
+    for (int i = 0; i < PENDING_CAPACITY; i++) {
+      pending[i].lastSentMs = millis() - RETRANSMIT_INTERVAL_MS;
+    }
+  } else if (type == TYPE_ACK) {
+    for (int i = 0; i < PENDING_CAPACITY; i++) {
+      if (pending[i].used && pending[i].sequence == sequence) {
+        pending[i].used = false;
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.android.sheguard.api;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.android.sheguard.R;
 import com.google.auth.oauth2.AccessToken;
@@ -8,19 +9,111 @@ import com.google.auth.oauth2.GoogleCredentials;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Process-wide FCM access token. The service account is parsed once and the token is reused
+ * until shortly before it expires; refreshes run in the background and concurrent callers
+ * share a single one.
+ */
 public class MyFirebaseAuth {
 
+    private static final String TAG = "MyFirebaseAuth";
     private static final String SCOPES = "https://www.googleapis.com/auth/firebase.messaging";
+    // Start a background refresh this long before expiry, and stop handing the token out this long before
+    private static final long REFRESH_MARGIN_MS = 5 * 60 * 1000L;
+    private static final long EXPIRY_MARGIN_MS = 60 * 1000L;
+
+    private static final Object lock = new Object();
+    private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fcm-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static GoogleCredentials credentials;
+    private static volatile AccessToken cachedToken;
+    private static CompletableFuture<AccessToken> refreshing;
 
     public static String getAccessToken(Context context) throws IOException {
-        InputStream serviceAccount = context.getResources().openRawResource(R.raw.service_account);
-        GoogleCredentials googleCredentials = GoogleCredentials
-                .fromStream(serviceAccount)
-                .createScoped(Collections.singleton(SCOPES));
-        googleCredentials.refreshIfExpired();
-        AccessToken token = googleCredentials.getAccessToken();
-        return token.getTokenValue();
+        AccessToken token = cachedToken;
+        long now = System.currentTimeMillis();
+        if (expiresIn(token, now) > EXPIRY_MARGIN_MS) {
+            if (expiresIn(token, now) <= REFRESH_MARGIN_MS) {
+                refresh(context);
+            }
+            return token.getTokenValue();
+        }
+
+        try {
+            return refresh(context).join().getTokenValue();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Mints a token in the background if there is no fresh one, so the first push of an SOS
+     * does not pay for it.
+     */
+    public static void warm(Context context) {
+        if (expiresIn(cachedToken, System.currentTimeMillis()) <= REFRESH_MARGIN_MS) {
+            refresh(context);
+        }
+    }
+
+    private static long expiresIn(AccessToken token, long now) {
+        if (token == null || token.getExpirationTime() == null) {
+            return 0;
+        }
+        return token.getExpirationTime().getTime() - now;
+    }
+
+    private static CompletableFuture<AccessToken> refresh(Context context) {
+        synchronized (lock) {
+            if (refreshing != null) {
+                return refreshing;
+            }
+
+            Context appContext = context.getApplicationContext();
+            CompletableFuture<AccessToken> future = CompletableFuture.supplyAsync(() -> mint(appContext), refreshExecutor);
+            refreshing = future;
+            future.whenComplete((token, error) -> {
+                synchronized (lock) {
+                    refreshing = null;
+                }
+                if (error != null) {
+                    Log.e(TAG, "access token refresh failed: " + error.getMessage());
+                }
+            });
+            return future;
+        }
+    }
+
+    private static AccessToken mint(Context context) {
+        try {
+            if (credentials == null) {
+                try (InputStream serviceAccount = context.getResources().openRawResource(R.raw.service_account)) {
+                    credentials = GoogleCredentials
+                            .fromStream(serviceAccount)
+                            .createScoped(Collections.singleton(SCOPES));
+                }
+            }
+            credentials.refresh();
+            AccessToken token = credentials.getAccessToken();
+            cachedToken = token;
+            Log.i(TAG, "access token refreshed");
+            return token;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -6,11 +6,15 @@ public class Constants {
     public static final String FIRESTORE_COLLECTION_USERLIST = "UserList";
     public static final String FIRESTORE_COLLECTION_PHONE2UID = "PhoneToUid";
     public static final String FIRESTORE_COLLECTION_TOKENS = "Tokens";
+    public static final String FIRESTORE_COLLECTION_SOS_INVITES = "SosInvites";
+    public static final String FIRESTORE_COLLECTION_SOS_SESSIONS = "SosSessions";
 
     // Settings
     public static final String SETTINGS_SHAKE_DETECTION = "shake_detection";
+    public static final String SETTINGS_FALL_DETECTION = "fall_detection";
     public static final String SETTINGS_SEND_SMS = "send_sms";
     public static final String SETTINGS_SEND_NOTIFICATION = "send_notification";
+    public static final String SETTINGS_PROGRESSIVE_ALERTS = "progressive_alerts";
     public static final String SETTINGS_PLAY_SIREN = "play_siren";
     public static final String SETTINGS_CALL_EMERGENCY_SERVICE = "call_emergency_service";
 
@@ -23,5 +27,11 @@ public class Constants {
     // Others
     public static final String CONTACTS_LIST = "contacts_list";
     public static final String PREFS_USER_NAME = "user_name";
+    public static final String PREFS_USER_PHONE = "user_phone";
+    public static final String PREFS_CONTACT_TOKEN_CACHE = "contact_token_cache";
+    public static final String PREFS_SOS_TOPIC = "sos_topic";
+    public static final String PREFS_SOS_TOPIC_MEMBERS = "sos_topic_members";
+    public static final String PREFS_SOS_TOPIC_SUBSCRIPTIONS = "sos_topic_subscriptions";
+    public static final String PREFS_ADDRESS_CACHE = "address_cache";
     public static final String EMERGENCY_NUMBER = "999";
 }
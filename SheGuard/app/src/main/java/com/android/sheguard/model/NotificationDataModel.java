@@ -4,12 +4,18 @@ public class NotificationDataModel {
 
     private String title;
     private String body;
+    private String sessionUid;
 
     public NotificationDataModel(String title, String body) {
         this.title = title;
         this.body = body;
     }
 
+    public NotificationDataModel(String title, String body, String sessionUid) {
+        this(title, body);
+        this.sessionUid = sessionUid;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -25,4 +31,15 @@ public class NotificationDataModel {
     public void setBody(String body) {
         this.body = body;
     }
+
+    /**
+     * @return the sender's uid, which names their {@code SosSessions} document
+     */
+    public String getSessionUid() {
+        return sessionUid;
+    }
+
+    public void setSessionUid(String sessionUid) {
+        this.sessionUid = sessionUid;
+    }
 }
@@ -5,18 +5,28 @@ public class NotificationSenderModel {
     private Message message;
 
     public NotificationSenderModel(String token, NotificationDataModel data) {
-        this.message = new Message(token, data);
+        this.message = new Message(token, null, data);
+    }
+
+    private NotificationSenderModel(Message message) {
+        this.message = message;
+    }
+
+    public static NotificationSenderModel toTopic(String topic, NotificationDataModel data) {
+        return new NotificationSenderModel(new Message(null, topic, data));
     }
 
     public static class Message {
         private String token;
+        private String topic;
         private Notification notification;
         private Data data;
 
-        public Message(String token, NotificationDataModel data) {
+        public Message(String token, String topic, NotificationDataModel data) {
             this.token = token;
+            this.topic = topic;
             this.notification = new Notification(data.getTitle(), data.getBody());
-            this.data = new Data(data.getTitle(), data.getBody());
+            this.data = new Data(data.getTitle(), data.getBody(), data.getSessionUid());
         }
     }
 
@@ -33,10 +43,12 @@ public class NotificationSenderModel {
     public static class Data {
         private String title;
         private String body;
+        private String sessionUid;
 
-        public Data(String title, String body) {
+        public Data(String title, String body, String sessionUid) {
             this.title = title;
             this.body = body;
+            this.sessionUid = sessionUid;
         }
     }
 }
@@ -9,58 +9,134 @@ import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Binder;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.text.format.DateFormat;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
 import com.android.sheguard.R;
+import com.android.sheguard.api.MyFirebaseAuth;
 import com.android.sheguard.common.Constants;
 import com.android.sheguard.config.Prefs;
-import com.android.sheguard.util.SosUtil;
+import com.android.sheguard.core.FrameDecoder;
+import com.android.sheguard.util.BluetoothConnectionManager;
+import com.android.sheguard.util.CompanionPresence;
+import com.android.sheguard.util.ContactTokenCache;
+import com.android.sheguard.util.LocationCache;
+import com.android.sheguard.util.SosTopicManager;
 import com.android.sheguard.ui.activity.MainActivity;
 
-import java.io.InputStream;
-import java.util.UUID;
+import java.util.Date;
 
 public class BluetoothSosService extends Service {
 
     public static final String ACTION_CONNECT_LAST = "CONNECT_LAST";
-    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
-    private static final long MULTI_PRESS_WINDOW_MS = 2000;
-    private static final int REQUIRED_PRESSES = 3;
+    private static final int STALE_BURST_NOTIFICATION_ID = 4;
+    // Long enough for an RFCOMM connect to succeed or time out
+    private static final long RETRY_WAKE_LOCK_MS = 20000;
 
+    private final IBinder binder = new LocalBinder();
     private BluetoothAdapter bluetoothAdapter;
-    private android.bluetooth.BluetoothSocket socket;
-    private Thread readerThread;
-    private volatile boolean cancelled = false;
-    private int pressCount = 0;
-    private long windowStartMs = 0L;
-    private static final long RECONNECT_DELAY_MS = 3000L;
+    private BluetoothConnectionManager connectionManager;
     private PowerManager.WakeLock wakeLock;
+    private PowerManager.WakeLock retryWakeLock;
+
+    // Wakes the manager's reader early when Bluetooth comes on or the wearable's link shows up,
+    // and on time for its backoff retries while the phone sleeps
+    private final BroadcastReceiver bluetoothReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(intent.getAction())) {
+                if (intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR) == BluetoothAdapter.STATE_ON) {
+                    connectLastDevice();
+                }
+            } else if (BluetoothDevice.ACTION_ACL_CONNECTED.equals(intent.getAction())) {
+                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                String last = Prefs.getString(Constants.PREF_BLUETOOTH_LAST_DEVICE_ADDRESS, null);
+                if (device != null && device.getAddress().equals(last)) {
+                    connectionManager.wakeUp();
+                }
+            } else if (BluetoothConnectionManager.ACTION_RETRY_DUE.equals(intent.getAction())) {
+                // The alarm's own wake lock ends with this broadcast; hold one through the attempt
+                acquireRetryWakeLock();
+                connectionManager.retryDue();
+            }
+        }
+    };
+
+    private final BluetoothConnectionManager.Listener connectionListener = new BluetoothConnectionManager.Listener() {
+        @Override
+        public void onStateChanged(BluetoothConnectionManager.State state, String address) {
+            // Only a live link has presses to read; waiting for one needs no CPU held awake
+            if (state == BluetoothConnectionManager.State.CONNECTED) {
+                acquireWakeLock();
+            } else {
+                releaseWakeLock();
+            }
+            // An attempt the retry alarm woke us for is over either way
+            if (state != BluetoothConnectionManager.State.CONNECTING) {
+                releaseRetryWakeLock();
+            }
+        }
 
-    @Nullable
-    @Override
-    public IBinder onBind(Intent intent) { return null; }
+        @Override
+        public void onFrame(FrameDecoder.Frame frame) {
+        }
+
+        @Override
+        public void onStaleBurst(long pressedAtMs) {
+            showStaleBurst(pressedAtMs);
+        }
+    };
+
+    /**
+     * Lets screens in this process observe the link the service owns.
+     */
+    public class LocalBinder extends Binder {
+
+        public BluetoothConnectionManager getConnectionManager() {
+            return connectionManager;
+        }
+    }
 
     @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
+    public void onCreate() {
+        super.onCreate();
         BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
         bluetoothAdapter = bluetoothManager != null ? bluetoothManager.getAdapter() : null;
+        connectionManager = new BluetoothConnectionManager(this, bluetoothAdapter);
+        connectionManager.addListener(connectionListener);
+
+        IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
+        filter.addAction(BluetoothDevice.ACTION_ACL_CONNECTED);
+        filter.addAction(BluetoothConnectionManager.ACTION_RETRY_DUE);
+        ContextCompat.registerReceiver(this, bluetoothReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
         ensureForegroundNotification();
-        acquireWakeLock();
+        ContactTokenCache.getInstance().refreshStale();
+        SosTopicManager.refreshAccepted();
+        MyFirebaseAuth.warm(this);
+        LocationCache.getInstance().arm(this, LocationCache.ARMED_BY_BLUETOOTH);
 
-        if (intent == null || ACTION_CONNECT_LAST.equals(intent.getAction())) {
-            connectLastDevice();
-        } else {
-            connectLastDevice();
-        }
+        connectLastDevice();
 
         return START_STICKY;
     }
@@ -72,108 +148,26 @@ public class BluetoothSosService extends Service {
         String last = Prefs.getString(Constants.PREF_BLUETOOTH_LAST_DEVICE_ADDRESS, null);
         if (last == null) return;
         BluetoothDevice device = bluetoothAdapter.getRemoteDevice(last);
-        startReader(device);
+        connectionManager.connect(device);
+        CompanionPresence.observe(this, last);
     }
 
     private boolean hasBtConnectPermission() {
         return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
     }
 
-    private synchronized void startReader(BluetoothDevice device) {
-        stopReader();
-        readerThread = new Thread(() -> {
-            cancelled = false;
-            while (!cancelled) {
-                if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-                    sleepQuiet(RECONNECT_DELAY_MS);
-                    continue;
-                }
-                if (!hasBtConnectPermission()) {
-                    sleepQuiet(RECONNECT_DELAY_MS);
-                    continue;
-                }
-                try {
-                    socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
-                    bluetoothAdapter.cancelDiscovery();
-                    socket.connect();
-                    Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, true);
-
-                    InputStream inputStream = socket.getInputStream();
-                    byte[] buffer = new byte[256];
-                    StringBuilder lineBuffer = new StringBuilder();
-                    while (!cancelled && socket.isConnected()) {
-                        int n = inputStream.read(buffer);
-                        if (n > 0) {
-                            lineBuffer.append(new String(buffer, 0, n));
-                            int idx;
-                            while ((idx = lineBuffer.indexOf("\n")) >= 0) {
-                                String line = lineBuffer.substring(0, idx);
-                                lineBuffer.delete(0, idx + 1);
-                                handleIncomingFrame(line);
-                            }
-                            // Also handle frames without newline if buffer grows too big
-                            if (lineBuffer.length() > 512) {
-                                handleIncomingFrame(lineBuffer.toString());
-                                lineBuffer.setLength(0);
-                            }
-                        }
-                    }
-                } catch (Exception ignored) {
-                } finally {
-                    try { if (socket != null) socket.close(); } catch (Exception ignored) {}
-                    socket = null;
-                    Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, false);
-                }
-                // If we reached here, we are disconnected or failed to connect. Retry after delay.
-                sleepQuiet(RECONNECT_DELAY_MS);
-            }
-        });
-        readerThread.start();
-    }
-
-    private synchronized void stopReader() {
-        cancelled = true;
-        try { if (socket != null) socket.close(); } catch (Exception ignored) {}
-        socket = null;
-    }
-
-    private void handleIncomingFrame(String frameRaw) {
-        String frame = frameRaw.trim();
-        if (frame.isEmpty()) return;
-
-        if (frame.contains("TRIPLE_PRESS_ACTION")) {
-            pressCount = 0;
-            windowStartMs = 0L;
-            SosUtil.activateInstantSosMode(this);
-            return;
-        }
-
-        // Count per-press frames (e.g., "P")
-        long now = System.currentTimeMillis();
-        if (now - windowStartMs > MULTI_PRESS_WINDOW_MS) {
-            windowStartMs = now;
-            pressCount = 0;
-        }
-        pressCount++;
-        if (pressCount >= REQUIRED_PRESSES) {
-            pressCount = 0;
-            windowStartMs = 0L;
-            SosUtil.activateInstantSosMode(this);
-        }
-    }
-
-    private void sleepQuiet(long ms) {
-        try { Thread.sleep(ms); } catch (InterruptedException ignored) {}
-    }
-
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopReader();
+        unregisterReceiver(bluetoothReceiver);
+        connectionManager.removeListener(connectionListener);
+        connectionManager.disconnect();
+        LocationCache.getInstance().disarm(LocationCache.ARMED_BY_BLUETOOTH);
         try {
             stopForeground(true);
         } catch (Exception ignored) {}
         releaseWakeLock();
+        releaseRetryWakeLock();
     }
 
     private void ensureForegroundNotification() {
@@ -206,6 +200,29 @@ public class BluetoothSosService extends Service {
         } catch (Exception ignored) {}
     }
 
+    private void showStaleBurst(long pressedAtMs) {
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        NotificationChannel channel = new NotificationChannel(getString(R.string.notification_channel_wearable), getString(R.string.notification_channel_wearable), NotificationManager.IMPORTANCE_HIGH);
+        channel.setDescription(getString(R.string.notification_channel_wearable_desc));
+        notificationManager.createNotificationChannel(channel);
+
+        Intent openIntent = new Intent(this, MainActivity.class);
+        openIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        PendingIntent pi = PendingIntent.getActivity(this, 3, openIntent, PendingIntent.FLAG_IMMUTABLE);
+        String time = DateFormat.getTimeFormat(this).format(new Date(pressedAtMs));
+        Notification notification = new Notification.Builder(this, getString(R.string.notification_channel_wearable))
+                .setContentTitle(getString(R.string.wearable_stale_burst_title))
+                .setContentText(getString(R.string.wearable_stale_burst_text, time))
+                .setStyle(new Notification.BigTextStyle().bigText(getString(R.string.wearable_stale_burst_text, time)))
+                .setSmallIcon(R.drawable.ic_launcher_notification)
+                .setWhen(pressedAtMs)
+                .setShowWhen(true)
+                .setContentIntent(pi)
+                .setAutoCancel(true)
+                .build();
+        notificationManager.notify(STALE_BURST_NOTIFICATION_ID, notification);
+    }
+
     private void acquireWakeLock() {
         try {
             PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
@@ -217,6 +234,23 @@ public class BluetoothSosService extends Service {
         } catch (Exception ignored) {}
     }
 
+    private void acquireRetryWakeLock() {
+        try {
+            PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            if (pm != null && retryWakeLock == null) {
+                retryWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getPackageName()+":bt_retry");
+                retryWakeLock.setReferenceCounted(false);
+            }
+            if (retryWakeLock != null) retryWakeLock.acquire(RETRY_WAKE_LOCK_MS);
+        } catch (Exception ignored) {}
+    }
+
+    private void releaseRetryWakeLock() {
+        try {
+            if (retryWakeLock != null && retryWakeLock.isHeld()) retryWakeLock.release();
+        } catch (Exception ignored) {}
+    }
+
     private void releaseWakeLock() {
         try {
             if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
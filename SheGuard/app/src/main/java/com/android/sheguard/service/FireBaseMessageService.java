@@ -21,6 +21,9 @@ import java.util.regex.Matcher;
 
 public class FireBaseMessageService extends FirebaseMessagingService {
 
+    // The sender's uid; LiveLocationStreamer.follow() takes it to track their SOS session
+    public static final String EXTRA_SESSION_UID = "session_uid";
+
     String title, body;
 
     @Override
@@ -57,6 +60,11 @@ public class FireBaseMessageService extends FirebaseMessagingService {
             notificationIntent = new Intent(this, MainActivity.class);
         }
 
+        String sessionUid = remoteMessage.getData().get("sessionUid");
+        if (sessionUid != null) {
+            notificationIntent.putExtra(EXTRA_SESSION_UID, sessionUid);
+        }
+
         notificationIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 2, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
 
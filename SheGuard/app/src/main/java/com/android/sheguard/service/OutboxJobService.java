@@ -0,0 +1,69 @@
+package com.android.sheguard.service;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+import android.util.Log;
+
+import com.android.sheguard.util.AlertOutbox;
+import com.android.sheguard.util.SosEngine;
+
+/**
+ * Retries whatever is left in the alert outbox, one job per channel, each scheduled for that
+ * channel's next backoff deadline. The push job also waits for a network, so it runs as soon as
+ * connectivity comes back; the SMS job doesn't, since SMS only needs the cell radio.
+ */
+public class OutboxJobService extends JobService {
+
+    private static final int JOB_ID_PUSH = 1001;
+    private static final int JOB_ID_SMS = 1002;
+    private static final String EXTRA_CHANNEL = "channel";
+
+    public static void schedule(Context context, String channel) {
+        long atWallMs = AlertOutbox.getInstance(context).nextAttemptAt(channel);
+        if (atWallMs < 0) {
+            return;
+        }
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+
+        boolean sms = AlertOutbox.CHANNEL_SMS.equals(channel);
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_CHANNEL, channel);
+        JobInfo.Builder job = new JobInfo.Builder(sms ? JOB_ID_SMS : JOB_ID_PUSH, new ComponentName(context, OutboxJobService.class))
+                .setMinimumLatency(Math.max(0, atWallMs - System.currentTimeMillis()))
+                .setExtras(extras)
+                .setPersisted(true);
+        if (!sms) {
+            job.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        }
+        scheduler.schedule(job.build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        String channel = params.getExtras().getString(EXTRA_CHANNEL, AlertOutbox.CHANNEL_PUSH);
+        new Thread(() -> {
+            try {
+                SosEngine.getInstance().drainOutbox(getApplicationContext(), channel);
+            } catch (Exception e) {
+                Log.e("OutboxJobService", "drain failed: " + e.getMessage(), e);
+            }
+            jobFinished(params, false);
+        }, "outbox-drain").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Claimed rows go back to the queue when their lease runs out
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package com.android.sheguard.service;
+
+import android.companion.CompanionDeviceService;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Bound by the system while an associated wearable is in range (see CompanionPresence). Its
+ * arrival is the cue to reconnect right away rather than at the next backoff retry.
+ */
+@RequiresApi(Build.VERSION_CODES.S)
+public class WearablePresenceService extends CompanionDeviceService {
+
+    private static final String TAG = "WearablePresence";
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onDeviceAppeared(@NonNull String address) {
+        Log.i(TAG, "wearable appeared: " + address);
+        try {
+            startForegroundService(new Intent(this, BluetoothSosService.class).setAction(BluetoothSosService.ACTION_CONNECT_LAST));
+        } catch (Exception e) {
+            Log.i(TAG, "cannot start BluetoothSosService: " + e.getMessage());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onDeviceDisappeared(@NonNull String address) {
+        Log.i(TAG, "wearable gone: " + address);
+    }
+}
@@ -15,6 +15,8 @@ import com.android.sheguard.common.Constants;
 import com.android.sheguard.config.Prefs;
 import com.android.sheguard.model.ContactModel;
 import com.android.sheguard.ui.fragment.ContactsFragment;
+import com.android.sheguard.util.ContactTokenCache;
+import com.android.sheguard.util.SosTopicManager;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textfield.TextInputEditText;
@@ -74,6 +76,8 @@ public class NewContactAdapter extends RecyclerView.Adapter<NewContactAdapter.Vi
             Gson gson = SheGuard.GSON;
             String jsonContacts = gson.toJson(ContactsFragment.contacts);
             Prefs.putString(Constants.CONTACTS_LIST, jsonContacts);
+            ContactTokenCache.getInstance().prefetch(number);
+            SosTopicManager.invite(number);
 
             if (ContactsFragment.tvEmptyList != null) {
                 ContactsFragment.tvEmptyList.setVisibility(ContactsFragment.contacts.size() == 0 ? View.VISIBLE : View.GONE);
@@ -1,19 +1,24 @@
 package com.android.sheguard.ui.fragment;
 
 import android.Manifest;
+import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.IntentSenderRequest;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBar;
@@ -25,53 +30,72 @@ import com.android.sheguard.R;
 import com.android.sheguard.databinding.FragmentBluetoothBinding;
 import com.android.sheguard.config.Prefs;
 import com.android.sheguard.common.Constants;
-import com.android.sheguard.util.AppUtil;
-import com.android.sheguard.util.SosUtil;
+import com.android.sheguard.core.FrameDecoder;
+import com.android.sheguard.util.BluetoothConnectionManager;
+import com.android.sheguard.util.CompanionPresence;
 import com.android.sheguard.service.BluetoothSosService;
 import com.android.sheguard.ui.view.LoadingDialog;
 
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
 public class BluetoothFragment extends Fragment {
 
     private FragmentBluetoothBinding binding;
     private BluetoothAdapter bluetoothAdapter;
-    private ClientThread clientThread;
-    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
-    private static final long MULTI_PRESS_WINDOW_MS = 2000;
-    private static final int REQUIRED_PRESSES = 3;
-    private int pressCount = 0;
-    private long windowStartMs = 0L;
     private LoadingDialog connectingDialog;
     private SimpleDeviceAdapter deviceAdapter;
-    private String connectedAddress = null;
-    private String connectedAddressFromPrefs() {
-        if (connectedAddress != null) return connectedAddress;
-        boolean isConnected = com.android.sheguard.config.Prefs.getBoolean(com.android.sheguard.common.Constants.PREF_BLUETOOTH_CONNECTED, false);
-        if (!isConnected) return null;
-        return com.android.sheguard.config.Prefs.getString(com.android.sheguard.common.Constants.PREF_BLUETOOTH_LAST_DEVICE_ADDRESS, null);
-    }
-    private final android.content.BroadcastReceiver btStateReceiver = new android.content.BroadcastReceiver() {
+    // The link itself lives in BluetoothSosService; this screen only watches it
+    private BluetoothConnectionManager connectionManager;
+    private boolean serviceBound = false;
+
+    private final BluetoothConnectionManager.Listener connectionListener = new BluetoothConnectionManager.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            // Refresh list binding on connect/disconnect
-            if (deviceAdapter != null) {
-                deviceAdapter.setConnectedAddress(connectedAddressFromPrefs());
-                deviceAdapter.notifyDataSetChanged();
-            }
+        public void onStateChanged(BluetoothConnectionManager.State state, String address) {
+            showConnectionState(state, address);
+        }
+
+        @Override
+        public void onFrame(FrameDecoder.Frame frame) {
+        }
+
+        @Override
+        public void onStaleBurst(long pressedAtMs) {
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            connectionManager = ((BluetoothSosService.LocalBinder) service).getConnectionManager();
+            connectionManager.addListener(connectionListener);
+            showConnectionState(connectionManager.getState(), connectionManager.getAddress());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            connectionManager = null;
         }
     };
 
     private final ActivityResultLauncher<String[]> permissionLauncher = registerForActivityResult(
-            new ActivityResultContracts.RequestMultiplePermissions(), result -> refreshDevices()
+            new ActivityResultContracts.RequestMultiplePermissions(), result -> {
+                // A reader parked for want of BLUETOOTH_CONNECT waits for a wake-up, not a poll
+                if (connectionManager != null && !result.containsValue(false)) {
+                    connectionManager.wakeUp();
+                }
+                refreshDevices();
+            }
     );
 
-    private final ActivityResultLauncher<String[]> sosPermissionsLauncher = registerForActivityResult(
-            new ActivityResultContracts.RequestMultiplePermissions(), result -> triggerSosIfReady()
+    private final ActivityResultLauncher<IntentSenderRequest> associationLauncher = registerForActivityResult(
+            new ActivityResultContracts.StartIntentSenderForResult(), result -> {
+                // The service starts watching for the wearable once it is associated
+                if (result.getResultCode() == Activity.RESULT_OK && binding != null) {
+                    startConnectionService();
+                }
+            }
     );
 
     private final ActivityResultLauncher<Intent> enableBtLauncher = registerForActivityResult(
@@ -104,15 +128,31 @@ public class BluetoothFragment extends Fragment {
         deviceAdapter = new SimpleDeviceAdapter(new ArrayList<>(), device -> {
             Prefs.putString(Constants.PREF_BLUETOOTH_LAST_DEVICE_ADDRESS, device.getAddress());
             Prefs.putString(Constants.PREF_BLUETOOTH_LAST_DEVICE_NAME, device.getName());
-            connectToDevice(device);
-            // Start background service to keep connection alive when leaving fragment
-            requireContext().startService(new Intent(requireContext(), BluetoothSosService.class).setAction(BluetoothSosService.ACTION_CONNECT_LAST));
+            // The service doesn't try without Bluetooth or the permission, so no state would come
+            if (!bluetoothAdapter.isEnabled() || !hasBluetoothPermissions()) {
+                refreshDevices();
+                return;
+            }
+            if (connectingDialog != null) {
+                connectingDialog.show(getString(R.string.connecting));
+            }
+            startConnectionService();
+            // Lets Android 12+ tell us when the wearable is back in range
+            if (CompanionPresence.isSupported(requireContext()) && !CompanionPresence.isAssociated(requireContext(), device.getAddress())) {
+                CompanionPresence.associate(requireContext(), device.getAddress(),
+                        chooser -> {
+                            if (isAdded()) {
+                                associationLauncher.launch(new IntentSenderRequest.Builder(chooser).build());
+                            }
+                        });
+            }
         });
         binding.devicesList.setAdapter(deviceAdapter);
 
+        // Binding doesn't start the service; it only attaches to the link if one is being kept
+        serviceBound = requireContext().bindService(new Intent(requireContext(), BluetoothSosService.class), serviceConnection, 0);
+
         refreshDevices();
-        // Register to refresh UI on state changes
-        requireContext().registerReceiver(btStateReceiver, new android.content.IntentFilter(BluetoothAdapter.ACTION_CONNECTION_STATE_CHANGED));
         return view;
     }
 
@@ -141,28 +181,49 @@ public class BluetoothFragment extends Fragment {
 
         Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
         List<BluetoothDevice> list = new ArrayList<>(pairedDevices);
-        deviceAdapter.setConnectedAddress(connectedAddress);
+        deviceAdapter.setConnectedAddress(connectedAddress());
         deviceAdapter.submit(list);
 
         binding.emptyView.setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
         binding.progressRefresh.setVisibility(View.GONE);
 
-        // Auto-connect attempt to last selected device if bonded
+        // Auto-connect to the last selected device if bonded; a link already up is left alone
         String lastAddress = Prefs.getString(Constants.PREF_BLUETOOTH_LAST_DEVICE_ADDRESS, null);
         if (lastAddress != null) {
             for (BluetoothDevice d : list) {
                 if (lastAddress.equals(d.getAddress())) {
-                    // For classic devices, createBond ensures bonded; actual RFCOMM connection is app-specific.
-                    // Trigger bonding again if needed.
-                    try { d.createBond(); } catch (Exception ignored) {}
-                    connectToDevice(d);
-                    requireContext().startService(new Intent(requireContext(), BluetoothSosService.class).setAction(BluetoothSosService.ACTION_CONNECT_LAST));
+                    startConnectionService();
                     break;
                 }
             }
         }
     }
 
+    private void startConnectionService() {
+        requireContext().startService(new Intent(requireContext(), BluetoothSosService.class).setAction(BluetoothSosService.ACTION_CONNECT_LAST));
+        if (!serviceBound) {
+            serviceBound = requireContext().bindService(new Intent(requireContext(), BluetoothSosService.class), serviceConnection, 0);
+        }
+    }
+
+    private String connectedAddress() {
+        if (connectionManager == null || connectionManager.getState() != BluetoothConnectionManager.State.CONNECTED) {
+            return null;
+        }
+        return connectionManager.getAddress();
+    }
+
+    private void showConnectionState(BluetoothConnectionManager.State state, String address) {
+        if (binding == null) return;
+        if (state != BluetoothConnectionManager.State.CONNECTING && connectingDialog != null) {
+            connectingDialog.hide();
+        }
+        if (deviceAdapter != null) {
+            deviceAdapter.setConnectedAddress(state == BluetoothConnectionManager.State.CONNECTED ? address : null);
+            deviceAdapter.notifyDataSetChanged();
+        }
+    }
+
     private boolean hasBluetoothPermissions() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             return ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.BLUETOOTH_SCAN) == PackageManager.PERMISSION_GRANTED
@@ -181,153 +242,22 @@ public class BluetoothFragment extends Fragment {
         }
     }
 
-    private void requestSosPermissionsIfNeeded() {
-        if (!AppUtil.permissionsGranted(requireContext())) {
-            sosPermissionsLauncher.launch(AppUtil.REQUIRED_PERMISSIONS);
-        } else {
-            triggerSosIfReady();
-        }
-    }
-
-    private void triggerSosIfReady() {
-        if (!AppUtil.permissionsGranted(requireContext())) {
-            return;
-        }
-        if (!SosUtil.isGPSEnabled(requireContext())) {
-            SosUtil.turnOnGPS(requireContext());
-        }
-        SosUtil.activateInstantSosMode(requireContext());
-    }
-
-    private void connectToDevice(BluetoothDevice device) {
-        if (clientThread != null) {
-            clientThread.cancel();
-            clientThread = null;
-        }
-        // Show connecting dialog
-        if (connectingDialog != null) {
-            connectingDialog.show(getString(R.string.connecting));
-        }
-        clientThread = new ClientThread(device);
-        clientThread.start();
-    }
-
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (clientThread != null) {
-            clientThread.cancel();
-            clientThread = null;
+        if (connectionManager != null) {
+            connectionManager.removeListener(connectionListener);
+            connectionManager = null;
+        }
+        if (serviceBound) {
+            try { requireContext().unbindService(serviceConnection); } catch (Exception ignored) {}
+            serviceBound = false;
         }
         if (connectingDialog != null) {
             connectingDialog.hide();
         }
-        connectedAddress = null;
-        try { requireContext().unregisterReceiver(btStateReceiver); } catch (Exception ignored) {}
         binding = null;
     }
-
-    private class ClientThread extends Thread {
-        private final BluetoothDevice device;
-        private android.bluetooth.BluetoothSocket socket;
-        private volatile boolean cancelled = false;
-
-        ClientThread(BluetoothDevice device) {
-            this.device = device;
-        }
-
-        @Override
-        public void run() {
-            if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED
-                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                return;
-            }
-            try {
-                socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
-                bluetoothAdapter.cancelDiscovery();
-                socket.connect();
-                requireActivity().runOnUiThread(() -> {
-                    if (connectingDialog != null) connectingDialog.hide();
-                    connectedAddress = device.getAddress();
-                    Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, true);
-                    if (deviceAdapter != null) {
-                        deviceAdapter.setConnectedAddress(connectedAddress);
-                        deviceAdapter.notifyDataSetChanged();
-                    }
-                });
-
-                InputStream inputStream = socket.getInputStream();
-                byte[] buffer = new byte[256];
-                StringBuilder lineBuffer = new StringBuilder();
-                while (!cancelled) {
-                    int n = inputStream.read(buffer);
-                    if (n > 0) {
-                        lineBuffer.append(new String(buffer, 0, n));
-                        int idx;
-                        while ((idx = lineBuffer.indexOf("\n")) >= 0) {
-                            String line = lineBuffer.substring(0, idx);
-                            lineBuffer.delete(0, idx + 1);
-                            handleIncomingFrameUi(line);
-                        }
-                        if (lineBuffer.length() > 512) {
-                            handleIncomingFrameUi(lineBuffer.toString());
-                            lineBuffer.setLength(0);
-                        }
-                    }
-                }
-            } catch (Exception ignored) {
-                requireActivity().runOnUiThread(() -> {
-                    if (connectingDialog != null) connectingDialog.hide();
-                    connectedAddress = null;
-                    Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, false);
-                    if (deviceAdapter != null) {
-                        deviceAdapter.setConnectedAddress(null);
-                        deviceAdapter.notifyDataSetChanged();
-                    }
-                });
-            } finally {
-                try { if (socket != null) socket.close(); } catch (Exception ignored) {}
-            }
-        }
-
-        private String connectedAddressFromPrefs() {
-            // Removed: now defined at fragment scope
-            return null;
-        }
-
-        void cancel() {
-            cancelled = true;
-            try { if (socket != null) socket.close(); } catch (Exception ignored) {}
-        }
-    }
-
-    private void onTriplePress() {
-        requestSosPermissionsIfNeeded();
-    }
-
-    private void handleIncomingFrameUi(String frameRaw) {
-        String frame = frameRaw.trim();
-        if (frame.isEmpty()) return;
-
-        if (frame.contains("TRIPLE_PRESS_ACTION")) {
-            pressCount = 0;
-            windowStartMs = 0L;
-            requireActivity().runOnUiThread(BluetoothFragment.this::onTriplePress);
-            return;
-        }
-
-        long now = System.currentTimeMillis();
-        if (now - windowStartMs > MULTI_PRESS_WINDOW_MS) {
-            windowStartMs = now;
-            pressCount = 0;
-        }
-        pressCount++;
-        if (pressCount >= REQUIRED_PRESSES) {
-            pressCount = 0;
-            windowStartMs = 0L;
-            requireActivity().runOnUiThread(BluetoothFragment.this::onTriplePress);
-        }
-    }
 }
 
 // Simple adapter classes
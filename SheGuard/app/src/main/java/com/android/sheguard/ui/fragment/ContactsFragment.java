@@ -19,18 +19,19 @@ import com.android.sheguard.R;
 import com.android.sheguard.SheGuard;
 import com.android.sheguard.common.Constants;
 import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.ContactCodec;
 import com.android.sheguard.databinding.FragmentContactsBinding;
 import com.android.sheguard.model.ContactModel;
 import com.android.sheguard.ui.adapter.ContactsAdapter;
 import com.android.sheguard.ui.adapter.NewContactAdapter;
+import com.android.sheguard.util.AlertOutbox;
+import com.android.sheguard.util.ContactTokenCache;
+import com.android.sheguard.util.SosTopicManager;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.List;
 
 @SuppressLint({"StaticFieldLeak"})
 @SuppressWarnings("FieldCanBeLocal")
@@ -52,7 +53,10 @@ public class ContactsFragment extends Fragment {
                         return;
                     }
 
-                    contacts.remove(idx);
+                    ContactModel removed = contacts.remove(idx);
+                    ContactTokenCache.getInstance().evict(removed.getPhone());
+                    AlertOutbox.getInstance(context).cancelRecipient(removed.getPhone());
+                    SosTopicManager.revoke(removed.getPhone());
                     adapter.notifyDataSetChanged();
 
                     Gson gson = SheGuard.GSON;
@@ -91,14 +95,7 @@ public class ContactsFragment extends Fragment {
 
         tvEmptyList = view.findViewById(R.id.tv_empty_list);
 
-        contacts = new ArrayList<>();
-        Gson gson = SheGuard.GSON;
-        String jsonContacts = Prefs.getString(Constants.CONTACTS_LIST, "");
-        if (!jsonContacts.isEmpty()) {
-            Type type = new TypeToken<List<ContactModel>>() {
-            }.getType();
-            contacts.addAll(gson.fromJson(jsonContacts, type));
-        }
+        contacts = ContactCodec.decode(Prefs.getString(Constants.CONTACTS_LIST, ""));
 
         new ContactsAdapter(requireContext(), contacts);
         binding.recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
@@ -28,8 +28,12 @@ import com.android.sheguard.service.SosService;
 import com.android.sheguard.ui.activity.LoginRegisterActivity;
 import com.android.sheguard.ui.activity.MainActivity;
 import com.android.sheguard.util.AppUtil;
+import com.android.sheguard.util.ContactTokenCache;
 import com.android.sheguard.util.FirebaseUtil;
+import com.android.sheguard.util.LocationCache;
+import com.android.sheguard.util.SosTopicManager;
 import com.android.sheguard.util.SosUtil;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.navigation.NavigationView;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.firebase.auth.FirebaseAuth;
@@ -113,6 +117,8 @@ public class HomeFragment extends Fragment {
         binding.about.setOnClickListener(v -> Navigation.findNavController(view).navigate(R.id.action_homeFragment_to_aboutFragment));
 
         FirebaseUtil.updateToken();
+        ContactTokenCache.getInstance().refreshStale();
+        SosTopicManager.refreshAccepted();
 
         initializeDrawerItems();
 
@@ -121,6 +127,19 @@ public class HomeFragment extends Fragment {
         return view;
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // A press of the SOS button should find a recent fix waiting
+        LocationCache.getInstance().warm(requireContext(), LocationCache.WARMED_BY_HOME);
+    }
+
+    @Override
+    public void onStop() {
+        LocationCache.getInstance().cool(LocationCache.WARMED_BY_HOME);
+        super.onStop();
+    }
+
     private void initializeDrawerItems() {
         ((NavigationView) requireActivity().findViewById(R.id.navView)).setNavigationItemSelectedListener(item -> {
             int id = item.getItemId();
@@ -160,6 +179,8 @@ public class HomeFragment extends Fragment {
                         if (document.exists()) {
                             userName[0] = document.getString("name");
                             Prefs.putString(Constants.PREFS_USER_NAME, userName[0]);
+                            Prefs.putString(Constants.PREFS_USER_PHONE, document.getString("phone"));
+                            SosTopicManager.syncSubscriptions(document.getString("phone"), this::askToAccept);
                         }
                     }
 
@@ -169,6 +190,19 @@ public class HomeFragment extends Fragment {
                 });
     }
 
+    private void askToAccept(SosTopicManager.Invite invite) {
+        if (getContext() == null) {
+            return;
+        }
+
+        new MaterialAlertDialogBuilder(requireContext(), R.style.MaterialComponents_MaterialAlertDialog)
+                .setMessage(getString(R.string.sos_invite_confirmation, invite.getFromName()))
+                .setCancelable(false)
+                .setPositiveButton(getString(R.string.yes), (dialog, which) -> SosTopicManager.accept(invite))
+                .setNegativeButton(getString(R.string.no), (dialog, which) -> SosTopicManager.decline(invite))
+                .show();
+    }
+
     private void updateButtonText() {
         new Handler(Looper.getMainLooper()).postDelayed(() -> {
             if (getContext() != null) {
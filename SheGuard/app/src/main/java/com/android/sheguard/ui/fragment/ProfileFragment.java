@@ -3,11 +3,8 @@ package com.android.sheguard.ui.fragment;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.location.Address;
-import android.location.Geocoder;
 import android.location.LocationManager;
 import android.os.Bundle;
-import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -21,27 +18,23 @@ import androidx.navigation.Navigation;
 
 import com.android.sheguard.R;
 import com.android.sheguard.common.Constants;
+import com.android.sheguard.core.AcquisitionPolicy;
+import com.android.sheguard.core.GeoFix;
 import com.android.sheguard.databinding.FragmentProfileBinding;
 import com.android.sheguard.model.UserModel;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
+import com.android.sheguard.util.LocationAcquirer;
+import com.android.sheguard.util.ReverseGeocoder;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class ProfileFragment extends Fragment {
 
     private FragmentProfileBinding binding;
     private LocationManager locationManager = null;
-    private LocationRequest locationRequest = null;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -57,14 +50,6 @@ public class ProfileFragment extends Fragment {
             binding.header.collapsingToolbar.setSubtitle(getString(R.string.activity_profile_desc));
         }
 
-        if (locationRequest == null) {
-            locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 5000)
-                    .setWaitForAccurateLocation(false)
-                    .setMinUpdateIntervalMillis(2000)
-                    .setMaxUpdateDelayMillis(5000)
-                    .build();
-        }
-
         getUserDetails();
         getCurrentLocation();
 
@@ -117,57 +102,30 @@ public class ProfileFragment extends Fragment {
             return;
         }
 
-        final int[] numberOfUpdates = {0};
-
-        LocationServices.getFusedLocationProviderClient(requireContext())
-                .requestLocationUpdates(locationRequest, new LocationCallback() {
-                    @Override
-                    public void onLocationResult(@NonNull LocationResult locationResult) {
-                        super.onLocationResult(locationResult);
-                        if (getContext() == null) {
-                            return;
-                        }
-
-                        numberOfUpdates[0]++;
-
-                        if (numberOfUpdates[0] >= 3) {
-                            LocationServices.getFusedLocationProviderClient(getContext())
-                                    .removeLocationUpdates(this);
-
-                            if (locationResult.getLocations().size() > 0) {
-                                int idx = locationResult.getLocations().size() - 1;
-                                double latitude = locationResult.getLocations().get(idx).getLatitude();
-                                double longitude = locationResult.getLocations().get(idx).getLongitude();
-
-                                Geocoder geocoder;
-                                List<Address> addresses;
-                                geocoder = new Geocoder(getContext(), Locale.getDefault());
-
-                                try {
-                                    addresses = geocoder.getFromLocation(latitude, longitude, 1);
-
-                                    if (addresses != null) {
-                                        StringBuilder address = new StringBuilder();
-
-                                        for (int i = 0; i <= addresses.get(0).getMaxAddressLineIndex(); i++) {
-                                            address.append(addresses.get(0).getAddressLine(i));
-
-                                            if (i < addresses.get(0).getMaxAddressLineIndex()) {
-                                                address.append("\n");
-                                            }
-                                        }
-
-                                        binding.tvLocation.setText(address.toString());
-                                    } else {
-                                        binding.tvLocation.setText(getString(R.string.failed_to_get_location));
-                                    }
-                                } catch (IOException e) {
-                                    binding.tvLocation.setText(getString(R.string.failed_to_get_location));
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
+        Context context = requireContext().getApplicationContext();
+        LocationAcquirer.acquire(context, AcquisitionPolicy.ADDRESS)
+                .thenCompose(outcome -> {
+                    GeoFix fix = outcome.getFix();
+                    return fix != null
+                            ? ReverseGeocoder.getInstance(context).lookup(fix.getLatitude(), fix.getLongitude())
+                            : CompletableFuture.completedFuture((String) null);
+                })
+                .thenAccept(address -> {
+                    if (getActivity() == null) {
+                        return;
                     }
-                }, Looper.getMainLooper());
+                    getActivity().runOnUiThread(() -> showAddress(address));
+                });
+    }
+
+    private void showAddress(String address) {
+        if (binding == null) {
+            return;
+        }
+        if (address != null) {
+            binding.tvLocation.setText(address);
+        } else {
+            binding.tvLocation.setText(R.string.failed_to_get_location);
+        }
     }
-}
\ No newline at end of file
+}
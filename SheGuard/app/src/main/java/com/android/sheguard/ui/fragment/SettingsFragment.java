@@ -1,9 +1,12 @@
 package com.android.sheguard.ui.fragment;
 
+import android.app.Activity;
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBar;
@@ -17,6 +20,7 @@ import com.android.sheguard.databinding.FragmentSettingsBinding;
 import com.android.sheguard.service.SosService;
 import com.android.sheguard.ui.activity.MainActivity;
 import com.android.sheguard.util.SosUtil;
+import com.android.sheguard.util.TraceRecorder;
 import androidx.navigation.Navigation;
 
 public class SettingsFragment extends Fragment {
@@ -43,6 +47,22 @@ public class SettingsFragment extends Fragment {
             MainActivity.shakeDetection.setValue(isChecked);
         });
         binding.shakeDetectionContainer.setOnClickListener(v -> binding.switchShakeDetection.toggle());
+        if (TraceRecorder.isEnabled()) {
+            // Debug builds: long-press right after a missed shake to keep the trace
+            binding.shakeDetectionContainer.setOnLongClickListener(v -> {
+                exportTrace();
+                return true;
+            });
+        }
+
+        binding.switchFallDetection.setChecked(Prefs.getBoolean(Constants.SETTINGS_FALL_DETECTION, false));
+        binding.switchFallDetection.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            Prefs.putBoolean(Constants.SETTINGS_FALL_DETECTION, isChecked);
+            if (SosService.isRunning) {
+                requireContext().startService(new Intent(requireContext(), SosService.class).setAction(SosService.ACTION_FALL_DETECTION_CHANGED));
+            }
+        });
+        binding.fallDetectionContainer.setOnClickListener(v -> binding.switchFallDetection.toggle());
 
         binding.switchSendSms.setChecked(Prefs.getBoolean(Constants.SETTINGS_SEND_SMS, true));
         binding.switchSendSms.setOnCheckedChangeListener((buttonView, isChecked) -> Prefs.putBoolean(Constants.SETTINGS_SEND_SMS, isChecked));
@@ -52,6 +72,10 @@ public class SettingsFragment extends Fragment {
         binding.switchSendNotification.setOnCheckedChangeListener((buttonView, isChecked) -> Prefs.putBoolean(Constants.SETTINGS_SEND_NOTIFICATION, isChecked));
         binding.sendNotificationContainer.setOnClickListener(v -> binding.switchSendNotification.toggle());
 
+        binding.switchProgressiveAlerts.setChecked(Prefs.getBoolean(Constants.SETTINGS_PROGRESSIVE_ALERTS, true));
+        binding.switchProgressiveAlerts.setOnCheckedChangeListener((buttonView, isChecked) -> Prefs.putBoolean(Constants.SETTINGS_PROGRESSIVE_ALERTS, isChecked));
+        binding.progressiveAlertsContainer.setOnClickListener(v -> binding.switchProgressiveAlerts.toggle());
+
         binding.switchPlaySiren.setChecked(Prefs.getBoolean(Constants.SETTINGS_PLAY_SIREN, false));
         binding.switchPlaySiren.setOnCheckedChangeListener((buttonView, isChecked) -> {
             Prefs.putBoolean(Constants.SETTINGS_PLAY_SIREN, isChecked);
@@ -72,4 +96,16 @@ public class SettingsFragment extends Fragment {
 
         return view;
     }
+
+    private void exportTrace() {
+        TraceRecorder.getInstance().export("manual").thenAccept(file -> {
+            Activity activity = getActivity();
+            if (activity == null) {
+                return;
+            }
+            activity.runOnUiThread(() -> Toast.makeText(activity, file != null
+                    ? activity.getString(R.string.trace_exported, file.getAbsolutePath())
+                    : activity.getString(R.string.trace_not_exported), Toast.LENGTH_LONG).show());
+        });
+    }
 }
\ No newline at end of file
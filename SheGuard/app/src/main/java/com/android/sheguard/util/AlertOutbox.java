@@ -0,0 +1,247 @@
+package com.android.sheguard.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.android.sheguard.core.BackoffPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Durable record of every SOS alert, one row per recipient and channel. A row is written before
+ * the first send attempt and stays until the send is confirmed, so alerts survive process death
+ * and flaky networks. The idempotency key is the primary key: enqueueing the same alert twice is
+ * a no-op, and a row that reached {@link #STATE_SENT} is never sent again.
+ * <p>
+ * A row whose send may or may not have gone out is parked as {@link #STATE_UNKNOWN} rather than
+ * retried, since a retry could reach the contact twice. A late report still settles it.
+ */
+public class AlertOutbox extends SQLiteOpenHelper {
+
+    public static final String CHANNEL_SMS = "SMS";
+    public static final String CHANNEL_PUSH = "PUSH";
+
+    static final String STATE_PENDING = "PENDING";
+    static final String STATE_IN_FLIGHT = "IN_FLIGHT";
+    static final String STATE_SENT = "SENT";
+    static final String STATE_FAILED = "FAILED";
+    static final String STATE_UNKNOWN = "UNKNOWN";
+
+    private static final String DATABASE_NAME = "alert_outbox.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "outbox";
+    // A claimed row whose sender died is handed out again after this long
+    private static final long LEASE_MS = 2 * 60 * 1000L;
+    // Sent, given-up and unknown rows are kept this long for the record, then purged
+    private static final long RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static AlertOutbox instance;
+
+    private final BackoffPolicy backoff = BackoffPolicy.DEFAULT;
+
+    private AlertOutbox(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized AlertOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlertOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "key TEXT PRIMARY KEY, "
+                + "channel TEXT NOT NULL, "
+                + "recipient TEXT NOT NULL, "
+                + "title TEXT, "
+                + "message TEXT NOT NULL, "
+                + "state TEXT NOT NULL, "
+                + "attempts INTEGER NOT NULL DEFAULT 0, "
+                + "next_attempt_at INTEGER NOT NULL, "
+                + "created_at INTEGER NOT NULL, "
+                + "last_error TEXT)");
+        db.execSQL("CREATE INDEX outbox_due ON " + TABLE + " (channel, state, next_attempt_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    public static String key(String sessionId, String channel, String recipient, String message) {
+        return sessionId + ":" + channel + ":" + recipient + ":" + Integer.toHexString(message.hashCode());
+    }
+
+    /**
+     * Adds the alert and claims it for an immediate send.
+     *
+     * @return the claimed record, or {@code null} if this key was already in the outbox
+     */
+    public synchronized Record enqueue(String key, String channel, String recipient, String title, String message) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("channel", channel);
+        values.put("recipient", recipient);
+        values.put("title", title);
+        values.put("message", message);
+        values.put("state", STATE_IN_FLIGHT);
+        values.put("next_attempt_at", now + LEASE_MS);
+        values.put("created_at", now);
+
+        long row = getWritableDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        return row == -1 ? null : new Record(key, channel, recipient, title, message, 0);
+    }
+
+    /**
+     * Claims up to {@code limit} rows of one channel that are due, including in-flight rows whose
+     * lease ran out.
+     */
+    public synchronized List<Record> claimDue(String channel, int limit) {
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        List<Record> records = new ArrayList<>();
+
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.query(TABLE,
+                    new String[]{"key", "channel", "recipient", "title", "message", "attempts"},
+                    "channel = ? AND state IN (?, ?) AND next_attempt_at <= ?",
+                    new String[]{channel, STATE_PENDING, STATE_IN_FLIGHT, String.valueOf(now)},
+                    null, null, "next_attempt_at", String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    records.add(new Record(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                            cursor.getString(3), cursor.getString(4), cursor.getInt(5)));
+                }
+            }
+
+            ContentValues values = new ContentValues();
+            values.put("state", STATE_IN_FLIGHT);
+            values.put("next_attempt_at", now + LEASE_MS);
+            for (Record record : records) {
+                db.update(TABLE, values, "key = ?", new String[]{record.key});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return records;
+    }
+
+    public synchronized void markSent(String key) {
+        ContentValues values = new ContentValues();
+        values.put("state", STATE_SENT);
+        values.putNull("last_error");
+        getWritableDatabase().update(TABLE, values, "key = ?", new String[]{key});
+    }
+
+    /**
+     * Parks an in-flight row whose outcome isn't known. A row already settled is left alone.
+     */
+    public synchronized void markUnknown(String key) {
+        ContentValues values = new ContentValues();
+        values.put("state", STATE_UNKNOWN);
+        values.put("last_error", "no sent report");
+        getWritableDatabase().update(TABLE, values, "key = ? AND state = ?", new String[]{key, STATE_IN_FLIGHT});
+    }
+
+    /**
+     * Records a failed attempt. The row is retried after a backoff delay unless {@code retry} is
+     * false or the attempts are used up.
+     */
+    public synchronized void markFailed(Record record, String error, boolean retry) {
+        int attempts = record.attempts + 1;
+        ContentValues values = new ContentValues();
+        values.put("attempts", attempts);
+        values.put("last_error", error);
+        if (retry && !backoff.isExhausted(attempts)) {
+            values.put("state", STATE_PENDING);
+            values.put("next_attempt_at", System.currentTimeMillis() + backoff.delayMs(attempts, ThreadLocalRandom.current().nextDouble()));
+        } else {
+            values.put("state", STATE_FAILED);
+        }
+        getWritableDatabase().update(TABLE, values, "key = ?", new String[]{record.key});
+    }
+
+    /**
+     * Gives up every row for a contact who was removed, so no retry reaches them afterwards.
+     */
+    public synchronized void cancelRecipient(String recipient) {
+        ContentValues values = new ContentValues();
+        values.put("state", STATE_FAILED);
+        values.put("last_error", "contact removed");
+        getWritableDatabase().update(TABLE, values, "recipient = ? AND state IN (?, ?)",
+                new String[]{recipient, STATE_PENDING, STATE_IN_FLIGHT});
+    }
+
+    /**
+     * @return when the channel's next pending or in-flight row is due (wall clock), or -1 if none
+     * are left
+     */
+    public synchronized long nextAttemptAt(String channel) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MIN(next_attempt_at) FROM " + TABLE + " WHERE channel = ? AND state IN (?, ?)",
+                new String[]{channel, STATE_PENDING, STATE_IN_FLIGHT})) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return -1;
+        }
+    }
+
+    public synchronized void purgeFinished() {
+        getWritableDatabase().delete(TABLE, "state IN (?, ?, ?) AND created_at < ?",
+                new String[]{STATE_SENT, STATE_FAILED, STATE_UNKNOWN, String.valueOf(System.currentTimeMillis() - RETENTION_MS)});
+    }
+
+    public static class Record {
+
+        private final String key;
+        private final String channel;
+        private final String recipient;
+        private final String title;
+        private final String message;
+        private final int attempts;
+
+        Record(String key, String channel, String recipient, String title, String message, int attempts) {
+            this.key = key;
+            this.channel = channel;
+            this.recipient = recipient;
+            this.title = title;
+            this.message = message;
+            this.attempts = attempts;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.android.sheguard.util;
+
+import android.Manifest;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.BackoffPolicy;
+import com.android.sheguard.core.DeviceClock;
+import com.android.sheguard.core.FrameDecoder;
+import com.android.sheguard.core.PressWindow;
+import com.android.sheguard.core.SequenceFilter;
+import com.android.sheguard.core.SosTrigger;
+import com.android.sheguard.core.WearableProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The only owner of the RFCOMM link to the wearable. BluetoothSosService holds the one instance;
+ * screens bind to the service and {@link #addListener(Listener) listen} for the connection state
+ * and incoming frames instead of opening sockets of their own. One reader thread, one
+ * {@link PressWindow}, so a burst of presses triggers one SOS.
+ */
+public class BluetoothConnectionManager {
+
+    public enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    public interface Listener {
+
+        void onStateChanged(State state, String address);
+
+        void onFrame(FrameDecoder.Frame frame);
+
+        /**
+         * The wearable delivered a burst it stored while out of range, too late to raise an SOS
+         * for; no alert was sent.
+         *
+         * @param pressedAtMs wall-clock time of the burst's last press
+         */
+        void onStaleBurst(long pressedAtMs);
+    }
+
+    private static final String TAG = "BluetoothConnection";
+    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    // The wearable only listens and nothing tells us when it is back in range, so these retries
+    // are what reconnects it. Capped well inside STALE_BURST_MS; each wait is backed by a wakeup
+    // alarm, since a reader waiting on its own doesn't run while the phone is suspended
+    private static final BackoffPolicy RECONNECT_BACKOFF = new BackoffPolicy(2000, 2.0, 60 * 1000L, Integer.MAX_VALUE);
+    // A burst older than this when it finally arrives is reported instead of raising an SOS
+    private static final long STALE_BURST_MS = 5 * 60 * 1000L;
+
+    public static final String ACTION_RETRY_DUE = "com.android.sheguard.action.BLUETOOTH_RETRY_DUE";
+
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final PressWindow pressWindow = new PressWindow();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Outlives connections: a retransmission after a reconnect must still be recognized
+    private final SequenceFilter sequenceFilter = new SequenceFilter();
+    // Press times are all on elapsedRealtime; binary ones are mapped there from the device clock
+    private final DeviceClock deviceClock = new DeviceClock();
+
+    // A reader whose thread is no longer this one has been replaced and winds down quietly
+    private volatile Thread readerThread;
+    private BluetoothSocket socket;
+    private volatile State state = State.DISCONNECTED;
+    private volatile String address;
+    private final Object retrySignal = new Object();
+    private boolean retryNow;
+    // Reader thread only, on elapsedRealtime: when the wearable was last known to be out of reach,
+    // and when the current link came up
+    private long unreachableAtMs;
+    private long connectedAtMs;
+
+    public BluetoothConnectionManager(Context context, BluetoothAdapter bluetoothAdapter) {
+        this.context = context.getApplicationContext();
+        this.bluetoothAdapter = bluetoothAdapter;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the device being connected or connected to, or {@code null}
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Keeps a link to {@code device} up, reconnecting whenever it drops. Asking again for the
+     * device already held leaves the link alone, so opening a screen doesn't tear it down. A live
+     * link won't change state then, so CONNECTED is posted to the listeners again; a reader that
+     * is waiting goes on to CONNECTING once woken.
+     */
+    public synchronized void connect(BluetoothDevice device) {
+        if (readerThread != null && device.getAddress().equals(address)) {
+            if (state == State.CONNECTED) {
+                postState(state);
+            } else {
+                wakeUp();
+            }
+            return;
+        }
+        disconnect();
+        address = device.getAddress();
+        Thread thread = new Thread(() -> readLoop(device), "bt-reader");
+        readerThread = thread;
+        thread.start();
+    }
+
+    public synchronized void disconnect() {
+        Thread reader = readerThread;
+        readerThread = null;
+        if (reader != null) {
+            reader.interrupt();
+        }
+        closeSocket(socket);
+        address = null;
+        Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, false);
+        setState(State.DISCONNECTED);
+    }
+
+    /**
+     * Cuts short the reader's wait before its next attempt, and starts its backoff over. For
+     * events that say the link can probably be made now; does nothing to a live link.
+     */
+    public void wakeUp() {
+        synchronized (retrySignal) {
+            retryNow = true;
+            retrySignal.notifyAll();
+        }
+    }
+
+    /**
+     * The retry alarm went off. Lets a reader asleep in its backoff notice that the wait is over,
+     * without starting the backoff over the way {@link #wakeUp()} does.
+     */
+    public void retryDue() {
+        synchronized (retrySignal) {
+            retrySignal.notifyAll();
+        }
+    }
+
+    private boolean isCurrent() {
+        return readerThread == Thread.currentThread();
+    }
+
+    private void readLoop(BluetoothDevice device) {
+        int failures = 0;
+        unreachableAtMs = SystemClock.elapsedRealtime();
+        while (isCurrent()) {
+            if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled() || !hasBtConnectPermission()) {
+                // Nothing to retry until Bluetooth comes on or the permission is granted
+                failures = 0;
+                awaitRetry(0);
+                unreachableAtMs = SystemClock.elapsedRealtime();
+                continue;
+            }
+            BluetoothSocket connecting = null;
+            try {
+                synchronized (this) {
+                    if (!isCurrent()) {
+                        break;
+                    }
+                    setState(State.CONNECTING);
+                    connecting = device.createRfcommSocketToServiceRecord(SPP_UUID);
+                    socket = connecting;
+                }
+                bluetoothAdapter.cancelDiscovery();
+                connecting.connect();
+                synchronized (this) {
+                    if (!isCurrent()) {
+                        break;
+                    }
+                    Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, true);
+                    setState(State.CONNECTED);
+                }
+                connectedAtMs = SystemClock.elapsedRealtime();
+                failures = 0;
+                Log.i(TAG, "connected to " + device.getAddress());
+
+                InputStream inputStream = connecting.getInputStream();
+                Link link = new Link(connecting.getOutputStream());
+                link.send(WearableProtocol.TYPE_HELLO, 0);
+                byte[] buffer = new byte[256];
+                while (isCurrent() && connecting.isConnected()) {
+                    int n = inputStream.read(buffer);
+                    if (n > 0) {
+                        link.decoder.feed(buffer, 0, n, link);
+                    } else if (n < 0) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                Log.i(TAG, "link down: " + e.getMessage());
+            } finally {
+                unreachableAtMs = SystemClock.elapsedRealtime();
+                synchronized (this) {
+                    closeSocket(connecting);
+                    if (isCurrent()) {
+                        Prefs.putBoolean(Constants.PREF_BLUETOOTH_CONNECTED, false);
+                        setState(State.DISCONNECTED);
+                    }
+                }
+            }
+            // Disconnected or failed to connect; retry after a backoff unless woken first
+            failures++;
+            long delayMs = RECONNECT_BACKOFF.delayMs(failures, ThreadLocalRandom.current().nextDouble());
+            setRetryAlarm(delayMs);
+            boolean woken = awaitRetry(delayMs);
+            cancelRetryAlarm();
+            if (woken) {
+                failures = 0;
+            }
+        }
+    }
+
+    /**
+     * Wakes the phone for the next attempt; the service hands the alarm back through
+     * {@link #retryDue()}. Doze may still stretch it when exact alarms aren't allowed.
+     */
+    private void setRetryAlarm(long delayMs) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        long atMs = SystemClock.elapsedRealtime() + delayMs;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atMs, retryIntent());
+        } else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atMs, retryIntent());
+        }
+    }
+
+    private void cancelRetryAlarm() {
+        context.getSystemService(AlarmManager.class).cancel(retryIntent());
+    }
+
+    private PendingIntent retryIntent() {
+        Intent intent = new Intent(ACTION_RETRY_DUE).setPackage(context.getPackageName());
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * @param timeoutMs how long to wait, or 0 to wait for {@link #wakeUp()}
+     * @return true if woken rather than timed out
+     */
+    private boolean awaitRetry(long timeoutMs) {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        synchronized (retrySignal) {
+            try {
+                while (!retryNow && isCurrent()) {
+                    long remaining = 0;
+                    if (timeoutMs != 0) {
+                        remaining = deadline - SystemClock.elapsedRealtime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                    }
+                    retrySignal.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            boolean woken = retryNow;
+            retryNow = false;
+            return woken;
+        }
+    }
+
+    /**
+     * One connection's decoder and write side, used only by its reader thread.
+     */
+    private class Link implements FrameDecoder.Sink {
+
+        final FrameDecoder decoder = new FrameDecoder();
+        private final OutputStream outputStream;
+        private final byte[] out = new byte[WearableProtocol.MAX_FRAME_SIZE];
+
+        Link(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        void send(int type, int sequence) throws IOException {
+            int length = WearableProtocol.encode(out, type, sequence, 0, null, 0);
+            outputStream.write(out, 0, length);
+            outputStream.flush();
+        }
+
+        @Override
+        public void onFrame(FrameDecoder.Frame frame) {
+            if (!decoder.isBinary()) {
+                handleIncomingFrame(frame, SystemClock.elapsedRealtime());
+                return;
+            }
+            if (frame == FrameDecoder.Frame.HELLO) {
+                onHello();
+                return;
+            }
+            deviceClock.observe(decoder.getDeviceTimeMs(), SystemClock.elapsedRealtime());
+            if (frame == FrameDecoder.Frame.ACK) {
+                return;
+            }
+            int sequence = decoder.getSequence();
+            try {
+                // Acknowledge duplicates too: the first ACK may be what got lost
+                send(WearableProtocol.TYPE_ACK, sequence);
+            } catch (IOException e) {
+                Log.i(TAG, "ack " + sequence + " failed: " + e.getMessage());
+            }
+            if (frame == FrameDecoder.Frame.TRIPLE_PRESS) {
+                // Binary firmware sends every press of the burst as well, and the press window
+                // already counts those; older builds still send this frame, which is acked only
+                return;
+            }
+            if (sequenceFilter.accept(sequence)) {
+                // When it was pressed, not when it got here, so a burst replayed after a reconnect
+                // is still judged by its own spacing
+                handleIncomingFrame(frame, deviceClock.toLocal(decoder.getDeviceTimeMs()));
+            } else {
+                Log.i(TAG, "duplicate frame " + sequence);
+            }
+        }
+
+        private void onHello() {
+            long nonce = 0;
+            for (int i = 0; i < Math.min(4, decoder.getPayloadLength()); i++) {
+                nonce |= (long) decoder.getPayloadByte(i) << (8 * i);
+            }
+            sequenceFilter.setEpoch(nonce);
+            // The HELLO is sent on the spot, which makes it the best clock sample to start from
+            deviceClock.reset();
+            deviceClock.observe(decoder.getDeviceTimeMs(), SystemClock.elapsedRealtime());
+            Log.i(TAG, "wearable speaks protocol " + WearableProtocol.VERSION + ", boot " + Long.toHexString(nonce));
+        }
+    }
+
+    private void handleIncomingFrame(FrameDecoder.Frame frame, long timeMs) {
+        for (Listener listener : listeners) {
+            mainHandler.post(() -> listener.onFrame(frame));
+        }
+
+        switch (frame) {
+            case TRIPLE_PRESS:
+                pressWindow.reset();
+                onBurst(timeMs);
+                break;
+            case PRESS:
+                if (pressWindow.onPress(timeMs)) {
+                    onBurst(timeMs);
+                }
+                break;
+            default:
+                Log.i(TAG, "ignoring unknown frame");
+                break;
+        }
+    }
+
+    private void onBurst(long timeMs) {
+        long ageMs = SystemClock.elapsedRealtime() - timeMs;
+        long countedMs = ageMs;
+        if (timeMs < connectedAtMs) {
+            // Replayed after a reconnect. Between the last failed attempt and the reconnect the
+            // wearable may already have been back, waiting on our retry, so only the time it was
+            // known to be out of reach counts
+            countedMs -= connectedAtMs - Math.max(timeMs, unreachableAtMs);
+        }
+        if (countedMs <= STALE_BURST_MS) {
+            SosEngine.getInstance().trigger(context, SosTrigger.BLUETOOTH);
+            return;
+        }
+        Log.i(TAG, "stale burst from " + ageMs / 1000 + " s ago");
+        long pressedAtMs = System.currentTimeMillis() - ageMs;
+        for (Listener listener : listeners) {
+            mainHandler.post(() -> listener.onStaleBurst(pressedAtMs));
+        }
+    }
+
+    private void setState(State newState) {
+        if (state == newState) {
+            return;
+        }
+        state = newState;
+        postState(newState);
+    }
+
+    private void postState(State newState) {
+        String current = address;
+        for (Listener listener : listeners) {
+            mainHandler.post(() -> listener.onStateChanged(newState, current));
+        }
+    }
+
+    private synchronized void closeSocket(BluetoothSocket toClose) {
+        if (toClose == null) {
+            return;
+        }
+        try {
+            toClose.close();
+        } catch (Exception ignored) {
+        }
+        if (socket == toClose) {
+            socket = null;
+        }
+    }
+
+    private boolean hasBtConnectPermission() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,95 @@
+package com.android.sheguard.util;
+
+import android.companion.AssociationRequest;
+import android.companion.BluetoothDeviceFilter;
+import android.companion.CompanionDeviceManager;
+import android.companion.DeviceNotAssociatedException;
+import android.content.Context;
+import android.content.IntentSender;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.function.Consumer;
+
+/**
+ * Android 12+: lets the system tell WearablePresenceService when the wearable is around, so
+ * BluetoothSosService can reconnect the moment it comes back. For a classic Bluetooth device that
+ * only listens, as the wearable does, the system notices it once something brings a link up, so
+ * this only speeds things up; the manager's alarm-backed retries are what find it again. Needs a
+ * one-time association the user confirms in a system dialog.
+ */
+public class CompanionPresence {
+
+    private static final String TAG = "CompanionPresence";
+
+    public static boolean isSupported(Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_COMPANION_DEVICE_SETUP);
+    }
+
+    @SuppressWarnings("deprecation")
+    public static boolean isAssociated(Context context, String address) {
+        if (!isSupported(context)) {
+            return false;
+        }
+        CompanionDeviceManager manager = context.getSystemService(CompanionDeviceManager.class);
+        for (String associated : manager.getAssociations()) {
+            if (associated.equalsIgnoreCase(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Asks the system to associate the wearable with this app.
+     *
+     * @param onChooser receives the system's confirmation dialog, to be launched for a result
+     */
+    public static void associate(Context context, String address, Consumer<IntentSender> onChooser) {
+        if (!isSupported(context)) {
+            return;
+        }
+        AssociationRequest request = new AssociationRequest.Builder()
+                .addDeviceFilter(new BluetoothDeviceFilter.Builder().setAddress(address).build())
+                .setSingleDevice(true)
+                .build();
+        CompanionDeviceManager manager = context.getSystemService(CompanionDeviceManager.class);
+        manager.associate(request, new CompanionDeviceManager.Callback() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void onDeviceFound(IntentSender chooserLauncher) {
+                onChooser.accept(chooserLauncher);
+            }
+
+            @Override
+            public void onFailure(CharSequence error) {
+                Log.i(TAG, "association failed: " + error);
+            }
+        }, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Starts presence callbacks for an associated wearable; a no-op otherwise. Safe to repeat.
+     */
+    public static void observe(Context context, String address) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || !isAssociated(context, address)) {
+            return;
+        }
+        startObserving(context, address);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.S)
+    private static void startObserving(Context context, String address) {
+        try {
+            context.getSystemService(CompanionDeviceManager.class).startObservingDevicePresence(address);
+        } catch (DeviceNotAssociatedException | SecurityException e) {
+            Log.i(TAG, "cannot observe " + address + ": " + e.getMessage());
+        }
+    }
+}
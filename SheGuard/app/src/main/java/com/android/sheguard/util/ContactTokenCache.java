@@ -0,0 +1,164 @@
+package com.android.sheguard.util;
+
+import android.util.Log;
+
+import com.android.sheguard.SheGuard;
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.ContactCodec;
+import com.android.sheguard.core.TokenCache;
+import com.android.sheguard.model.ContactModel;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persisted phone -> uid -> FCM token lookups for the trusted contacts. Entries are prefetched
+ * when a contact is added and refreshed in the background once their TTL runs out, so an SOS
+ * can push straight from local data.
+ */
+public class ContactTokenCache {
+
+    private static final String TAG = "ContactTokenCache";
+    private static final Type ENTRY_LIST_TYPE = new TypeToken<List<TokenCache.Entry>>() {
+    }.getType();
+
+    private static ContactTokenCache instance;
+
+    private final TokenCache cache = new TokenCache();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private ContactTokenCache() {
+        String json = Prefs.getString(Constants.PREFS_CONTACT_TOKEN_CACHE, "");
+        if (!json.isEmpty()) {
+            try {
+                cache.restore(SheGuard.GSON.fromJson(json, ENTRY_LIST_TYPE));
+            } catch (JsonParseException e) {
+                Log.w(TAG, "dropping unreadable cache: " + e.getMessage());
+            }
+        }
+    }
+
+    public static synchronized ContactTokenCache getInstance() {
+        if (instance == null) {
+            instance = new ContactTokenCache();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the cached entry, or {@code null} if this phone has never been looked up
+     */
+    public TokenCache.Entry get(String phone) {
+        return cache.get(phone);
+    }
+
+    public boolean isStale(TokenCache.Entry entry) {
+        return cache.isStale(entry, System.currentTimeMillis());
+    }
+
+    public void prefetch(String phone) {
+        fetch(phone);
+    }
+
+    public void refreshStale() {
+        refreshStale(ContactCodec.decode(Prefs.getString(Constants.CONTACTS_LIST, "")));
+    }
+
+    public void refreshStale(List<ContactModel> contacts) {
+        List<String> phones = new ArrayList<>();
+        for (ContactModel contact : contacts) {
+            phones.add(contact.getPhone());
+        }
+        for (String phone : cache.stalePhones(phones, System.currentTimeMillis())) {
+            fetch(phone);
+        }
+    }
+
+    /**
+     * Looks the phone up in Firestore and caches the outcome. Completes with the token, or
+     * {@code null} if the contact has no account; completes exceptionally if the lookup failed,
+     * in which case nothing is cached.
+     */
+    public CompletableFuture<String> fetch(String phone) {
+        CompletableFuture<String> pending = inFlight.get(phone);
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        pending = inFlight.putIfAbsent(phone, result);
+        if (pending != null) {
+            return pending;
+        }
+        result.whenComplete((token, error) -> inFlight.remove(phone, result));
+
+        FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_PHONE2UID)
+                .document(phone)
+                .get()
+                .addOnCompleteListener(task1 -> {
+                    if (!task1.isSuccessful()) {
+                        result.completeExceptionally(new IOException("phone lookup failed", task1.getException()));
+                        return;
+                    }
+
+                    String uid = task1.getResult().getString("uid");
+                    if (uid == null) {
+                        store(phone, null, null);
+                        result.complete(null);
+                        return;
+                    }
+
+                    FirebaseFirestore.getInstance()
+                            .collection(Constants.FIRESTORE_COLLECTION_TOKENS)
+                            .document(uid)
+                            .get()
+                            .addOnCompleteListener(task2 -> {
+                                if (!task2.isSuccessful()) {
+                                    result.completeExceptionally(new IOException("token lookup failed", task2.getException()));
+                                    return;
+                                }
+
+                                String token = task2.getResult().getString("token");
+                                store(phone, uid, token);
+                                result.complete(token);
+                            });
+                });
+
+        return result;
+    }
+
+    public void evict(String phone) {
+        cache.evict(phone);
+        persist();
+    }
+
+    public void invalidateToken(String token) {
+        List<String> phones = cache.invalidateToken(token);
+        if (!phones.isEmpty()) {
+            Log.i(TAG, "token unregistered, invalidated " + phones.size() + " entries");
+            persist();
+            for (String phone : phones) {
+                fetch(phone);
+            }
+        }
+    }
+
+    private void store(String phone, String uid, String token) {
+        cache.put(phone, uid, token, System.currentTimeMillis());
+        persist();
+    }
+
+    private void persist() {
+        Prefs.putString(Constants.PREFS_CONTACT_TOKEN_CACHE, SheGuard.GSON.toJson(cache.snapshot(), ENTRY_LIST_TYPE));
+    }
+}
@@ -0,0 +1,179 @@
+package com.android.sheguard.util;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.GeoFix;
+import com.android.sheguard.core.LiveTrackBatcher;
+import com.android.sheguard.core.LocationDemand;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps {@code SosSessions/{uid}} up to date while an SOS is active. Samples are thinned and
+ * batched by {@link LiveTrackBatcher}, so the document sees at most a handful of writes a minute.
+ * The document holds the latest point and a trail of the last {@value #MAX_TRAIL_POINTS}, so it
+ * stays far below Firestore's size limit however long the session runs. Streaming stops on its
+ * own after {@link #MAX_SESSION_MS two hours}. Contacts follow it with
+ * {@link #follow(String, EventListener)}, using the uid the SOS push carries.
+ */
+public class LiveLocationStreamer {
+
+    private static final String TAG = "LiveLocationStreamer";
+    static final int MAX_TRAIL_POINTS = 200;
+    // An SOS nobody stopped shouldn't track the user indefinitely
+    static final long MAX_SESSION_MS = 2 * 60 * 60 * 1000L;
+
+    private static LiveLocationStreamer instance;
+
+    private final LocationDemand demand = new LocationDemand(LocationDemand.Accuracy.HIGH, 5000, 2000);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Map<String, Object>> trail = new ArrayDeque<>();
+    private final Runnable sessionTimeout = () -> {
+        Log.i(TAG, "live location ran for " + MAX_SESSION_MS / 60000 + " min, stopping");
+        SosUtil.stopLiveLocation(this.context);
+    };
+    private Context context;
+    private LiveTrackBatcher batcher;
+    private Runnable unsubscribe;
+    private DocumentReference session;
+
+    public static synchronized LiveLocationStreamer getInstance() {
+        if (instance == null) {
+            instance = new LiveLocationStreamer();
+        }
+        return instance;
+    }
+
+    public synchronized boolean isStreaming() {
+        return unsubscribe != null;
+    }
+
+    public synchronized void start(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (unsubscribe != null || user == null) {
+            return;
+        }
+        this.context = context.getApplicationContext();
+        if (ActivityCompat.checkSelfPermission(this.context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED
+                && ActivityCompat.checkSelfPermission(this.context, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+
+        session = FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_SESSIONS)
+                .document(user.getUid());
+
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("name", Prefs.getString(Constants.PREFS_USER_NAME, ""));
+        doc.put("active", true);
+        doc.put("startedAt", FieldValue.serverTimestamp());
+        doc.put("points", new ArrayList<>());
+        session.set(doc);
+
+        batcher = new LiveTrackBatcher();
+        trail.clear();
+        unsubscribe = LocationHub.getInstance().subscribe(this.context, demand, this::onLocation);
+        mainHandler.postDelayed(sessionTimeout, MAX_SESSION_MS);
+        Log.i(TAG, "live location started");
+    }
+
+    public synchronized void stop() {
+        if (unsubscribe == null) {
+            return;
+        }
+
+        unsubscribe.run();
+        unsubscribe = null;
+        mainHandler.removeCallbacks(sessionTimeout);
+        flush(SystemClock.elapsedRealtime());
+
+        Map<String, Object> update = new HashMap<>();
+        update.put("active", false);
+        update.put("endedAt", FieldValue.serverTimestamp());
+        session.set(update, SetOptions.merge());
+        Log.i(TAG, "live location stopped");
+    }
+
+    /**
+     * Follows a user's live SOS location; remove the returned registration to stop.
+     */
+    public static ListenerRegistration follow(String uid, EventListener<DocumentSnapshot> listener) {
+        return FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_SESSIONS)
+                .document(uid)
+                .addSnapshotListener(listener);
+    }
+
+    private synchronized void onLocation(Location location) {
+        if (unsubscribe == null) {
+            return;
+        }
+
+        GeoFix fix = new GeoFix(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                location.getElapsedRealtimeNanos() / 1_000_000L);
+        batcher.offer(fix);
+
+        long now = SystemClock.elapsedRealtime();
+        float speed = location.hasSpeed() ? location.getSpeed() : 0f;
+        if (batcher.shouldFlush(now, speed, batteryPercent())) {
+            flush(now);
+        }
+    }
+
+    private void flush(long nowMs) {
+        if (batcher.pendingCount() == 0) {
+            return;
+        }
+
+        // Wall-clock timestamps, since receivers read them on other devices
+        long offset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        Map<String, Object> last = null;
+        for (GeoFix fix : batcher.drain(nowMs)) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("lat", fix.getLatitude());
+            point.put("lon", fix.getLongitude());
+            point.put("acc", fix.getAccuracyMeters());
+            point.put("time", fix.getElapsedMs() + offset);
+            trail.addLast(point);
+            last = point;
+        }
+        while (trail.size() > MAX_TRAIL_POINTS) {
+            trail.removeFirst();
+        }
+
+        // The whole trail is rewritten, oldest points dropped, rather than appended to for ever
+        Map<String, Object> update = new HashMap<>();
+        update.put("points", new ArrayList<>(trail));
+        update.put("last", last);
+        session.update(update).addOnFailureListener(e -> Log.w(TAG, "live location write failed: " + e.getMessage()));
+    }
+
+    private int batteryPercent() {
+        BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        return batteryManager != null ? batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) : -1;
+    }
+}
@@ -0,0 +1,78 @@
+package com.android.sheguard.util;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.sheguard.core.AcquisitionPolicy;
+import com.android.sheguard.core.FixAcquisition;
+import com.android.sheguard.core.GeoFix;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Gets one location fix under an {@link AcquisitionPolicy} by racing the {@link LocationCache},
+ * the provider's last known location and a fresh high-accuracy request. The fresh request is
+ * cancelled as soon as the race is decided.
+ */
+public class LocationAcquirer {
+
+    private static final String TAG = "LocationAcquirer";
+
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "location-acquirer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Never completes exceptionally; the outcome has no fix if nothing turned up in time.
+     */
+    public static CompletableFuture<FixAcquisition.Outcome> acquire(Context context, AcquisitionPolicy policy) {
+        Context appContext = context.getApplicationContext();
+        if (!LocationCache.hasLocationPermission(appContext)) {
+            return new FixAcquisition(policy, executor, SystemClock::elapsedRealtime, 0).result();
+        }
+
+        FixAcquisition acquisition = new FixAcquisition(policy, executor, SystemClock::elapsedRealtime, 3);
+        CancellationTokenSource cancellation = new CancellationTokenSource();
+        acquisition.result().whenComplete((outcome, error) -> {
+            cancellation.cancel();
+            GeoFix fix = outcome.getFix();
+            Log.i(TAG, outcome.getSource() + " won in " + outcome.getLatencyMs() + " ms"
+                    + (fix != null ? " (" + fix.getAccuracyMeters() + " m)" : ""));
+        });
+
+        LocationCache cache = LocationCache.getInstance();
+        acquisition.offer(FixAcquisition.Source.CACHE, cache.best(policy.getMaxFixAgeMs()));
+
+        FusedLocationProviderClient client = LocationServices.getFusedLocationProviderClient(appContext);
+        client.getLastLocation()
+                .addOnSuccessListener(location -> acquisition.offer(FixAcquisition.Source.LAST_KNOWN, record(cache, location)))
+                .addOnFailureListener(e -> acquisition.offer(FixAcquisition.Source.LAST_KNOWN, null));
+        client.getCurrentLocation(Priority.PRIORITY_HIGH_ACCURACY, cancellation.getToken())
+                .addOnSuccessListener(location -> acquisition.offer(FixAcquisition.Source.CURRENT, record(cache, location)))
+                .addOnFailureListener(e -> acquisition.offer(FixAcquisition.Source.CURRENT, null));
+
+        return acquisition.result();
+    }
+
+    private static GeoFix record(LocationCache cache, Location location) {
+        if (location == null) {
+            return null;
+        }
+        GeoFix fix = LocationCache.toGeoFix(location);
+        cache.record(fix);
+        return fix;
+    }
+}
@@ -0,0 +1,175 @@
+package com.android.sheguard.util;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.android.sheguard.core.FixRing;
+import com.android.sheguard.core.GeoFix;
+import com.android.sheguard.core.LocationDemand;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps a few recent fixes on hand while a trigger is armed (shake detection, the Bluetooth
+ * wearable), so an SOS starts with a location instead of waiting for one. While armed it keeps a
+ * passive {@link LocationHub} subscription, which costs nothing and takes every fix other apps
+ * and requests cause. A balanced-power request is only added while something is
+ * {@link #warm(Context, String) warming} the cache, such as the SOS screen being open; an SOS
+ * session brings its own high-accuracy request. Fixes from the hub and from one-shot requests are
+ * fed in with {@link #record(GeoFix)}.
+ */
+public class LocationCache {
+
+    public static final String ARMED_BY_SHAKE = "shake";
+    public static final String ARMED_BY_BLUETOOTH = "bluetooth";
+    public static final String WARMED_BY_HOME = "home";
+
+    private static final String TAG = "LocationCache";
+    private static final long PASSIVE_INTERVAL_MS = 10000;
+    private static final long BALANCED_INTERVAL_MS = 2 * 60 * 1000L;
+
+    private static LocationCache instance;
+
+    private final FixRing ring = new FixRing();
+    private final Set<String> armedBy = new HashSet<>();
+    private final Set<String> warmedBy = new HashSet<>();
+    private final LocationDemand passiveDemand = new LocationDemand(LocationDemand.Accuracy.PASSIVE, PASSIVE_INTERVAL_MS, 0);
+    private final LocationDemand balancedDemand = new LocationDemand(LocationDemand.Accuracy.BALANCED, BALANCED_INTERVAL_MS, BALANCED_INTERVAL_MS / 2);
+    private Runnable unsubscribe;
+    private Runnable stopWarming;
+
+    public static synchronized LocationCache getInstance() {
+        if (instance == null) {
+            instance = new LocationCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts collecting fixes on behalf of {@code reason}; the first caller turns the requests on.
+     */
+    public synchronized void arm(Context context, String reason) {
+        if (!armedBy.add(reason) || armedBy.size() > 1) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (!hasLocationPermission(appContext)) {
+            Log.w(TAG, "not armed: location permission missing");
+            armedBy.remove(reason);
+            return;
+        }
+
+        LocationServices.getFusedLocationProviderClient(appContext).getLastLocation().addOnSuccessListener(location -> {
+            if (location != null) {
+                record(toGeoFix(location));
+            }
+        });
+        // The hub records every fix it delivers, so the listener has nothing left to do
+        unsubscribe = LocationHub.getInstance().subscribe(appContext, passiveDemand, location -> {
+        });
+        Log.i(TAG, "armed by " + reason);
+    }
+
+    /**
+     * Stops collecting on behalf of {@code reason}; the last caller turns the requests off.
+     */
+    public synchronized void disarm(String reason) {
+        if (!armedBy.remove(reason) || !armedBy.isEmpty() || unsubscribe == null) {
+            return;
+        }
+
+        unsubscribe.run();
+        unsubscribe = null;
+        Log.i(TAG, "disarmed by " + reason);
+    }
+
+    public synchronized boolean isArmed() {
+        return unsubscribe != null;
+    }
+
+    /**
+     * Adds occasional balanced-power fixes on behalf of {@code reason}, for as long as a fresh
+     * location is worth the battery; the first caller turns the request on.
+     */
+    public synchronized void warm(Context context, String reason) {
+        if (!warmedBy.add(reason) || warmedBy.size() > 1) {
+            return;
+        }
+        stopWarming = LocationHub.getInstance().subscribe(context.getApplicationContext(), balancedDemand, location -> {
+        });
+        Log.i(TAG, "warmed by " + reason);
+    }
+
+    /**
+     * Stops warming on behalf of {@code reason}; the last caller turns the request off.
+     */
+    public synchronized void cool(String reason) {
+        if (!warmedBy.remove(reason) || !warmedBy.isEmpty() || stopWarming == null) {
+            return;
+        }
+
+        stopWarming.run();
+        stopWarming = null;
+        Log.i(TAG, "cooled by " + reason);
+    }
+
+    /**
+     * @return the newest fix, without locking; {@code null} if none was seen yet
+     */
+    public GeoFix latest() {
+        return ring.latest();
+    }
+
+    /**
+     * @return the fix closest to the person's likely position, or {@code null} if none is
+     * younger than {@code maxAgeMs}
+     */
+    public GeoFix best(long maxAgeMs) {
+        return ring.best(SystemClock.elapsedRealtime(), maxAgeMs);
+    }
+
+    public void record(GeoFix fix) {
+        ring.add(fix);
+    }
+
+    /**
+     * Asks for one high-accuracy fix and records it, refining whatever the cache held. Does not
+     * need the cache to be armed.
+     */
+    public void refine(Context context) {
+        if (!hasLocationPermission(context)) {
+            return;
+        }
+        LocationServices.getFusedLocationProviderClient(context.getApplicationContext())
+                .getCurrentLocation(Priority.PRIORITY_HIGH_ACCURACY, new CancellationTokenSource().getToken())
+                .addOnSuccessListener(location -> {
+                    if (location != null) {
+                        record(toGeoFix(location));
+                    }
+                });
+    }
+
+    public static boolean hasLocationPermission(Context context) {
+        return ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Converts a platform location to a fix timed on the elapsed-realtime clock.
+     */
+    public static GeoFix toGeoFix(Location location) {
+        long ageMs = (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1_000_000L;
+        return new GeoFix(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                SystemClock.elapsedRealtime() - Math.max(0, ageMs));
+    }
+}
@@ -0,0 +1,161 @@
+package com.android.sheguard.util;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.android.sheguard.core.LocationDemand;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The app's single stream of location updates. Every consumer subscribes with its own
+ * {@link LocationDemand}; the hub keeps one fused-provider request at the most demanding of them
+ * and fans each fix out on its own looper. The request is dropped when the last subscriber
+ * leaves. Every fix is also recorded in {@link LocationCache}.
+ */
+public class LocationHub {
+
+    private static final String TAG = "LocationHub";
+
+    private static LocationHub instance;
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult locationResult) {
+            dispatch(locationResult.getLocations());
+        }
+    };
+    private Context context;
+    private HandlerThread thread;
+    private LocationDemand active;
+
+    public static synchronized LocationHub getInstance() {
+        if (instance == null) {
+            instance = new LocationHub();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts delivering fixes to the listener, on the hub's thread, no more often than the
+     * demand's minimum interval. Needs location permission; without it nothing is delivered.
+     *
+     * @return runs to unsubscribe
+     */
+    public synchronized Runnable subscribe(Context context, LocationDemand demand, Consumer<Location> listener) {
+        if (!LocationCache.hasLocationPermission(context)) {
+            return () -> {
+            };
+        }
+        this.context = context.getApplicationContext();
+        Subscriber subscriber = new Subscriber(demand, listener);
+        subscribers.add(subscriber);
+        update();
+        return () -> unsubscribe(subscriber);
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            update();
+        }
+    }
+
+    /**
+     * Re-issues the hardware request if the merged demand changed, or tears it down.
+     */
+    private void update() {
+        List<LocationDemand> demands = new ArrayList<>();
+        for (Subscriber subscriber : subscribers) {
+            demands.add(subscriber.demand);
+        }
+        LocationDemand merged = LocationDemand.merge(demands);
+        if (merged == null ? active == null : merged.equals(active)) {
+            return;
+        }
+
+        FusedLocationProviderClient client = LocationServices.getFusedLocationProviderClient(context);
+        if (merged == null) {
+            client.removeLocationUpdates(callback);
+            thread.quitSafely();
+            thread = null;
+            active = null;
+            Log.i(TAG, "stopped");
+            return;
+        }
+
+        if (thread == null) {
+            thread = new HandlerThread("location-hub");
+            thread.start();
+        }
+        LocationRequest request = new LocationRequest.Builder(priority(merged.getAccuracy()), merged.getIntervalMs())
+                .setMinUpdateIntervalMillis(merged.getMinUpdateIntervalMs())
+                .setWaitForAccurateLocation(false)
+                .build();
+        // Requesting again with the same callback replaces the previous request
+        client.requestLocationUpdates(request, callback, thread.getLooper());
+        active = merged;
+        Log.i(TAG, "request " + merged + " for " + subscribers.size() + " subscriber(s)");
+    }
+
+    private void dispatch(List<Location> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        for (Location location : locations) {
+            LocationCache.getInstance().record(LocationCache.toGeoFix(location));
+        }
+
+        Location last = locations.get(locations.size() - 1);
+        List<Subscriber> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(subscribers);
+        }
+        long now = SystemClock.elapsedRealtime();
+        for (Subscriber subscriber : targets) {
+            if (subscriber.lastDeliveredAt == 0 || now - subscriber.lastDeliveredAt >= subscriber.demand.getMinUpdateIntervalMs()) {
+                subscriber.lastDeliveredAt = now;
+                subscriber.listener.accept(last);
+            }
+        }
+    }
+
+    private static int priority(LocationDemand.Accuracy accuracy) {
+        switch (accuracy) {
+            case HIGH:
+                return Priority.PRIORITY_HIGH_ACCURACY;
+            case BALANCED:
+                return Priority.PRIORITY_BALANCED_POWER_ACCURACY;
+            case LOW_POWER:
+                return Priority.PRIORITY_LOW_POWER;
+            default:
+                return Priority.PRIORITY_PASSIVE;
+        }
+    }
+
+    private static class Subscriber {
+
+        final LocationDemand demand;
+        final Consumer<Location> listener;
+        // Only touched on the hub's thread
+        long lastDeliveredAt = 0;
+
+        Subscriber(LocationDemand demand, Consumer<Location> listener) {
+            this.demand = demand;
+            this.listener = listener;
+        }
+    }
+}
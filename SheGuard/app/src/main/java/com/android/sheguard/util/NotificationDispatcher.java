@@ -0,0 +1,238 @@
+package com.android.sheguard.util;
+
+import android.util.Log;
+
+import com.android.sheguard.SheGuard;
+import com.android.sheguard.api.MyFirebaseAuth;
+import com.android.sheguard.api.NotificationAPI;
+import com.android.sheguard.core.PushResult;
+import com.android.sheguard.model.NotificationDataModel;
+import com.android.sheguard.model.NotificationSenderModel;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Sends FCM pushes on a small bounded pool. Each recipient gets a {@link Delivery} with its own
+ * deadline; everything still in flight can be cancelled when the SOS is stopped.
+ */
+public class NotificationDispatcher {
+
+    private static final String TAG = "NotificationDispatcher";
+    private static final int POOL_SIZE = 4;
+    private static final int QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_DEADLINE_MS = 10000;
+
+    private static NotificationDispatcher instance;
+
+    private final NotificationAPI api;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor deadlines;
+    private final Set<Delivery> inFlight = ConcurrentHashMap.newKeySet();
+
+    private NotificationDispatcher() {
+        api = NotificationClient.getClient("https://fcm.googleapis.com/").create(NotificationAPI.class);
+
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "fcm-send-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        deadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fcm-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    public static synchronized NotificationDispatcher getInstance() {
+        if (instance == null) {
+            instance = new NotificationDispatcher();
+        }
+        return instance;
+    }
+
+    public Delivery send(String userToken, String title, String message) {
+        return send(userToken, title, message, DEFAULT_DEADLINE_MS);
+    }
+
+    public Delivery send(String userToken, String title, String message, long deadlineMs) {
+        return dispatch(new Delivery(userToken, null, title, message), deadlineMs);
+    }
+
+    /**
+     * Publishes once to a topic; FCM fans it out to every subscriber.
+     */
+    public Delivery sendToTopic(String topic, String title, String message) {
+        return dispatch(new Delivery(null, topic, title, message), DEFAULT_DEADLINE_MS);
+    }
+
+    private Delivery dispatch(Delivery delivery, long deadlineMs) {
+        inFlight.add(delivery);
+        delivery.result.whenComplete((result, error) -> {
+            inFlight.remove(delivery);
+            if (delivery.deadline != null) {
+                delivery.deadline.cancel(false);
+            }
+            Log.i(TAG, "push " + result);
+        });
+
+        delivery.deadline = deadlines.schedule(() -> delivery.finish(PushResult.TIMED_OUT), deadlineMs, TimeUnit.MILLISECONDS);
+        try {
+            delivery.task = executor.submit(delivery::run);
+        } catch (RejectedExecutionException e) {
+            delivery.finish(PushResult.REJECTED);
+        }
+        return delivery;
+    }
+
+    /**
+     * Cancels every push that has not been accepted yet.
+     */
+    public void cancelAll() {
+        for (Delivery delivery : new ArrayList<>(inFlight)) {
+            delivery.cancel();
+        }
+    }
+
+    /**
+     * @return a future that completes, with the results in order, once every delivery is done
+     */
+    public static CompletableFuture<List<PushResult>> all(List<Delivery> deliveries) {
+        CompletableFuture<?>[] futures = new CompletableFuture[deliveries.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = deliveries.get(i).result();
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            List<PushResult> results = new ArrayList<>();
+            for (Delivery delivery : deliveries) {
+                results.add(delivery.result().join());
+            }
+            return results;
+        });
+    }
+
+    private static boolean isUnregistered(Response<?> response) {
+        if (response.code() != 404 || response.errorBody() == null) {
+            return false;
+        }
+        try {
+            return response.errorBody().string().contains("UNREGISTERED");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public class Delivery {
+
+        private final String userToken;
+        private final String topic;
+        private final String title;
+        private final String message;
+        private final CompletableFuture<PushResult> result = new CompletableFuture<>();
+        private volatile Future<?> task;
+        private volatile ScheduledFuture<?> deadline;
+        private volatile Call<NotificationResponse> call;
+
+        Delivery(String userToken, String topic, String title, String message) {
+            this.userToken = userToken;
+            this.topic = topic;
+            this.title = title;
+            this.message = message;
+        }
+
+        public String getUserToken() {
+            return userToken;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public CompletableFuture<PushResult> result() {
+            return result;
+        }
+
+        public void cancel() {
+            finish(PushResult.CANCELLED);
+        }
+
+        private void finish(PushResult outcome) {
+            if (!result.complete(outcome)) {
+                return;
+            }
+            if (outcome != PushResult.ACCEPTED && outcome != PushResult.UNREGISTERED && outcome != PushResult.FAILED) {
+                Call<NotificationResponse> c = call;
+                if (c != null) {
+                    c.cancel();
+                }
+                Future<?> t = task;
+                if (t != null) {
+                    t.cancel(false);
+                }
+            }
+        }
+
+        private void run() {
+            if (result.isDone()) {
+                return;
+            }
+
+            try {
+                String accessToken = MyFirebaseAuth.getAccessToken(SheGuard.getAppContext());
+                if (result.isDone()) {
+                    return;
+                }
+
+                // Receivers follow the live location under the sender's uid
+                FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+                NotificationDataModel data = new NotificationDataModel(title, message, user != null ? user.getUid() : null);
+                NotificationSenderModel sender = topic != null
+                        ? NotificationSenderModel.toTopic(topic, data)
+                        : new NotificationSenderModel(userToken, data);
+                call = api.sendNotification("Bearer " + accessToken, sender);
+                if (result.isDone()) {
+                    call.cancel();
+                    return;
+                }
+                Response<NotificationResponse> response = call.execute();
+
+                if (response.isSuccessful()) {
+                    finish(PushResult.ACCEPTED);
+                } else if (topic == null && isUnregistered(response)) {
+                    finish(PushResult.UNREGISTERED);
+                    ContactTokenCache.getInstance().invalidateToken(userToken);
+                } else {
+                    Log.e(TAG, "sendNotification failed: " + response.code() + " " + response.message());
+                    finish(PushResult.FAILED);
+                }
+            } catch (IOException e) {
+                // Also what a cancelled call throws; finish() is a no-op then
+                Log.e(TAG, "sendNotification error: " + e.getMessage());
+                finish(PushResult.FAILED);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.android.sheguard.util;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.util.Log;
+
+import com.android.sheguard.SheGuard;
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.AddressCache;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Turns coordinates into a street address without blocking the caller. {@link Geocoder} runs on
+ * a worker thread and its answers are kept in a persisted {@link AddressCache}, so a second
+ * lookup within about 50 m is answered straight from memory, even after a restart.
+ */
+public class ReverseGeocoder {
+
+    private static final String TAG = "ReverseGeocoder";
+    private static final Type ENTRY_LIST_TYPE = new TypeToken<List<AddressCache.Entry>>() {
+    }.getType();
+
+    private static ReverseGeocoder instance;
+
+    private final Context context;
+    private final AddressCache cache = new AddressCache();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reverse-geocoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ReverseGeocoder(Context context) {
+        this.context = context;
+        String json = Prefs.getString(Constants.PREFS_ADDRESS_CACHE, "");
+        if (!json.isEmpty()) {
+            try {
+                cache.restore(SheGuard.GSON.fromJson(json, ENTRY_LIST_TYPE));
+            } catch (JsonParseException e) {
+                Log.w(TAG, "dropping unreadable cache: " + e.getMessage());
+            }
+        }
+    }
+
+    public static synchronized ReverseGeocoder getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReverseGeocoder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the cached address, or {@code null}; a miss starts a lookup in the background so
+     * the next call can answer
+     */
+    public String peek(double latitude, double longitude) {
+        String address = cache.get(latitude, longitude, System.currentTimeMillis());
+        if (address == null) {
+            lookup(latitude, longitude);
+        }
+        return address;
+    }
+
+    /**
+     * Completes with the address lines joined by newlines, or {@code null} if the geocoder has
+     * none or failed. Completes on the worker thread unless the answer was cached.
+     */
+    public CompletableFuture<String> lookup(double latitude, double longitude) {
+        String cached = cache.get(latitude, longitude, System.currentTimeMillis());
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (!Geocoder.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String key = cache.key(latitude, longitude);
+        CompletableFuture<String> pending = inFlight.get(key);
+        if (pending != null) {
+            return pending;
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        pending = inFlight.putIfAbsent(key, result);
+        if (pending != null) {
+            return pending;
+        }
+
+        executor.execute(() -> {
+            String address = resolve(latitude, longitude);
+            if (address != null) {
+                cache.put(latitude, longitude, address, System.currentTimeMillis());
+                Prefs.putString(Constants.PREFS_ADDRESS_CACHE, SheGuard.GSON.toJson(cache.snapshot(), ENTRY_LIST_TYPE));
+            }
+            inFlight.remove(key);
+            result.complete(address);
+        });
+        return result;
+    }
+
+    private String resolve(double latitude, double longitude) {
+        try {
+            List<Address> addresses = new Geocoder(context, Locale.getDefault()).getFromLocation(latitude, longitude, 1);
+            if (addresses == null || addresses.isEmpty()) {
+                return null;
+            }
+
+            Address first = addresses.get(0);
+            StringBuilder address = new StringBuilder();
+            for (int i = 0; i <= first.getMaxAddressLineIndex(); i++) {
+                address.append(first.getAddressLine(i));
+
+                if (i < first.getMaxAddressLineIndex()) {
+                    address.append("\n");
+                }
+            }
+            return address.length() > 0 ? address.toString() : null;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "reverse geocoding failed: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.android.sheguard.util;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.android.sheguard.core.FallDetector;
+import com.android.sheguard.core.MotionGate;
+import com.android.sheguard.core.ShakeRecognizer;
+
+/**
+ * Feeds the accelerometer to a {@link ShakeRecognizer}, and to a {@link FallDetector} when fall
+ * detection is on, on its own thread and in two tiers chosen by a {@link MotionGate}. While the
+ * phone lies still the accelerometer runs at 5 Hz with samples batched in the sensor hub's FIFO,
+ * and a one-shot significant-motion trigger stands ready to wake the application processor.
+ * Once something moves it switches to game rate, and after a quiet spell it drops back. Each
+ * sample is judged by its own timestamp, so the batching only delays a shake, it doesn't hide
+ * one. Debug builds also hand every sample to the {@link TraceRecorder}, and export the trace
+ * shortly after each shake.
+ */
+public class ShakeMonitor implements SensorEventListener {
+
+    public interface Listener {
+
+        /**
+         * Called on the monitor's thread.
+         */
+        void onShake();
+    }
+
+    public interface FallListener {
+
+        /**
+         * Called on the monitor's thread.
+         */
+        void onFall();
+    }
+
+    private static final String TAG = "ShakeMonitor";
+    // Enough to notice motion; ShakeCorpusReport checks that no shake gets lost at this rate
+    private static final int IDLE_SAMPLING_PERIOD_US = 200000;
+    private static final int IDLE_MAX_REPORT_LATENCY_US = 500000;
+    // A fall's free-fall phase lasts a few hundred ms, too short to catch at 5 Hz
+    private static final int FALL_IDLE_SAMPLING_PERIOD_US = 40000;
+    // Game rate, while something is moving
+    private static final int ACTIVE_SAMPLING_PERIOD_US = 20000;
+    private static final int ACTIVE_MAX_REPORT_LATENCY_US = 200000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // Lets the trace catch what came after the shake too
+    private static final long TRACE_EXPORT_DELAY_MS = 5000;
+
+    private final ShakeRecognizer recognizer = new ShakeRecognizer();
+    private final MotionGate gate = new MotionGate();
+    private final FallDetector fallDetector = new FallDetector();
+    private final TraceRecorder recorder = TraceRecorder.getInstance();
+    private final Listener listener;
+    private volatile FallListener fallListener;
+    private final TriggerEventListener motionTrigger = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            // Arrives on the main thread
+            long timeMs = event.timestamp / NANOS_PER_MILLI;
+            Handler target = handler;
+            if (target != null) {
+                target.post(() -> onSignificantMotion(timeMs));
+            }
+        }
+    };
+    private SensorManager sensorManager;
+    private Sensor idleAccelerometer;
+    private Sensor activeAccelerometer;
+    private Sensor significantMotion;
+    private HandlerThread thread;
+    private volatile Handler handler;
+
+    public ShakeMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start(Context context) {
+        if (thread != null) {
+            return;
+        }
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        activeAccelerometer = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+        if (activeAccelerometer == null) {
+            Log.w(TAG, "no accelerometer");
+            return;
+        }
+        significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        // Without a significant-motion sensor, idle on the wake-up accelerometer so motion still wakes us
+        Sensor wakeUp = significantMotion == null ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true) : null;
+        idleAccelerometer = wakeUp != null ? wakeUp : activeAccelerometer;
+
+        recorder.start(context);
+        thread = new HandlerThread("shake-monitor", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(() -> {
+            recognizer.reset();
+            fallDetector.reset();
+            gate.reset();
+            enterTier(MotionGate.Tier.IDLE);
+        });
+        Log.i(TAG, "started, FIFO holds " + activeAccelerometer.getFifoMaxEventCount() + " events, significant motion "
+                + (significantMotion != null ? "available" : "unavailable"));
+    }
+
+    /**
+     * Turns fall detection on with a listener, or off with {@code null}. While it's on the idle
+     * tier samples at 25 Hz instead of 5 Hz, still batched.
+     */
+    public synchronized void setFallListener(FallListener listener) {
+        if ((fallListener == null) == (listener == null)) {
+            fallListener = listener;
+            return;
+        }
+        fallListener = listener;
+        Handler target = handler;
+        if (target != null) {
+            target.post(() -> {
+                fallDetector.reset();
+                enterTier(gate.getTier());
+            });
+        }
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        sensorManager.unregisterListener(this);
+        if (significantMotion != null) {
+            sensorManager.cancelTriggerSensor(motionTrigger, significantMotion);
+        }
+        handler = null;
+        thread.quitSafely();
+        thread = null;
+        recorder.stop();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] values = event.values;
+        long timeMs = event.timestamp / NANOS_PER_MILLI;
+        recorder.record(event);
+        if (recognizer.onSample(values[0], values[1], values[2], timeMs)) {
+            listener.onShake();
+            Handler target = handler;
+            if (TraceRecorder.isEnabled() && target != null) {
+                target.postDelayed(() -> recorder.export("shake"), TRACE_EXPORT_DELAY_MS);
+            }
+        }
+        FallListener fall = fallListener;
+        if (fall != null && fallDetector.onSample(values[0], values[1], values[2], timeMs)) {
+            fall.onFall();
+        }
+        if (gate.onSample(values[0], values[1], values[2], timeMs)) {
+            enterTier(gate.getTier());
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // do nothing
+    }
+
+    private void onSignificantMotion(long timeMs) {
+        if (handler != null && gate.onMotion(timeMs)) {
+            enterTier(gate.getTier());
+        }
+    }
+
+    /**
+     * Runs on the monitor's thread; locked so that it can't re-register after {@link #stop()}.
+     */
+    private synchronized void enterTier(MotionGate.Tier tier) {
+        Handler target = handler;
+        if (target == null) {
+            return;
+        }
+        sensorManager.unregisterListener(this);
+        if (tier == MotionGate.Tier.ACTIVE) {
+            if (significantMotion != null) {
+                sensorManager.cancelTriggerSensor(motionTrigger, significantMotion);
+            }
+            sensorManager.registerListener(this, activeAccelerometer, ACTIVE_SAMPLING_PERIOD_US, ACTIVE_MAX_REPORT_LATENCY_US, target);
+        } else {
+            int period = fallListener != null ? FALL_IDLE_SAMPLING_PERIOD_US : IDLE_SAMPLING_PERIOD_US;
+            sensorManager.registerListener(this, idleAccelerometer, period, IDLE_MAX_REPORT_LATENCY_US, target);
+            if (significantMotion != null) {
+                // One-shot; asked for again every time we go idle
+                sensorManager.requestTriggerSensor(motionTrigger, significantMotion);
+            }
+        }
+        Log.i(TAG, "tier " + tier);
+    }
+}
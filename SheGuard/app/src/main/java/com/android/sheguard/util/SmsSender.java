@@ -0,0 +1,217 @@
+package com.android.sheguard.util;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.android.sheguard.core.SmsRateLimiter;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Sends SOS texts as multipart SMS with sent and delivered reports for every part, paced by
+ * {@link SmsRateLimiter}. Each send completes once the radio has accepted or rejected all of
+ * its parts; delivery reports arrive later and only stop the wait for them.
+ * <p>
+ * A send the radio has not reported on in time completes as {@link Status#QUEUED}: the text may
+ * still go out, so it must not be retried. Its key stays registered and a late sent report is
+ * passed on when it comes.
+ */
+public class SmsSender {
+
+    public enum Status {
+        QUEUED, SENT, FAILED
+    }
+
+    private static final String TAG = "SmsSender";
+    private static final String ACTION_SENT = "com.android.sheguard.SMS_SENT";
+    private static final String ACTION_DELIVERED = "com.android.sheguard.SMS_DELIVERED";
+    private static final String EXTRA_KEY = "key";
+    // A message the radio has not reported on by then is answered as QUEUED
+    private static final long SENT_TIMEOUT_MS = 60000;
+    // Not every carrier sends delivery reports; stop waiting for them after this
+    private static final long DELIVERY_REPORT_WINDOW_MS = 10 * 60 * 1000L;
+
+    private static SmsSender instance;
+
+    private final Context context;
+    private final SmsRateLimiter limiter = new SmsRateLimiter();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "sms-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger requestCodes = new AtomicInteger();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private long nextSlotMs = 0;
+
+    private SmsSender(Context context) {
+        this.context = context;
+        executor.setRemoveOnCancelPolicy(true);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SENT);
+        filter.addAction(ACTION_DELIVERED);
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onReport(intent.getAction(), intent.getStringExtra(EXTRA_KEY), getResultCode());
+            }
+        }, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    public static synchronized SmsSender getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsSender(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a text. Completes with {@link Status#SENT} once every part was sent,
+     * {@link Status#FAILED} if any part failed, or {@link Status#QUEUED} if the radio has not
+     * reported on every part within a minute of transmitting.
+     *
+     * @param key         identifies this message in the sent/delivered reports
+     * @param lateVerdict told whether the text was sent, if the radio reports after the send
+     *                    completed as QUEUED
+     */
+    public CompletableFuture<Status> send(String key, String phone, String message, Consumer<Boolean> lateVerdict) {
+        SmsManager smsManager = SmsManager.getDefault();
+        ArrayList<String> parts = smsManager.divideMessage(message);
+        Pending p = new Pending(parts.size(), lateVerdict);
+        Pending existing = pending.putIfAbsent(key, p);
+        if (existing != null) {
+            return existing.result;
+        }
+
+        long delay;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            long at = limiter.nextAllowedAt(Math.max(now, nextSlotMs), parts.size());
+            limiter.record(at, parts.size());
+            nextSlotMs = at;
+            delay = at - now;
+        }
+        if (delay > 0) {
+            Log.i(TAG, "pacing SMS to " + phone + " by " + delay + " ms");
+        }
+
+        executor.schedule(() -> transmit(key, phone, parts), delay, TimeUnit.MILLISECONDS);
+        executor.schedule(() -> {
+            if (p.timeOut()) {
+                Log.w(TAG, "no sent report for SMS to " + phone + " after " + SENT_TIMEOUT_MS + " ms");
+            }
+        }, delay + SENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        // Reports that never come; by now not even a delivery report is expected
+        executor.schedule(() -> pending.remove(key, p), delay + DELIVERY_REPORT_WINDOW_MS, TimeUnit.MILLISECONDS);
+        return p.result;
+    }
+
+    private void settle(String key, Pending p, boolean sent) {
+        if (!p.settle(sent)) {
+            return;
+        }
+        if (!sent) {
+            pending.remove(key, p);
+        }
+    }
+
+    private void transmit(String key, String phone, ArrayList<String> parts) {
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>();
+        ArrayList<PendingIntent> deliveredIntents = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            sentIntents.add(reportIntent(ACTION_SENT, key));
+            deliveredIntents.add(reportIntent(ACTION_DELIVERED, key));
+        }
+
+        try {
+            SmsManager.getDefault().sendMultipartTextMessage(phone, null, parts, sentIntents, deliveredIntents);
+            Log.i(TAG, "SMS queued to radio: " + parts.size() + " part(s)");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "sendMultipartTextMessage failed: " + e.getMessage());
+            Pending p = pending.get(key);
+            if (p != null) {
+                settle(key, p, false);
+            }
+        }
+    }
+
+    private PendingIntent reportIntent(String action, String key) {
+        Intent intent = new Intent(action).setPackage(context.getPackageName()).putExtra(EXTRA_KEY, key);
+        return PendingIntent.getBroadcast(context, requestCodes.incrementAndGet(), intent,
+                PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void onReport(String action, String key, int resultCode) {
+        Pending p = key != null ? pending.get(key) : null;
+        if (p == null) {
+            return;
+        }
+
+        if (ACTION_SENT.equals(action)) {
+            if (resultCode != Activity.RESULT_OK) {
+                Log.w(TAG, "SMS part failed with result " + resultCode);
+                settle(key, p, false);
+            } else if (p.partsSent.incrementAndGet() == p.parts) {
+                settle(key, p, true);
+            }
+        } else if (ACTION_DELIVERED.equals(action) && p.partsDelivered.incrementAndGet() == p.parts) {
+            // Delivered implies sent, should the sent reports have gone missing
+            settle(key, p, true);
+            pending.remove(key);
+            Log.i(TAG, "SMS delivered");
+        }
+    }
+
+    private static class Pending {
+
+        final int parts;
+        final AtomicInteger partsSent = new AtomicInteger();
+        final AtomicInteger partsDelivered = new AtomicInteger();
+        final CompletableFuture<Status> result = new CompletableFuture<>();
+        private final Consumer<Boolean> lateVerdict;
+        private boolean settled;
+
+        Pending(int parts, Consumer<Boolean> lateVerdict) {
+            this.parts = parts;
+            this.lateVerdict = lateVerdict;
+        }
+
+        /**
+         * @return false if the radio already gave its verdict
+         */
+        synchronized boolean settle(boolean sent) {
+            if (settled) {
+                return false;
+            }
+            settled = true;
+            if (!result.complete(sent ? Status.SENT : Status.FAILED)) {
+                lateVerdict.accept(sent);
+            }
+            return true;
+        }
+
+        /**
+         * @return false if the radio gave its verdict in time
+         */
+        synchronized boolean timeOut() {
+            return !settled && result.complete(Status.QUEUED);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.android.sheguard.util;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+
+import com.android.sheguard.R;
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.android.sheguard.core.AcquisitionPolicy;
+import com.android.sheguard.core.ContactCodec;
+import com.android.sheguard.core.FixAcquisition;
+import com.android.sheguard.core.GeoFix;
+import com.android.sheguard.core.LocationDemand;
+import com.android.sheguard.core.ProgressivePolicy;
+import com.android.sheguard.core.PushFanout;
+import com.android.sheguard.core.PushResult;
+import com.android.sheguard.core.SosCoordinator;
+import com.android.sheguard.core.SosMessageFormatter;
+import com.android.sheguard.core.SosTrigger;
+import com.android.sheguard.core.TokenCache;
+import com.android.sheguard.core.port.AlertGateway;
+import com.android.sheguard.core.port.ContactSource;
+import com.android.sheguard.core.port.DeviceActions;
+import com.android.sheguard.core.port.LocationSource;
+import com.android.sheguard.core.port.SosSettings;
+import com.android.sheguard.model.ContactModel;
+import com.android.sheguard.service.OutboxJobService;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Android side of the SOS pipeline. The button, shake and Bluetooth triggers all feed into
+ * {@link #trigger(Context, SosTrigger)}; the session itself is run by {@link SosCoordinator},
+ * with this class supplying settings, contacts, location and the actual SMS/push/call/siren.
+ */
+public class SosEngine implements SosSettings, ContactSource, LocationSource, AlertGateway, DeviceActions {
+
+    private static final String TAG = "SosEngine";
+    // Cached fixes older than this are not worth sending
+    private static final long CACHED_FIX_MAX_AGE_MS = 10 * 60 * 1000L;
+    private static final int OUTBOX_BATCH_SIZE = 20;
+    private static final long OUTBOX_DRAIN_TIMEOUT_MS = 60000;
+    private static final LocationDemand UPDATE_DEMAND = new LocationDemand(LocationDemand.Accuracy.HIGH, 5000, 2000);
+
+    private static final SosEngine INSTANCE = new SosEngine();
+
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(4, new StageThreadFactory());
+    private final MediaPlayer mediaPlayer = new MediaPlayer();
+    private final PushFanout pushFanout = new PushFanout(this, this::tokenFor,
+            (token, title, message) -> NotificationDispatcher.getInstance().send(token, title, message).result(),
+            new PushFanout.Topics() {
+                @Override
+                public String currentTopic() {
+                    return SosTopicManager.ownTopic();
+                }
+
+                @Override
+                public Set<String> members(String topic) {
+                    return SosTopicManager.members(topic);
+                }
+            },
+            (topic, title, message) -> NotificationDispatcher.getInstance().sendToTopic(topic, title, message).result());
+    private Context context;
+    private SosCoordinator coordinator;
+
+    private SosEngine() {
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public static SosEngine getInstance() {
+        return INSTANCE;
+    }
+
+    private synchronized SosCoordinator coordinator(Context context) {
+        if (coordinator == null) {
+            this.context = context.getApplicationContext();
+            SosMessageFormatter formatter = new SosMessageFormatter(
+                    this.context.getString(R.string.sos_message),
+                    this.context.getString(R.string.sos_notification));
+            formatter.setUpdateTemplate(this.context.getString(R.string.sos_location_update));
+            formatter.setTimeZone(TimeZone.getDefault(), System::currentTimeMillis);
+            ReverseGeocoder geocoder = ReverseGeocoder.getInstance(this.context);
+            formatter.setAddressLookup(fix -> geocoder.peek(fix.getLatitude(), fix.getLongitude()));
+            coordinator = new SosCoordinator(executor, SystemClock::elapsedRealtime, this, this, this, this, this, formatter);
+            coordinator.setListener(new SosCoordinator.Listener() {
+                @Override
+                public void onTriggerCoalesced(SosTrigger trigger, SosTrigger activeTrigger) {
+                    Log.i(TAG, "trigger " + trigger + " coalesced into session started by " + activeTrigger);
+                }
+
+                @Override
+                public void onStageDone(SosTrigger trigger, SosCoordinator.Stage stage, long elapsedMs) {
+                    Log.i(TAG, stage + " done " + elapsedMs + " ms after " + trigger + " trigger");
+                }
+
+                @Override
+                public void onSessionDone(SosTrigger trigger, long elapsedMs, Throwable error) {
+                    if (error != null) {
+                        Log.e(TAG, "session failed: " + error.getMessage(), error);
+                    }
+                    Log.i(TAG, "session dispatched in " + elapsedMs + " ms");
+                }
+
+                @Override
+                public void onSmsFailed(SosTrigger trigger, int failed, int total) {
+                    Log.w(TAG, failed + "/" + total + " SMS failed after " + trigger + " trigger");
+                }
+
+                @Override
+                public void onLocationUpdateSent(SosTrigger trigger, int update, GeoFix fix, long elapsedMs) {
+                    Log.i(TAG, "location update " + update + " (" + fix.getAccuracyMeters() + " m) sent " + elapsedMs + " ms after " + trigger + " trigger");
+                }
+            });
+        }
+        return coordinator;
+    }
+
+    public boolean trigger(Context context, SosTrigger trigger) {
+        SosCoordinator coordinator = coordinator(context);
+        coordinator.setProgressivePolicy(Prefs.getBoolean(Constants.SETTINGS_PROGRESSIVE_ALERTS, true) ? ProgressivePolicy.DEFAULT : null);
+        SosCoordinator.Session session = coordinator.trigger(trigger);
+        if (session != null) {
+            Log.i(TAG, "session started by " + trigger);
+            LocationCache.getInstance().refine(this.context);
+            SosUtil.startLiveLocation(this.context);
+        }
+        return session != null;
+    }
+
+    public synchronized boolean isActive() {
+        return (coordinator != null && coordinator.isActive()) || isSirenPlaying();
+    }
+
+    public void stop() {
+        SosCoordinator c;
+        synchronized (this) {
+            c = coordinator;
+        }
+        if (c != null) {
+            c.stop();
+        }
+        NotificationDispatcher.getInstance().cancelAll();
+        if (context != null) {
+            SosUtil.stopLiveLocation(context);
+        }
+        stopSiren();
+        Log.i(TAG, "Stopped SOS");
+    }
+
+    public synchronized boolean isSirenPlaying() {
+        try {
+            return mediaPlayer.isPlaying();
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    public synchronized void stopSiren() {
+        try {
+            mediaPlayer.stop();
+            mediaPlayer.reset();
+        } catch (Exception ignored) {
+        }
+    }
+
+    @Override
+    public synchronized void playSiren() {
+        if (mediaPlayer.isPlaying()) {
+            return;
+        }
+
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd("police-operation-siren.mp3");
+            if (audioManager != null) {
+                audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC), 0);
+            }
+            mediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            mediaPlayer.prepare();
+            mediaPlayer.setVolume(1f, 1f);
+            mediaPlayer.setLooping(true);
+            mediaPlayer.start();
+        } catch (IOException e) {
+            Log.e(TAG, "playSiren error: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void callEmergency() {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.CALL_PHONE) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+
+        Intent intent = new Intent(Intent.ACTION_CALL, Uri.parse("tel:" + Constants.EMERGENCY_NUMBER));
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(intent);
+        Log.i(TAG, "Calling Emergency");
+    }
+
+    @Override
+    public boolean isCallEmergencyEnabled() {
+        return Prefs.getBoolean(Constants.SETTINGS_CALL_EMERGENCY_SERVICE, false);
+    }
+
+    @Override
+    public boolean isSirenEnabled() {
+        return Prefs.getBoolean(Constants.SETTINGS_PLAY_SIREN, false);
+    }
+
+    @Override
+    public boolean isSmsEnabled() {
+        return Prefs.getBoolean(Constants.SETTINGS_SEND_SMS, true);
+    }
+
+    @Override
+    public boolean isPushEnabled() {
+        return Prefs.getBoolean(Constants.SETTINGS_SEND_NOTIFICATION, true);
+    }
+
+    @Override
+    public String getSenderName() {
+        return Prefs.getString(Constants.PREFS_USER_NAME, context.getString(R.string.app_name));
+    }
+
+    @Override
+    public List<ContactModel> loadContacts() {
+        return ContactCodec.decode(Prefs.getString(Constants.CONTACTS_LIST, ""));
+    }
+
+    @Override
+    public CompletableFuture<GeoFix> currentFix() {
+        // Without a fix the alerts still go out, just without a location
+        return LocationAcquirer.acquire(context, AcquisitionPolicy.SOS).thenApply(FixAcquisition.Outcome::getFix);
+    }
+
+    @Override
+    public CompletableFuture<GeoFix> bestAvailableFix() {
+        CompletableFuture<GeoFix> result = new CompletableFuture<>();
+        if (!hasLocationPermission()) {
+            result.complete(null);
+            return result;
+        }
+
+        // Read straight from the cache when it is warm; it is refined in parallel by trigger()
+        GeoFix cached = LocationCache.getInstance().best(CACHED_FIX_MAX_AGE_MS);
+        if (cached != null) {
+            result.complete(cached);
+            return result;
+        }
+
+        LocationServices.getFusedLocationProviderClient(context).getLastLocation()
+                .addOnSuccessListener(location -> result.complete(location != null ? LocationCache.toGeoFix(location) : null))
+                .addOnFailureListener(e -> result.complete(null));
+        return result;
+    }
+
+    @Override
+    public Runnable subscribeFixes(Consumer<GeoFix> listener) {
+        if (!SosUtil.isGPSEnabled(context)) {
+            return () -> {
+            };
+        }
+        return LocationHub.getInstance().subscribe(context, UPDATE_DEMAND, location -> listener.accept(LocationCache.toGeoFix(location)));
+    }
+
+    private boolean hasLocationPermission() {
+        return ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendSms(String sessionId, ContactModel contact, String message) {
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+        AlertOutbox.Record record = outbox.enqueue(
+                AlertOutbox.key(sessionId, AlertOutbox.CHANNEL_SMS, contact.getPhone(), message),
+                AlertOutbox.CHANNEL_SMS, contact.getPhone(), null, message);
+        if (record == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return deliverSms(record).whenComplete((sent, error) -> OutboxJobService.schedule(context, AlertOutbox.CHANNEL_SMS));
+    }
+
+    private CompletableFuture<Boolean> deliverSms(AlertOutbox.Record record) {
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
+            outbox.markFailed(record, "SEND_SMS not granted", false);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return SmsSender.getInstance(context).send(record.getKey(), record.getRecipient(), record.getMessage(),
+                        sent -> settleSms(record, sent))
+                .thenApply(status -> {
+                    if (status == SmsSender.Status.QUEUED) {
+                        // It may still go out; a retry now could text the contact twice
+                        outbox.markUnknown(record.getKey());
+                        return false;
+                    }
+                    settleSms(record, status == SmsSender.Status.SENT);
+                    return status == SmsSender.Status.SENT;
+                });
+    }
+
+    private void settleSms(AlertOutbox.Record record, boolean sent) {
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+        if (sent) {
+            outbox.markSent(record.getKey());
+        } else {
+            outbox.markFailed(record, "not sent", true);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PushResult>> sendPush(String sessionId, List<ContactModel> contacts, String title, String message) {
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+        List<AlertOutbox.Record> records = new ArrayList<>();
+        List<String> phones = new ArrayList<>();
+        for (ContactModel contact : contacts) {
+            AlertOutbox.Record record = outbox.enqueue(
+                    AlertOutbox.key(sessionId, AlertOutbox.CHANNEL_PUSH, contact.getPhone(), message),
+                    AlertOutbox.CHANNEL_PUSH, contact.getPhone(), title, message);
+            if (record != null) {
+                records.add(record);
+                phones.add(record.getRecipient());
+            }
+        }
+        // The first attempt may go out as one topic publish; retries go to each contact's token
+        return pushFanout.sendAll(phones, title, message)
+                .thenApply(results -> {
+                    for (AlertOutbox.Record record : records) {
+                        settlePush(record, results.get(record.getRecipient()));
+                    }
+                    return results;
+                })
+                .whenComplete((ignored, error) -> OutboxJobService.schedule(context, AlertOutbox.CHANNEL_PUSH));
+    }
+
+    private CompletableFuture<Void> deliverPushes(List<AlertOutbox.Record> records) {
+        List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (AlertOutbox.Record record : records) {
+            sends.add(pushFanout.send(record.getRecipient(), record.getTitle(), record.getMessage())
+                    .thenAccept(result -> settlePush(record, result)));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<String> tokenFor(String phone) {
+        ContactTokenCache tokenCache = ContactTokenCache.getInstance();
+        TokenCache.Entry entry = tokenCache.get(phone);
+        if (entry == null) {
+            return tokenCache.fetch(phone);
+        }
+        // Cached tokens go out right away, even past their TTL; the refresh happens alongside
+        if (tokenCache.isStale(entry)) {
+            tokenCache.fetch(phone);
+        }
+        return CompletableFuture.completedFuture(entry.getToken());
+    }
+
+    private void settlePush(AlertOutbox.Record record, PushResult result) {
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+        switch (result) {
+            case ACCEPTED:
+                outbox.markSent(record.getKey());
+                break;
+            case UNREGISTERED:
+            case CANCELLED:
+            case NO_ACCOUNT:
+            case NOT_TRUSTED:
+                outbox.markFailed(record, result.name(), false);
+                break;
+            default:
+                outbox.markFailed(record, result.name(), true);
+        }
+    }
+
+    /**
+     * Retries everything due on one channel of the outbox, then schedules its next run. Called
+     * from {@link OutboxJobService}, possibly in a fresh process.
+     */
+    public void drainOutbox(Context context, String channel) {
+        coordinator(context);
+        AlertOutbox outbox = AlertOutbox.getInstance(context);
+
+        List<AlertOutbox.Record> records;
+        while (!(records = outbox.claimDue(channel, OUTBOX_BATCH_SIZE)).isEmpty()) {
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            if (AlertOutbox.CHANNEL_SMS.equals(channel)) {
+                for (AlertOutbox.Record record : records) {
+                    sends.add(deliverSms(record));
+                }
+            } else {
+                sends.add(deliverPushes(records));
+            }
+            try {
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(OUTBOX_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Unsettled rows are handed out again once their lease runs out
+                Log.w(TAG, "outbox: retry did not settle: " + e.getMessage());
+                break;
+            }
+            Log.i(TAG, "outbox: retried " + records.size() + " alerts");
+        }
+
+        outbox.purgeFinished();
+        OutboxJobService.schedule(context, channel);
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "sos-stage-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.android.sheguard.util;
+
+import android.util.Log;
+
+import com.android.sheguard.SheGuard;
+import com.android.sheguard.common.Constants;
+import com.android.sheguard.config.Prefs;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-user SOS topics. The topic is named by a random secret rather than the uid, so it can't be
+ * guessed, and it is only handed out through an invite in {@code SosInvites} to a contact the user
+ * added. The contact's app asks before joining; an invite counts once it is accepted and the
+ * contact has subscribed to the current topic.
+ * <p>
+ * Nobody can be taken off a topic, so removing a contact rotates it: nothing is published on the
+ * old topic again, and the remaining contacts move to the new one on their next sync without
+ * being asked again.
+ */
+public class SosTopicManager {
+
+    private static final String TAG = "SosTopicManager";
+    private static final Type STRING_SET_TYPE = new TypeToken<Set<String>>() {
+    }.getType();
+    private static final String STATUS_PENDING = "pending";
+    private static final String STATUS_ACCEPTED = "accepted";
+    private static final String STATUS_DECLINED = "declined";
+
+    public interface InviteListener {
+
+        void onInvite(Invite invite);
+    }
+
+    /**
+     * @return this user's topic, created on first use
+     */
+    public static synchronized String ownTopic() {
+        String topic = Prefs.getString(Constants.PREFS_SOS_TOPIC, "");
+        if (topic.isEmpty()) {
+            topic = newTopic();
+            Prefs.putString(Constants.PREFS_SOS_TOPIC, topic);
+        }
+        return topic;
+    }
+
+    /**
+     * @return the contacts who joined this topic, as of the last refresh
+     */
+    public static Set<String> members(String topic) {
+        return topic.equals(ownTopic()) ? loadSet(Constants.PREFS_SOS_TOPIC_MEMBERS) : new HashSet<>();
+    }
+
+    public static void invite(String phone) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return;
+        }
+
+        Map<String, Object> invite = new HashMap<>();
+        invite.put("fromUid", user.getUid());
+        invite.put("fromName", Prefs.getString(Constants.PREFS_USER_NAME, ""));
+        invite.put("toPhone", phone);
+        invite.put("topic", ownTopic());
+        invite.put("status", STATUS_PENDING);
+
+        inviteFor(user, phone).set(invite);
+    }
+
+    /**
+     * Withdraws the invite and rotates the topic, so the removed contact gets nothing on it even
+     * though they are still subscribed to the old one.
+     */
+    public static void revoke(String phone) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return;
+        }
+
+        inviteFor(user, phone).delete();
+
+        String topic;
+        synchronized (SosTopicManager.class) {
+            topic = newTopic();
+            Prefs.putString(Constants.PREFS_SOS_TOPIC, topic);
+            saveSet(Constants.PREFS_SOS_TOPIC_MEMBERS, new HashSet<>());
+        }
+        Log.i(TAG, "topic rotated");
+
+        FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_INVITES)
+                .whereEqualTo("fromUid", user.getUid())
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    WriteBatch batch = FirebaseFirestore.getInstance().batch();
+                    for (DocumentSnapshot document : snapshot.getDocuments()) {
+                        if (!phone.equals(document.getString("toPhone"))) {
+                            batch.update(document.getReference(), "topic", topic);
+                        }
+                    }
+                    batch.commit();
+                });
+    }
+
+    /**
+     * Sender side: reloads which contacts accepted and joined the current topic.
+     */
+    public static void refreshAccepted() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return;
+        }
+
+        FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_INVITES)
+                .whereEqualTo("fromUid", user.getUid())
+                .whereEqualTo("status", STATUS_ACCEPTED)
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    synchronized (SosTopicManager.class) {
+                        String topic = ownTopic();
+                        Set<String> members = new HashSet<>();
+                        for (DocumentSnapshot document : snapshot.getDocuments()) {
+                            String phone = document.getString("toPhone");
+                            if (phone != null && topic.equals(document.getString("joinedTopic"))) {
+                                members.add(phone);
+                            }
+                        }
+                        saveSet(Constants.PREFS_SOS_TOPIC_MEMBERS, members);
+                    }
+                });
+    }
+
+    /**
+     * Contact side: hands each pending invite to the listener to ask the user, moves accepted
+     * invites over to a rotated topic, and drops topics whose invite was revoked.
+     */
+    public static void syncSubscriptions(String myPhone, InviteListener listener) {
+        if (myPhone == null || myPhone.isEmpty()) {
+            return;
+        }
+
+        FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_INVITES)
+                .whereEqualTo("toPhone", myPhone)
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    Set<String> previous = loadSet(Constants.PREFS_SOS_TOPIC_SUBSCRIPTIONS);
+                    Set<String> current = new HashSet<>();
+
+                    for (DocumentSnapshot document : snapshot.getDocuments()) {
+                        String topic = document.getString("topic");
+                        if (topic == null) {
+                            continue;
+                        }
+
+                        String status = document.getString("status");
+                        if (STATUS_PENDING.equals(status)) {
+                            listener.onInvite(new Invite(document.getReference(), document.getString("fromName"), topic));
+                        } else if (STATUS_ACCEPTED.equals(status)) {
+                            current.add(topic);
+                            if (!topic.equals(document.getString("joinedTopic"))) {
+                                join(document.getReference(), topic);
+                            }
+                        }
+                    }
+
+                    for (String topic : previous) {
+                        if (!current.contains(topic)) {
+                            FirebaseMessaging.getInstance().unsubscribeFromTopic(topic);
+                            Log.i(TAG, "unsubscribed from a topic");
+                        }
+                    }
+
+                    saveSet(Constants.PREFS_SOS_TOPIC_SUBSCRIPTIONS, current);
+                });
+    }
+
+    /**
+     * Contact side: the user agreed to get this sender's alerts.
+     */
+    public static void accept(Invite invite) {
+        invite.reference.update("status", STATUS_ACCEPTED);
+        join(invite.reference, invite.topic);
+    }
+
+    public static void decline(Invite invite) {
+        invite.reference.update("status", STATUS_DECLINED);
+    }
+
+    private static void join(DocumentReference reference, String topic) {
+        FirebaseMessaging.getInstance().subscribeToTopic(topic).addOnSuccessListener(ignored -> {
+            reference.update("joinedTopic", topic);
+            synchronized (SosTopicManager.class) {
+                Set<String> subscriptions = loadSet(Constants.PREFS_SOS_TOPIC_SUBSCRIPTIONS);
+                subscriptions.add(topic);
+                saveSet(Constants.PREFS_SOS_TOPIC_SUBSCRIPTIONS, subscriptions);
+            }
+            Log.i(TAG, "subscribed to a topic");
+        });
+    }
+
+    private static DocumentReference inviteFor(FirebaseUser user, String phone) {
+        return FirebaseFirestore.getInstance()
+                .collection(Constants.FIRESTORE_COLLECTION_SOS_INVITES)
+                .document(user.getUid() + "_" + phone);
+    }
+
+    private static String newTopic() {
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder topic = new StringBuilder("sos_");
+        for (byte b : secret) {
+            topic.append(String.format("%02x", b));
+        }
+        return topic.toString();
+    }
+
+    private static Set<String> loadSet(String key) {
+        String json = Prefs.getString(key, "");
+        Set<String> set = json.isEmpty() ? null : SheGuard.GSON.fromJson(json, STRING_SET_TYPE);
+        return set != null ? set : new HashSet<>();
+    }
+
+    private static void saveSet(String key, Set<String> set) {
+        Prefs.putString(key, SheGuard.GSON.toJson(set, STRING_SET_TYPE));
+    }
+
+    public static class Invite {
+
+        private final DocumentReference reference;
+        private final String fromName;
+        private final String topic;
+
+        Invite(DocumentReference reference, String fromName, String topic) {
+            this.reference = reference;
+            this.fromName = fromName;
+            this.topic = topic;
+        }
+
+        public String getFromName() {
+            return fromName;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.android.sheguard.util;
+
+import android.content.Context;
+import android.hardware.SensorEvent;
+import android.util.Log;
+
+import com.android.sheguard.BuildConfig;
+import com.android.sheguard.core.TraceWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Debug builds only: keeps the last stretch of accelerometer samples ShakeMonitor saw in a
+ * bounded ring file, so the motion behind a false alarm or a missed shake can be pulled off the
+ * device and replayed with TraceReplay. Exports land in the app's external files dir under
+ * {@code traces/}, reachable with {@code adb pull} and no extra permissions.
+ */
+public class TraceRecorder {
+
+    private static final String TAG = "TraceRecorder";
+    // 256 blocks of 4 KiB: about 45 minutes of movement at game rate, far longer at rest
+    private static final int BLOCK_COUNT = 256;
+    private static final String DIRECTORY = "traces";
+    private static final String RING_FILE = "accelerometer.sgt";
+
+    private static TraceRecorder instance;
+
+    private final ExecutorService exporter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trace-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Context context;
+    private TraceWriter writer;
+
+    private TraceRecorder() {
+    }
+
+    public static synchronized TraceRecorder getInstance() {
+        if (instance == null) {
+            instance = new TraceRecorder();
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return BuildConfig.DEBUG;
+    }
+
+    public synchronized void start(Context context) {
+        if (!isEnabled() || writer != null) {
+            return;
+        }
+        this.context = context.getApplicationContext();
+        File directory = new File(this.context.getFilesDir(), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "cannot create " + directory);
+            return;
+        }
+        try {
+            writer = new TraceWriter(new File(directory, RING_FILE), BLOCK_COUNT);
+        } catch (IOException e) {
+            Log.w(TAG, "cannot open trace ring: " + e.getMessage());
+        }
+    }
+
+    public synchronized void record(SensorEvent event) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.record(event.timestamp, event.values[0], event.values[1], event.values[2]);
+        } catch (IOException e) {
+            Log.w(TAG, "recording stopped: " + e.getMessage());
+            stop();
+        }
+    }
+
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.w(TAG, "closing trace ring: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    /**
+     * Copies the ring as it stands, off the caller's thread.
+     *
+     * @param reason goes into the file name, e.g. "shake" or "manual"
+     * @return completes with the exported file, or {@code null} if nothing is being recorded or the
+     * copy failed
+     */
+    public CompletableFuture<File> export(String reason) {
+        return CompletableFuture.supplyAsync(() -> exportNow(reason), exporter);
+    }
+
+    private synchronized File exportNow(String reason) {
+        if (writer == null) {
+            return null;
+        }
+        File directory = context.getExternalFilesDir(DIRECTORY);
+        if (directory == null) {
+            Log.w(TAG, "external storage unavailable");
+            return null;
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        File file = new File(directory, "accelerometer-" + stamp + "-" + reason + ".sgt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            writer.copyTo(out);
+        } catch (IOException e) {
+            Log.w(TAG, "export failed: " + e.getMessage());
+            return null;
+        }
+        Log.i(TAG, "exported " + file);
+        return file;
+    }
+}
@@ -0,0 +1,37 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.model.ContactModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContactCodecBenchmark {
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        List<ContactModel> contacts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            contacts.add(new ContactModel("Contact " + i, "01700000" + String.format("%03d", i)));
+        }
+        json = ContactCodec.encode(contacts);
+    }
+
+    @Benchmark
+    public List<ContactModel> decodeTenContacts() {
+        return ContactCodec.decode(json);
+    }
+}
@@ -0,0 +1,96 @@
+package com.android.sheguard.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second through the old StringBuilder line splitting and through FrameDecoder, for
+ * text lines and for binary frames, on a stream cut into reads the way the RFCOMM reader sees it. With the gc profiler,
+ * {@code gc.alloc.rate.norm} is bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameDecoderBenchmark {
+
+    private static final int FRAMES = 1024;
+    private static final int READ_SIZE = 256;
+
+    private byte[] stream;
+    private byte[] binaryStream;
+    private FrameDecoder decoder;
+    private final int[] counts = new int[FrameDecoder.Frame.values().length];
+    private final FrameDecoder.Sink sink = frame -> counts[frame.ordinal()]++;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < FRAMES; i++) {
+            text.append(i % 4 == 3 ? "TRIPLE_PRESS_ACTION\r\n" : "P\r\n");
+        }
+        stream = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+        byte[] frame = new byte[WearableProtocol.MAX_FRAME_SIZE];
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i++) {
+            int type = i % 4 == 3 ? WearableProtocol.TYPE_TRIPLE_PRESS : WearableProtocol.TYPE_PRESS;
+            binary.write(frame, 0, WearableProtocol.encode(frame, type, i, i * 250L, null, 0));
+        }
+        binaryStream = binary.toByteArray();
+        decoder = new FrameDecoder();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int stringLines() {
+        int triples = 0;
+        StringBuilder lineBuffer = new StringBuilder();
+        for (int offset = 0; offset < stream.length; offset += READ_SIZE) {
+            int n = Math.min(READ_SIZE, stream.length - offset);
+            lineBuffer.append(new String(stream, offset, n));
+            int idx;
+            while ((idx = lineBuffer.indexOf("\n")) >= 0) {
+                String line = lineBuffer.substring(0, idx);
+                lineBuffer.delete(0, idx + 1);
+                String frame = line.trim();
+                if (!frame.isEmpty() && frame.contains("TRIPLE_PRESS_ACTION")) {
+                    triples++;
+                }
+            }
+            if (lineBuffer.length() > 512) {
+                lineBuffer.setLength(0);
+            }
+        }
+        return triples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int decoder() {
+        int frames = 0;
+        for (int offset = 0; offset < stream.length; offset += READ_SIZE) {
+            frames += decoder.feed(stream, offset, Math.min(READ_SIZE, stream.length - offset), sink);
+        }
+        return frames;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int binaryDecoder() {
+        int frames = 0;
+        for (int offset = 0; offset < binaryStream.length; offset += READ_SIZE) {
+            frames += decoder.feed(binaryStream, offset, Math.min(READ_SIZE, binaryStream.length - offset), sink);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,32 @@
+package com.android.sheguard.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PressWindowBenchmark {
+
+    private PressWindow pressWindow;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        pressWindow = new PressWindow();
+        now = 0;
+    }
+
+    @Benchmark
+    public boolean press() {
+        now += 400;
+        return pressWindow.onPress(now);
+    }
+}
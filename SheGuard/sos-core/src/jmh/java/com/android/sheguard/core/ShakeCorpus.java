@@ -0,0 +1,90 @@
+package com.android.sheguard.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accelerometer traces under {@code shake-corpus/} on the classpath, listed in
+ * {@code index.txt}. Each trace is a CSV of {@code t_ms,x,y,z} rows after a
+ * {@code # label: shake|fall|none} header, so recordings from a device can be dropped in next to
+ * the generated ones.
+ */
+public final class ShakeCorpus {
+
+    static final String DIRECTORY = "shake-corpus/";
+
+    private ShakeCorpus() {
+    }
+
+    public static List<Trace> load() throws IOException {
+        List<Trace> traces = new ArrayList<>();
+        for (String name : readLines(DIRECTORY + "index.txt")) {
+            if (!name.isEmpty() && !name.startsWith("#")) {
+                traces.add(parse(name, readLines(DIRECTORY + name)));
+            }
+        }
+        return traces;
+    }
+
+    static Trace parse(String name, List<String> lines) {
+        String label = "none";
+        List<String> rows = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("# label:")) {
+                label = line.substring("# label:".length()).trim();
+            } else if (!line.isEmpty() && !line.startsWith("#") && !line.startsWith("t_ms")) {
+                rows.add(line);
+            }
+        }
+
+        long[] times = new long[rows.size()];
+        float[] xyz = new float[rows.size() * 3];
+        for (int i = 0; i < rows.size(); i++) {
+            String[] fields = rows.get(i).split(",");
+            times[i] = Long.parseLong(fields[0].trim());
+            xyz[i * 3] = Float.parseFloat(fields[1].trim());
+            xyz[i * 3 + 1] = Float.parseFloat(fields[2].trim());
+            xyz[i * 3 + 2] = Float.parseFloat(fields[3].trim());
+        }
+        return new Trace(name, label, times, xyz);
+    }
+
+    private static List<String> readLines(String resource) throws IOException {
+        InputStream in = ShakeCorpus.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("missing corpus resource " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+
+    public static class Trace {
+
+        final String name;
+        final String label;
+        final long[] times;
+        final float[] xyz;
+
+        Trace(String name, String label, long[] times, float[] xyz) {
+            this.name = name;
+            this.label = label;
+            this.times = times;
+            this.xyz = xyz;
+        }
+
+        int samples() {
+            return times.length;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.android.sheguard.core;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes the synthetic part of the shake corpus: deliberate shakes, falls, and the everyday
+ * motion that must trigger neither (walking, running, drops, a bus ride, jumping). Signals are modelled at
+ * 25 Hz, with fixed seeds so the output is reproducible.
+ * <p>
+ * Usage: {@code ShakeCorpusGenerator <sos-core>/src/jmh/resources/shake-corpus}
+ */
+public class ShakeCorpusGenerator {
+
+    private static final float G = ShakeDetector.GRAVITY_EARTH;
+    private static final int PERIOD_MS = 40;
+    private static final int DURATION_MS = 8000;
+    private static final String SHAKE = "shake";
+    private static final String FALL = "fall";
+    private static final String NONE = "none";
+
+    // Gravity as seen by a phone held in front of the face, lying flat, and upright in a pocket
+    private static final float[] HELD = {0f, 9.0f, 3.9f};
+    private static final float[] FLAT = {0f, 0f, G};
+    private static final float[] POCKET = {0f, -G, 0f};
+
+    private final Path directory;
+    private final List<String> index = new ArrayList<>();
+
+    private ShakeCorpusGenerator(Path directory) {
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "src/jmh/resources/shake-corpus");
+        Files.createDirectories(directory);
+        new ShakeCorpusGenerator(directory).generate();
+    }
+
+    private void generate() throws IOException {
+        shake("shake_x_3hz", 1, HELD, new float[]{1, 0, 0}, 3.0f, 20f, 2000, false);
+        shake("shake_y_2hz", 2, HELD, new float[]{0, 1, 0}, 2.2f, 18f, 2500, false);
+        shake("shake_diagonal_4hz", 3, HELD, new float[]{0.707f, 0, 0.707f}, 4.0f, 22f, 1500, false);
+        shake("shake_brief_strong", 4, HELD, new float[]{1, 0, 0}, 3.5f, 25f, 1200, false);
+        shake("shake_while_walking", 5, HELD, new float[]{1, 0, 0}, 2.5f, 20f, 2000, true);
+        shakeIrregular("shake_irregular", 6);
+
+        still("rest_on_table", 7, FLAT, 0.05f);
+        still("held_still", 8, HELD, 0.3f);
+        walking("walking", 9);
+        running("running", 10);
+        drop("drop_to_floor", 11, 45f, 0f);
+        drop("drop_onto_bed", 12, 25f, 8f);
+        busRide("bus_ride", 13);
+        toss("tossed_on_seat", 14);
+        pickUp("pick_up_and_look", 15);
+
+        fall("fall_while_walking", 16, true, 0.3f, 400, 3.5f, new float[]{0, 0, G}, 0f, true);
+        fall("fall_backwards", 17, false, 0.2f, 350, 4.0f, new float[]{0, 0, -G}, 0f, true);
+        fall("fall_sideways", 18, false, 0.45f, 250, 3.0f, new float[]{G, 0, 0}, 0f, true);
+        fall("fall_and_roll", 19, true, 0.35f, 300, 3.2f, new float[]{0, 0, G}, 1200f, true);
+        fall("fall_and_get_up", 20, true, 0.3f, 400, 3.5f, new float[]{0, 0, G}, 0f, false);
+        sitDownHard("sit_down_hard", 21);
+        jumps("jumping", 22);
+        stumble("stumble", 23);
+
+        Files.write(directory.resolve("index.txt"), index, StandardCharsets.UTF_8);
+    }
+
+    private void shake(String name, long seed, float[] gravity, float[] axis, float hz, float amplitude,
+                       int lengthMs, boolean walking) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, SHAKE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(gravity, random, 0.3f);
+            if (walking) {
+                addWalk(a, gravity, t);
+            }
+            if (t >= 2000 && t < 2000 + lengthMs) {
+                float s = amplitude * (float) Math.sin(2 * Math.PI * hz * (t - 2000) / 1000.0);
+                add(a, axis, s);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    private void shakeIrregular(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, SHAKE);
+        double phase = 0;
+        float amplitude = 20f;
+        int previousHalf = -1;
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(HELD, random, 0.3f);
+            if (t >= 2000 && t < 4500) {
+                int half = (int) (phase / Math.PI);
+                if (half != previousHalf) {
+                    amplitude = 16f + random.nextFloat() * 8f;
+                    previousHalf = half;
+                }
+                add(a, new float[]{0, 0, 1}, amplitude * (float) Math.sin(phase));
+                float hz = 2f + random.nextFloat() * 2f;
+                phase += 2 * Math.PI * hz * PERIOD_MS / 1000.0;
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    private void still(String name, long seed, float[] gravity, float noise) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            trace.add(t, base(gravity, random, noise));
+        }
+        trace.write();
+    }
+
+    private void walking(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(POCKET, random, 0.3f);
+            addWalk(a, POCKET, t);
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Foot strikes: a sharp push along gravity for a third of each stride, balanced by a long
+     * shallow dip, plus side-to-side sway at half the cadence.
+     */
+    private void running(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        float strideMs = 1000f / 2.8f;
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(POCKET, random, 0.5f);
+            float phase = (t % strideMs) / strideMs;
+            float vertical = phase < 0.3f ? 15f * (float) Math.sin(Math.PI * phase / 0.3f) : -4.1f;
+            add(a, unit(POCKET), vertical);
+            a[0] += 3f * (float) Math.sin(2 * Math.PI * 1.4 * t / 1000.0);
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Free fall (the accelerometer reads about zero), an impact spike, then either stillness or
+     * a damped wobble, lying flat.
+     */
+    private void drop(String name, long seed, float impact, float wobble) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a;
+            if (t < 3000) {
+                a = base(HELD, random, 0.3f);
+            } else if (t < 3440) {
+                a = base(new float[]{0, 0, 0}, random, 0.2f);
+            } else if (t < 3520) {
+                a = base(FLAT, random, 0.5f);
+                add(a, unit(FLAT), impact);
+            } else if (t < 3600) {
+                a = base(FLAT, random, 0.5f);
+                add(a, unit(FLAT), impact / 3f);
+            } else {
+                a = base(FLAT, random, 0.05f);
+                float since = (t - 3600) / 1000f;
+                add(a, unit(FLAT), wobble * (float) (Math.exp(-since * 4) * Math.sin(2 * Math.PI * 6 * since)));
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Road vibration and engine hum, with bumps every 1.5-4 s and a pothole hit by the front
+     * and then the rear wheels.
+     */
+    private void busRide(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        List<Integer> bumps = new ArrayList<>();
+        for (int at = 800; at < DURATION_MS - 500; at += 1500 + random.nextInt(2500)) {
+            bumps.add(at);
+        }
+        bumps.add(5200);
+        bumps.add(5800);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(HELD, random, 0.6f);
+            add(a, unit(HELD), 0.5f * (float) Math.sin(2 * Math.PI * 10 * t / 1000.0));
+            for (int at : bumps) {
+                int since = t - at;
+                if (since >= 0 && since < 80) {
+                    add(a, unit(HELD), 14f);
+                } else if (since >= 80 && since < 200) {
+                    add(a, unit(HELD), -7f);
+                }
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    private void toss(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a;
+            if (t < 2500) {
+                a = base(HELD, random, 0.3f);
+            } else if (t < 2700) {
+                a = base(HELD, random, 0.3f);
+                add(a, new float[]{0, 0.6f, 0.8f}, 12f);
+            } else if (t < 2900) {
+                a = base(new float[]{0, 0, 0}, random, 0.3f);
+            } else if (t < 2960) {
+                a = base(FLAT, random, 0.5f);
+                add(a, unit(FLAT), 22f);
+            } else {
+                a = base(FLAT, random, 0.1f);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Turning the phone from flat to held over a second, with small hand movements.
+     */
+    private void pickUp(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float progress = Math.min(Math.max((t - 2000) / 1000f, 0f), 1f);
+            float[] gravity = {
+                    FLAT[0] + (HELD[0] - FLAT[0]) * progress,
+                    FLAT[1] + (HELD[1] - FLAT[1]) * progress,
+                    FLAT[2] + (HELD[2] - FLAT[2]) * progress
+            };
+            float[] a = base(gravity, random, progress > 0 ? 0.3f : 0.05f);
+            if (progress > 0 && progress < 1) {
+                a[1] += 4f * (float) Math.sin(Math.PI * progress);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Phone in a trouser pocket: walking or standing, a partial free fall while the body pivots
+     * over, the impact, then lying in a new orientation, optionally after rolling for
+     * {@code rollMs}, or getting back up and walking off.
+     */
+    private void fall(String name, long seed, boolean walkingBefore, float freeFallG, int freeFallMs, float impactG,
+                      float[] lying, float rollMs, boolean staysDown) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, staysDown ? FALL : NONE);
+        int start = 3000;
+        int impact = start + freeFallMs;
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a;
+            if (t < start) {
+                a = base(POCKET, random, 0.3f);
+                if (walkingBefore) {
+                    addWalk(a, POCKET, t);
+                }
+            } else if (t < impact) {
+                // The pocket swings round as the body topples
+                float progress = (t - start) / (float) freeFallMs;
+                float[] gravity = blend(POCKET, lying, progress);
+                a = base(scale(gravity, freeFallG), random, 0.3f);
+            } else if (t < impact + 80) {
+                a = base(scale(lying, impactG), random, 1f);
+            } else if (t < impact + 200) {
+                a = base(scale(lying, 1.4f), random, 0.8f);
+            } else if (t < impact + 200 + rollMs) {
+                a = base(lying, random, 0.3f);
+                a[0] += 3f * (float) Math.sin(2 * Math.PI * 1.5 * (t - impact) / 1000.0);
+                a[1] += 2.5f * (float) Math.cos(2 * Math.PI * 1.5 * (t - impact) / 1000.0);
+            } else if (staysDown || t < impact + 1200) {
+                // Lying still, breathing
+                a = base(lying, random, 0.15f);
+            } else if (t < impact + 2200) {
+                float progress = (t - impact - 1200) / 1000f;
+                a = base(blend(lying, POCKET, progress), random, 0.3f);
+                add(a, unit(POCKET), 4f * (float) Math.sin(Math.PI * progress));
+            } else {
+                a = base(POCKET, random, 0.3f);
+                addWalk(a, POCKET, t);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Dropping onto a chair: a dip that never gets near free fall and a modest thump.
+     */
+    private void sitDownHard(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        float[] seated = {0, -0.5f * G, 0.866f * G};
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a;
+            if (t < 3000) {
+                a = base(POCKET, random, 0.3f);
+            } else if (t < 3300) {
+                a = base(scale(blend(POCKET, seated, (t - 3000) / 300f), 0.7f), random, 0.3f);
+            } else if (t < 3400) {
+                a = base(scale(seated, 2.0f), random, 0.8f);
+            } else {
+                a = base(seated, random, 0.2f);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Three jumps on the spot: real free fall and a hard landing each time, but back on the feet
+     * and moving straight after.
+     */
+    private void jumps(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(POCKET, random, 0.3f);
+            int since = (t - 2000) % 1500;
+            if (t >= 2000 && t < 6500) {
+                if (since < 200) {
+                    add(a, unit(POCKET), 12f);
+                } else if (since < 550) {
+                    a = base(new float[]{0, 0, 0}, random, 0.3f);
+                } else if (since < 650) {
+                    add(a, unit(POCKET), 25f);
+                } else {
+                    addWalk(a, POCKET, t);
+                }
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    /**
+     * Catching a trip: a short dip and a firm step, no fall.
+     */
+    private void stumble(String name, long seed) throws IOException {
+        Random random = new Random(seed);
+        Trace trace = new Trace(name, NONE);
+        for (int t = 0; t < DURATION_MS; t += PERIOD_MS) {
+            float[] a = base(POCKET, random, 0.3f);
+            addWalk(a, POCKET, t);
+            if (t >= 3000 && t < 3080) {
+                a = base(scale(POCKET, 0.5f), random, 0.3f);
+            } else if (t >= 3080 && t < 3160) {
+                add(a, unit(POCKET), 9f);
+            }
+            trace.add(t, a);
+        }
+        trace.write();
+    }
+
+    private static float[] base(float[] gravity, Random random, float noise) {
+        return new float[]{
+                gravity[0] + (float) random.nextGaussian() * noise,
+                gravity[1] + (float) random.nextGaussian() * noise,
+                gravity[2] + (float) random.nextGaussian() * noise
+        };
+    }
+
+    private static void addWalk(float[] a, float[] gravity, int t) {
+        double w = 2 * Math.PI * 2.0 * t / 1000.0;
+        add(a, unit(gravity), (float) (3 * Math.sin(w) + 1.5 * Math.sin(2 * w)));
+        a[0] += (float) Math.sin(w / 2);
+    }
+
+    private static void add(float[] a, float[] axis, float amount) {
+        a[0] += axis[0] * amount;
+        a[1] += axis[1] * amount;
+        a[2] += axis[2] * amount;
+    }
+
+    private static float[] scale(float[] v, float factor) {
+        return new float[]{v[0] * factor, v[1] * factor, v[2] * factor};
+    }
+
+    /**
+     * Turns from {@code from} to {@code to} at constant length; good enough for gravity
+     * swinging round.
+     */
+    private static float[] blend(float[] from, float[] to, float progress) {
+        float[] mixed = {
+                from[0] + (to[0] - from[0]) * progress,
+                from[1] + (to[1] - from[1]) * progress,
+                from[2] + (to[2] - from[2]) * progress
+        };
+        float length = (float) Math.sqrt(mixed[0] * mixed[0] + mixed[1] * mixed[1] + mixed[2] * mixed[2]);
+        return length == 0 ? mixed : scale(mixed, G / length);
+    }
+
+    private static float[] unit(float[] v) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        return new float[]{v[0] / length, v[1] / length, v[2] / length};
+    }
+
+    private class Trace {
+
+        private final String name;
+        private final String label;
+        private final StringBuilder rows = new StringBuilder();
+
+        Trace(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        void add(int t, float[] a) {
+            rows.append(String.format(Locale.ROOT, "%d,%.3f,%.3f,%.3f\n", t, a[0], a[1], a[2]));
+        }
+
+        void write() throws IOException {
+            String file = name + ".csv";
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(directory.resolve(file), StandardCharsets.UTF_8))) {
+                out.print("# label: " + label + "\n");
+                out.print("# synthetic, ShakeCorpusGenerator\n");
+                out.print("t_ms,x,y,z\n");
+                out.print(rows);
+            }
+            index.add(file);
+        }
+    }
+}
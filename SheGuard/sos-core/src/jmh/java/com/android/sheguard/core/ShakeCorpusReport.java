@@ -0,0 +1,209 @@
+package com.android.sheguard.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays the shake corpus through each recognizer and prints, per recognizer, which traces it
+ * got wrong, its false-positive and false-negative rates and its cost per sample. Every trace
+ * not labelled with what a recognizer looks for counts against it if it fires. Run it with
+ * {@code ./gradlew :sos-core:shakeCorpusReport} after changing a recognizer or its thresholds.
+ */
+public class ShakeCorpusReport {
+
+    private static final int TIMING_ROUNDS = 2000;
+    // ShakeMonitor's idle tier: 5 Hz, and a batch may sit in the FIFO for up to half a second
+    private static final long IDLE_PERIOD_MS = 200;
+    private static final long ESCALATION_DELAY_MS = 500;
+
+    interface Recognizer {
+
+        boolean onSample(float x, float y, float z, long timeMs);
+
+        void reset();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<ShakeCorpus.Trace> corpus = ShakeCorpus.load();
+        int samples = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            samples += trace.samples();
+        }
+        System.out.println(corpus.size() + " traces, " + samples + " samples");
+
+        ShakeDetector detector = new ShakeDetector();
+        report("ShakeDetector (single threshold)", corpus, "shake", new Recognizer() {
+            @Override
+            public boolean onSample(float x, float y, float z, long timeMs) {
+                return detector.onSample(x, y, z, timeMs);
+            }
+
+            @Override
+            public void reset() {
+                detector.reset();
+            }
+        });
+
+        ShakeRecognizer recognizer = new ShakeRecognizer();
+        report("ShakeRecognizer (multi-peak)", corpus, "shake", new Recognizer() {
+            @Override
+            public boolean onSample(float x, float y, float z, long timeMs) {
+                return recognizer.onSample(x, y, z, timeMs);
+            }
+
+            @Override
+            public void reset() {
+                recognizer.reset();
+            }
+        });
+
+        report("ShakeRecognizer behind MotionGate (idle " + IDLE_PERIOD_MS + " ms, escalation +"
+                + ESCALATION_DELAY_MS + " ms)", corpus, "shake", new Tiered(IDLE_PERIOD_MS, ESCALATION_DELAY_MS));
+
+        FallDetector fallDetector = new FallDetector();
+        report("FallDetector", corpus, "fall", new Recognizer() {
+            @Override
+            public boolean onSample(float x, float y, float z, long timeMs) {
+                return fallDetector.onSample(x, y, z, timeMs);
+            }
+
+            @Override
+            public void reset() {
+                fallDetector.reset();
+            }
+        });
+    }
+
+    private static void report(String title, List<ShakeCorpus.Trace> corpus, String target, Recognizer recognizer) {
+        System.out.println();
+        System.out.println(title);
+
+        int targets = 0;
+        int others = 0;
+        int falseNegatives = 0;
+        int falsePositives = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            int detections = replay(trace, recognizer);
+            boolean wrong;
+            if (trace.label.equals(target)) {
+                targets++;
+                wrong = detections == 0;
+                if (wrong) {
+                    falseNegatives++;
+                }
+            } else {
+                others++;
+                wrong = detections > 0;
+                if (wrong) {
+                    falsePositives++;
+                }
+            }
+            String duty = recognizer instanceof Tiered ? String.format(Locale.ROOT, ", active %.0f%%",
+                    ((Tiered) recognizer).activeFraction() * 100) : "";
+            System.out.println(String.format(Locale.ROOT, "  %-24s %-5s %d detection(s)%s%s",
+                    trace.name, trace.label, detections, duty, wrong ? "  <-- wrong" : ""));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "  false negatives %d/%d (%.0f%%), false positives %d/%d (%.0f%%)",
+                falseNegatives, targets, percent(falseNegatives, targets), falsePositives, others, percent(falsePositives, others)));
+        System.out.println(String.format(Locale.ROOT, "  %.1f ns/sample", nanosPerSample(corpus, recognizer)));
+    }
+
+    static int replay(ShakeCorpus.Trace trace, Recognizer recognizer) {
+        recognizer.reset();
+        int detections = 0;
+        float[] xyz = trace.xyz;
+        for (int i = 0; i < trace.samples(); i++) {
+            if (recognizer.onSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], trace.times[i])) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    /**
+     * A rough figure for comparing changes; ShakeRecognizerBenchmark gives the careful one.
+     */
+    private static double nanosPerSample(List<ShakeCorpus.Trace> corpus, Recognizer recognizer) {
+        long samples = 0;
+        int sink = 0;
+        // Warm up the JIT first, then time
+        for (int round = 0; round < TIMING_ROUNDS; round++) {
+            for (ShakeCorpus.Trace trace : corpus) {
+                sink += replay(trace, recognizer);
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < TIMING_ROUNDS; round++) {
+            for (ShakeCorpus.Trace trace : corpus) {
+                sink += replay(trace, recognizer);
+                samples += trace.samples();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == Integer.MIN_VALUE) {
+            System.out.println();
+        }
+        return (double) elapsed / samples;
+    }
+
+    private static double percent(int count, int total) {
+        return total == 0 ? 0 : 100.0 * count / total;
+    }
+
+    /**
+     * Replays a trace the way ShakeMonitor sees it: every {@code idlePeriodMs} while the gate is
+     * idle, and at the trace's full rate (lower than ShakeMonitor's game rate, so on the safe side)
+     * from {@code escalationDelayMs} after it goes active.
+     */
+    static class Tiered implements Recognizer {
+
+        private final MotionGate gate = new MotionGate();
+        private final ShakeRecognizer recognizer = new ShakeRecognizer();
+        private final long idlePeriodMs;
+        private final long escalationDelayMs;
+        private long nextIdleSampleMs;
+        private long fullRateFromMs;
+        private int samples;
+        private int fullRateSamples;
+
+        Tiered(long idlePeriodMs, long escalationDelayMs) {
+            this.idlePeriodMs = idlePeriodMs;
+            this.escalationDelayMs = escalationDelayMs;
+        }
+
+        @Override
+        public boolean onSample(float x, float y, float z, long timeMs) {
+            samples++;
+            boolean fullRate = gate.getTier() == MotionGate.Tier.ACTIVE && timeMs >= fullRateFromMs;
+            if (!fullRate) {
+                if (timeMs < nextIdleSampleMs) {
+                    return false;
+                }
+                nextIdleSampleMs = timeMs + idlePeriodMs;
+            } else {
+                fullRateSamples++;
+            }
+            boolean shake = recognizer.onSample(x, y, z, timeMs);
+            if (gate.onSample(x, y, z, timeMs) && gate.getTier() == MotionGate.Tier.ACTIVE) {
+                fullRateFromMs = timeMs + escalationDelayMs;
+            }
+            return shake;
+        }
+
+        @Override
+        public void reset() {
+            gate.reset();
+            recognizer.reset();
+            nextIdleSampleMs = Long.MIN_VALUE;
+            fullRateFromMs = Long.MAX_VALUE;
+            samples = 0;
+            fullRateSamples = 0;
+        }
+
+        double activeFraction() {
+            return samples == 0 ? 0 : (double) fullRateSamples / samples;
+        }
+    }
+}
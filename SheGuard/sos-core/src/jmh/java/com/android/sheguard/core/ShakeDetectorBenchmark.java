@@ -0,0 +1,53 @@
+package com.android.sheguard.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of feeding 1000 accelerometer samples (a mix of resting and shaking) to the detector; the
+ * score is per 1000 samples, and the gc profiler should show no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShakeDetectorBenchmark {
+
+    private static final int SAMPLES = 1000;
+
+    private final float[] xyz = new float[SAMPLES * 3];
+    private ShakeDetector detector;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            float scale = i % 200 < 20 ? 25f : 1f;
+            xyz[i * 3] = (random.nextFloat() - 0.5f) * scale;
+            xyz[i * 3 + 1] = (random.nextFloat() - 0.5f) * scale;
+            xyz[i * 3 + 2] = ShakeDetector.GRAVITY_EARTH + (random.nextFloat() - 0.5f) * scale;
+        }
+        detector = new ShakeDetector();
+        now = 0;
+    }
+
+    @Benchmark
+    public int thousandSamples() {
+        int shakes = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            now += 20;
+            if (detector.onSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], now)) {
+                shakes++;
+            }
+        }
+        return shakes;
+    }
+}
@@ -0,0 +1,81 @@
+package com.android.sheguard.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the whole shake corpus through each recognizer and the fall detector; divide the score
+ * by the sample count ShakeCorpusReport prints for the cost per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShakeRecognizerBenchmark {
+
+    private List<ShakeCorpus.Trace> corpus;
+    private ShakeDetector detector;
+    private ShakeRecognizer recognizer;
+    private FallDetector fallDetector;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = ShakeCorpus.load();
+        detector = new ShakeDetector();
+        recognizer = new ShakeRecognizer();
+        fallDetector = new FallDetector();
+    }
+
+    @Benchmark
+    public int singleThreshold() {
+        int detections = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            detector.reset();
+            float[] xyz = trace.xyz;
+            for (int i = 0; i < trace.samples(); i++) {
+                if (detector.onSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], trace.times[i])) {
+                    detections++;
+                }
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    public int multiPeak() {
+        int detections = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            recognizer.reset();
+            float[] xyz = trace.xyz;
+            for (int i = 0; i < trace.samples(); i++) {
+                if (recognizer.onSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], trace.times[i])) {
+                    detections++;
+                }
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    public int fall() {
+        int detections = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            fallDetector.reset();
+            float[] xyz = trace.xyz;
+            for (int i = 0; i < trace.samples(); i++) {
+                if (fallDetector.onSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], trace.times[i])) {
+                    detections++;
+                }
+            }
+        }
+        return detections;
+    }
+}
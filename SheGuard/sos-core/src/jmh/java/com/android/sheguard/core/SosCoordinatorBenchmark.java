@@ -0,0 +1,146 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.core.port.AlertGateway;
+import com.android.sheguard.core.port.Clock;
+import com.android.sheguard.core.port.ContactSource;
+import com.android.sheguard.core.port.DeviceActions;
+import com.android.sheguard.core.port.LocationSource;
+import com.android.sheguard.core.port.SosSettings;
+import com.android.sheguard.model.ContactModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Trigger-to-dispatched cost of one SOS session with ten contacts, with every port stubbed out
+ * so only the coordinator's own scheduling, formatting and bookkeeping is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SosCoordinatorBenchmark {
+
+    private ScheduledExecutorService executor;
+    private SosCoordinator coordinator;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2);
+        pool.setRemoveOnCancelPolicy(true);
+        executor = pool;
+        StubPorts ports = new StubPorts();
+        coordinator = new SosCoordinator(executor, Clock.SYSTEM, ports, ports, ports, ports, ports,
+                new SosMessageFormatter("Hey %s,\nI'm in Danger!\nMy location: %s", "I'm in Danger! My location: %s"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void triggerToDispatched() {
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        if (session != null) {
+            session.done().join();
+        }
+    }
+
+    private class StubPorts implements SosSettings, ContactSource, LocationSource, AlertGateway, DeviceActions {
+
+        private final CompletableFuture<Boolean> sent = CompletableFuture.completedFuture(true);
+        private final List<ContactModel> contacts = new ArrayList<>();
+        private final GeoFix fix = new GeoFix(23.810331, 90.412521, 12f, 0);
+
+        StubPorts() {
+            for (int i = 0; i < 10; i++) {
+                contacts.add(new ContactModel("Contact " + i, "0170000000" + i));
+            }
+        }
+
+        @Override
+        public boolean isCallEmergencyEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isSirenEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isSmsEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isPushEnabled() {
+            return true;
+        }
+
+        @Override
+        public String getSenderName() {
+            return "Benchmark";
+        }
+
+        @Override
+        public List<ContactModel> loadContacts() {
+            return contacts;
+        }
+
+        @Override
+        public CompletableFuture<GeoFix> currentFix() {
+            return CompletableFuture.completedFuture(fix);
+        }
+
+        @Override
+        public CompletableFuture<GeoFix> bestAvailableFix() {
+            return CompletableFuture.completedFuture(fix);
+        }
+
+        @Override
+        public Runnable subscribeFixes(Consumer<GeoFix> listener) {
+            return () -> {
+            };
+        }
+
+        @Override
+        public CompletableFuture<Boolean> sendSms(String sessionId, ContactModel contact, String message) {
+            blackhole.consume(message);
+            return sent;
+        }
+
+        @Override
+        public CompletableFuture<Map<String, PushResult>> sendPush(String sessionId, List<ContactModel> contacts, String title, String message) {
+            blackhole.consume(message);
+            return CompletableFuture.completedFuture(Collections.<String, PushResult>emptyMap());
+        }
+
+        @Override
+        public void callEmergency() {
+        }
+
+        @Override
+        public void playSiren() {
+        }
+    }
+}
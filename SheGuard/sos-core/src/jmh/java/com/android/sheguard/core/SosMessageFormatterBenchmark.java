@@ -0,0 +1,51 @@
+package com.android.sheguard.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the way SosEngine sets the formatter up: update template, time stamp and a cached
+ * street address, for a fix half a minute old.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SosMessageFormatterBenchmark {
+
+    private static final long NOW_MS = 30000;
+
+    private final SosMessageFormatter formatter = new SosMessageFormatter(
+            "Hey %s,\nI'm in Danger!\nMy location: %s",
+            "I'm in Danger! My location: %s");
+    private final GeoFix fix = new GeoFix(23.810331, 90.412521, 12f, 0);
+
+    @Setup
+    public void setUp() {
+        formatter.setUpdateTemplate("Location update: %s");
+        formatter.setTimeZone(TimeZone.getTimeZone("Asia/Dhaka"), () -> 1760000000000L);
+        formatter.setAddressLookup(f -> "Kazi Nazrul Islam Ave, Dhaka");
+    }
+
+    @Benchmark
+    public String sms() {
+        return formatter.sms("Contact", fix, NOW_MS);
+    }
+
+    @Benchmark
+    public String push() {
+        return formatter.push(fix, NOW_MS);
+    }
+
+    @Benchmark
+    public String update() {
+        return formatter.update(fix, NOW_MS);
+    }
+}
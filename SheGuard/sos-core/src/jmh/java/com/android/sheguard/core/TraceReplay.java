@@ -0,0 +1,81 @@
+package com.android.sheguard.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Replays a trace exported by the app's TraceRecorder through the shake recognizers, the fall
+ * detector and the motion gate, printing when each one fired. With {@code --csv} it also writes
+ * the trace in the corpus format, ready to be labelled and added to
+ * {@code shake-corpus/index.txt}.
+ * <p>
+ * Usage: {@code TraceReplay <trace.sgt> [--csv <out.csv> --label shake|fall|none]}
+ */
+public class TraceReplay {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: TraceReplay <trace.sgt> [--csv <out.csv> --label shake|fall|none]");
+            System.exit(2);
+        }
+        String csv = null;
+        String label = "none";
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--csv")) {
+                csv = args[i + 1];
+            } else if (args[i].equals("--label")) {
+                label = args[i + 1];
+            }
+        }
+
+        ShakeDetector detector = new ShakeDetector();
+        ShakeRecognizer recognizer = new ShakeRecognizer();
+        MotionGate gate = new MotionGate();
+        FallDetector fallDetector = new FallDetector();
+        StringBuilder rows = new StringBuilder();
+        long[] start = {-1};
+
+        int samples = TraceReader.read(new File(args[0]), (timeNanos, x, y, z) -> {
+            long timeMs = timeNanos / NANOS_PER_MILLI;
+            if (start[0] < 0) {
+                start[0] = timeMs;
+            }
+            long offsetMs = timeMs - start[0];
+            if (detector.onSample(x, y, z, timeMs)) {
+                print(offsetMs, "ShakeDetector fired");
+            }
+            if (recognizer.onSample(x, y, z, timeMs)) {
+                print(offsetMs, "ShakeRecognizer fired");
+            }
+            if (fallDetector.onSample(x, y, z, timeMs)) {
+                print(offsetMs, "FallDetector fired");
+            }
+            if (gate.onSample(x, y, z, timeMs)) {
+                print(offsetMs, "MotionGate " + gate.getTier());
+            }
+            rows.append(String.format(Locale.ROOT, "%d,%.3f,%.3f,%.3f\n", offsetMs, x, y, z));
+        });
+        System.out.println(samples + " samples");
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(csv), StandardCharsets.UTF_8))) {
+                out.print("# label: " + label + "\n");
+                out.print("# recorded, " + new File(args[0]).getName() + "\n");
+                out.print("t_ms,x,y,z\n");
+                out.print(rows);
+            }
+            System.out.println("wrote " + csv);
+        }
+    }
+
+    private static void print(long offsetMs, String what) {
+        System.out.println(String.format(Locale.ROOT, "%9.3f s  %s", offsetMs / 1000.0, what));
+    }
+}
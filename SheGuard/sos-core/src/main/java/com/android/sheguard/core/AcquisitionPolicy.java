@@ -0,0 +1,57 @@
+package com.android.sheguard.core;
+
+/**
+ * What counts as a good enough fix and how long to look for one. A fix that is at least as
+ * accurate as {@code targetAccuracyMeters} and younger than {@code maxFixAgeMs} ends the search
+ * at once; otherwise the best fix seen by {@code deadlineMs} is used, however old, since the
+ * message says how old it is.
+ */
+public class AcquisitionPolicy {
+
+    // SOS: good enough to find someone on a street, and never hold the alert long
+    public static final AcquisitionPolicy SOS = new AcquisitionPolicy(50f, 2 * 60 * 1000L, 10000);
+    // Profile screen: only needs the right neighbourhood for an address
+    public static final AcquisitionPolicy ADDRESS = new AcquisitionPolicy(200f, 10 * 60 * 1000L, 15000);
+
+    private final float targetAccuracyMeters;
+    private final long maxFixAgeMs;
+    private final long deadlineMs;
+
+    public AcquisitionPolicy(float targetAccuracyMeters, long maxFixAgeMs, long deadlineMs) {
+        this.targetAccuracyMeters = targetAccuracyMeters;
+        this.maxFixAgeMs = maxFixAgeMs;
+        this.deadlineMs = deadlineMs;
+    }
+
+    public float getTargetAccuracyMeters() {
+        return targetAccuracyMeters;
+    }
+
+    public long getMaxFixAgeMs() {
+        return maxFixAgeMs;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    /**
+     * @return true if the search can stop with this fix
+     */
+    public boolean qualifies(GeoFix fix, long nowMs) {
+        return fix != null && fix.getAccuracyMeters() <= targetAccuracyMeters && fix.ageMs(nowMs) <= maxFixAgeMs;
+    }
+
+    /**
+     * @return whichever fix more likely shows where the person is now; {@code null}s lose
+     */
+    public GeoFix better(GeoFix a, GeoFix b, long nowMs) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return FixRing.effectiveRadius(b, b.ageMs(nowMs)) < FixRing.effectiveRadius(a, a.ageMs(nowMs)) ? b : a;
+    }
+}
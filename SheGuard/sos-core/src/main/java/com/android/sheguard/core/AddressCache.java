@@ -0,0 +1,123 @@
+package com.android.sheguard.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reverse-geocoded addresses keyed by a grid cell of roughly {@code cellMeters} on a side, so
+ * every lookup within a few tens of metres of an earlier one is answered from memory. Least
+ * recently used cells are dropped past {@code capacity}. Times are wall-clock milliseconds
+ * because entries are persisted.
+ */
+public class AddressCache {
+
+    public static final double DEFAULT_CELL_METERS = 50;
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final long DEFAULT_TTL_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final double cellMeters;
+    private final long ttlMs;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public AddressCache() {
+        this(DEFAULT_CELL_METERS, DEFAULT_CAPACITY, DEFAULT_TTL_MS);
+    }
+
+    public AddressCache(double cellMeters, int capacity, long ttlMs) {
+        this.cellMeters = cellMeters;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AddressCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The cell holding a coordinate. Rows are {@code cellMeters} of latitude; columns are
+     * widened by the row's latitude so cells stay roughly square away from the equator.
+     */
+    public String key(double latitude, double longitude) {
+        double latStep = cellMeters / METERS_PER_DEGREE;
+        long row = (long) Math.floor(latitude / latStep);
+        double rowCenter = (row + 0.5) * latStep;
+        double lonStep = latStep / Math.max(Math.cos(Math.toRadians(rowCenter)), 0.01);
+        long column = (long) Math.floor(longitude / lonStep);
+        return row + ":" + column;
+    }
+
+    /**
+     * @return the address for this cell, or {@code null} if it is unknown or expired
+     */
+    public synchronized String get(double latitude, double longitude, long nowMs) {
+        String key = key(latitude, longitude);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (nowMs - entry.resolvedAtMs > ttlMs) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.address;
+    }
+
+    public synchronized void put(double latitude, double longitude, String address, long nowMs) {
+        String key = key(latitude, longitude);
+        entries.put(key, new Entry(key, address, nowMs));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the entries, least recently used first, so {@link #restore(Collection)} keeps the order
+     */
+    public synchronized List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized void restore(Collection<Entry> saved) {
+        entries.clear();
+        if (saved == null) {
+            return;
+        }
+        for (Entry entry : saved) {
+            if (entry != null && entry.key != null && entry.address != null) {
+                entries.put(entry.key, entry);
+            }
+        }
+    }
+
+    public static class Entry {
+
+        private final String key;
+        private final String address;
+        private final long resolvedAtMs;
+
+        public Entry(String key, String address, long resolvedAtMs) {
+            this.key = key;
+            this.address = address;
+            this.resolvedAtMs = resolvedAtMs;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public long getResolvedAtMs() {
+            return resolvedAtMs;
+        }
+    }
+}
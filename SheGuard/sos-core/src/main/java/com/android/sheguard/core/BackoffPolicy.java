@@ -0,0 +1,36 @@
+package com.android.sheguard.core;
+
+/**
+ * Exponential backoff with jitter: the n-th retry waits between half and all of
+ * {@code base * multiplier^(n-1)}, capped at {@code maxDelayMs}.
+ */
+public class BackoffPolicy {
+
+    public static final BackoffPolicy DEFAULT = new BackoffPolicy(5000, 2.0, 10 * 60 * 1000L, 12);
+
+    private final long baseDelayMs;
+    private final double multiplier;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+
+    public BackoffPolicy(long baseDelayMs, double multiplier, long maxDelayMs, int maxAttempts) {
+        this.baseDelayMs = baseDelayMs;
+        this.multiplier = multiplier;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param attempt attempts made so far, at least 1
+     * @param random  uniform in [0, 1), so callers (and benchmarks) control the jitter source
+     */
+    public long delayMs(int attempt, double random) {
+        double delay = baseDelayMs * Math.pow(multiplier, Math.max(0, attempt - 1));
+        long capped = (long) Math.min(delay, maxDelayMs);
+        return capped / 2 + (long) (capped / 2 * random);
+    }
+
+    public boolean isExhausted(int attempts) {
+        return attempts >= maxAttempts;
+    }
+}
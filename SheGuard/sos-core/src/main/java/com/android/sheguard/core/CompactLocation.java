@@ -0,0 +1,96 @@
+package com.android.sheguard.core;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Short location forms for SMS. Coordinates are cut to the decimals the fix's accuracy can
+ * justify, and everything stays inside the GSM-7 alphabet so the text is not forced to UCS-2.
+ */
+public final class CompactLocation {
+
+    private CompactLocation() {
+    }
+
+    /**
+     * One decimal of a degree is about 11 km at the equator, so each extra decimal is worth 10x.
+     */
+    public static int decimalsFor(float accuracyMeters) {
+        if (accuracyMeters <= 1.1f) {
+            return 5;
+        } else if (accuracyMeters <= 11f) {
+            return 4;
+        } else if (accuracyMeters <= 110f) {
+            return 3;
+        }
+        return 2;
+    }
+
+    public static String coordinates(GeoFix fix) {
+        int decimals = decimalsFor(fix.getAccuracyMeters());
+        return trim(fix.getLatitude(), decimals) + "," + trim(fix.getLongitude(), decimals);
+    }
+
+    public static String mapsLink(GeoFix fix) {
+        return "https://maps.google.com/?q=" + coordinates(fix);
+    }
+
+    public static String geoUri(GeoFix fix) {
+        return "geo:" + coordinates(fix);
+    }
+
+    /**
+     * A plus code whose cell is no finer than the fix: 11 digits (~3 m), 10 (~14 m) or 8 (~275 m).
+     */
+    public static String plusCode(GeoFix fix) {
+        float accuracy = fix.getAccuracyMeters();
+        int length = accuracy <= 3f ? 11 : accuracy <= 14f ? 10 : 8;
+        return PlusCode.encode(fix.getLatitude(), fix.getLongitude(), length);
+    }
+
+    /**
+     * @return e.g. {@code " (~250m, 3min old)"} for a coarse or stale fix, otherwise empty
+     */
+    public static String label(GeoFix fix, long nowMs) {
+        boolean coarse = fix.getAccuracyMeters() > SosMessageFormatter.COARSE_ABOVE_METERS;
+        long ageMs = fix.ageMs(nowMs);
+        boolean stale = ageMs > SosMessageFormatter.STALE_AFTER_MS;
+        if (!coarse && !stale) {
+            return "";
+        }
+
+        StringBuilder label = new StringBuilder(" (");
+        if (coarse) {
+            label.append('~').append(Math.round(fix.getAccuracyMeters())).append('m');
+        }
+        if (stale) {
+            if (coarse) {
+                label.append(", ");
+            }
+            long minutes = ageMs / 60000;
+            if (minutes < 60) {
+                label.append(minutes).append("min old");
+            } else {
+                label.append(minutes / 60).append("h old");
+            }
+        }
+        return label.append(')').toString();
+    }
+
+    /**
+     * @return the wall-clock time the fix was taken, e.g. {@code " @14:05"}
+     */
+    public static String time(GeoFix fix, long nowMs, long wallNowMs, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(wallNowMs - fix.ageMs(nowMs));
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        int minute = calendar.get(Calendar.MINUTE);
+        return " @" + hour + (minute < 10 ? ":0" : ":") + minute;
+    }
+
+    private static String trim(double value, int decimals) {
+        return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+}
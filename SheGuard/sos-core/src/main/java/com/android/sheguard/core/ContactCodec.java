@@ -0,0 +1,44 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.model.ContactModel;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the contact list as it is stored under {@code CONTACTS_LIST}.
+ */
+public class ContactCodec {
+
+    private static final Gson GSON = new Gson();
+    private static final Type CONTACT_LIST_TYPE = new TypeToken<List<ContactModel>>() {
+    }.getType();
+
+    public static ArrayList<ContactModel> decode(String json) {
+        ArrayList<ContactModel> contacts = new ArrayList<>();
+        if (json == null || json.isEmpty()) {
+            return contacts;
+        }
+
+        try {
+            List<ContactModel> parsed = GSON.fromJson(json, CONTACT_LIST_TYPE);
+            if (parsed != null) {
+                for (ContactModel contact : parsed) {
+                    if (contact != null && contact.getPhone() != null && !contact.getPhone().isEmpty()) {
+                        contacts.add(contact);
+                    }
+                }
+            }
+        } catch (JsonParseException ignored) {
+        }
+        return contacts;
+    }
+
+    public static String encode(List<ContactModel> contacts) {
+        return GSON.toJson(contacts);
+    }
+}
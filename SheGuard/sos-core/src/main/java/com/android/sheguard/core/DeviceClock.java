@@ -0,0 +1,54 @@
+package com.android.sheguard.core;
+
+/**
+ * Maps the wearable's 32-bit millisecond clock onto the phone's, so presses the wearable stored
+ * while out of range can be placed in time. Every frame carries the device time it was built at,
+ * and a frame can only arrive after it was built, so the smallest phone-minus-device offset seen
+ * is the best estimate of the true one. Retransmitted and replayed frames only push the offset up
+ * and are ignored. Start over with {@link #reset()} whenever the device may have rebooted.
+ */
+public class DeviceClock {
+
+    private boolean synced;
+    private long offsetMs;
+    // The latest device time seen, unwrapped; device times are read as the nearest wrap of it
+    private long latestDeviceMs;
+
+    /**
+     * @param deviceTimeMs the device's clock when it built a frame, unsigned 32-bit
+     * @param localNowMs   the phone's clock now, on the base {@link #toLocal(long)} maps onto
+     */
+    public void observe(long deviceTimeMs, long localNowMs) {
+        if (!synced) {
+            synced = true;
+            latestDeviceMs = deviceTimeMs;
+            offsetMs = localNowMs - deviceTimeMs;
+            return;
+        }
+        long unwrapped = unwrap(deviceTimeMs);
+        latestDeviceMs = Math.max(latestDeviceMs, unwrapped);
+        offsetMs = Math.min(offsetMs, localNowMs - unwrapped);
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * @return when, on the phone's clock, the device's clock read {@code deviceTimeMs}. Device
+     * times wrap after 49 days; times within 24 days of the latest frame map correctly across it.
+     */
+    public long toLocal(long deviceTimeMs) {
+        return unwrap(deviceTimeMs) + offsetMs;
+    }
+
+    public void reset() {
+        synced = false;
+        offsetMs = 0;
+        latestDeviceMs = 0;
+    }
+
+    private long unwrap(long deviceTimeMs) {
+        return latestDeviceMs + (int) (deviceTimeMs - latestDeviceMs);
+    }
+}
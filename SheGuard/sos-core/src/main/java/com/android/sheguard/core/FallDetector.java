@@ -0,0 +1,183 @@
+package com.android.sheguard.core;
+
+/**
+ * Recognizes a fall as three phases in order: free fall (the magnitude drops well below
+ * gravity for at least {@code minFreeFallMs}), an impact spike within {@code impactWindowMs} of
+ * the free fall ending, and then stillness, the magnitude staying near gravity for
+ * {@code stillMs}, starting no later than {@code stillDeadlineMs} after the impact. Someone who
+ * gets up and walks off never goes still in time, so that fall is let go.
+ * <p>
+ * A phone that leaves the hand reads close to zero for most of its drop, while a body falling
+ * with the phone in a pocket pivots and catches itself and rarely gets below about 0.3 g. So a
+ * free fall that spends {@code minFlightMs} under {@code flightThreshold} is taken for a dropped
+ * or tossed phone and ignored; so, unavoidably, is a fall from a height.
+ * <p>
+ * Shares the per-sample budget with ShakeRecognizer: a few compares on squared magnitudes, a
+ * fixed handful of fields and no allocation.
+ */
+public class FallDetector {
+
+    private enum Phase {
+        WATCHING,
+        FREE_FALL,
+        AWAITING_IMPACT,
+        AWAITING_STILLNESS
+    }
+
+    private static final float G = ShakeDetector.GRAVITY_EARTH;
+
+    public static final float DEFAULT_FREE_FALL_THRESHOLD = 0.6f * G;
+    public static final long DEFAULT_MIN_FREE_FALL_MS = 120;
+    public static final float DEFAULT_FLIGHT_THRESHOLD = 0.2f * G;
+    public static final long DEFAULT_MIN_FLIGHT_MS = 100;
+    public static final float DEFAULT_IMPACT_THRESHOLD = 2.5f * G;
+    public static final long DEFAULT_IMPACT_WINDOW_MS = 1000;
+    public static final float DEFAULT_STILL_TOLERANCE = 1.5f;
+    public static final long DEFAULT_STILL_MS = 2000;
+    public static final long DEFAULT_STILL_DEADLINE_MS = 3000;
+
+    private final float freeFallSquared;
+    private final long minFreeFallMs;
+    private final float flightSquared;
+    private final long minFlightMs;
+    private final float impactSquared;
+    private final long impactWindowMs;
+    private final float stillLowSquared;
+    private final float stillHighSquared;
+    private final long stillMs;
+    private final long stillDeadlineMs;
+
+    private Phase phase = Phase.WATCHING;
+    private long freeFallStartMs;
+    private long freeFallEndMs;
+    private long flightStartMs;
+    private boolean inFlight;
+    private boolean flew;
+    private long impactMs;
+    private long stillSinceMs;
+
+    public FallDetector() {
+        this(DEFAULT_FREE_FALL_THRESHOLD, DEFAULT_MIN_FREE_FALL_MS, DEFAULT_FLIGHT_THRESHOLD, DEFAULT_MIN_FLIGHT_MS,
+                DEFAULT_IMPACT_THRESHOLD, DEFAULT_IMPACT_WINDOW_MS, DEFAULT_STILL_TOLERANCE, DEFAULT_STILL_MS,
+                DEFAULT_STILL_DEADLINE_MS);
+    }
+
+    /**
+     * @param freeFallThreshold m/s^2 the magnitude must stay under during free fall
+     * @param flightThreshold   m/s^2 under which the phone is taken to be flying on its own
+     * @param impactThreshold   m/s^2 the magnitude must exceed on impact
+     * @param stillTolerance    m/s^2 either side of gravity that still counts as lying still
+     */
+    public FallDetector(float freeFallThreshold, long minFreeFallMs, float flightThreshold, long minFlightMs,
+                        float impactThreshold, long impactWindowMs, float stillTolerance, long stillMs,
+                        long stillDeadlineMs) {
+        this.freeFallSquared = freeFallThreshold * freeFallThreshold;
+        this.minFreeFallMs = minFreeFallMs;
+        this.flightSquared = flightThreshold * flightThreshold;
+        this.minFlightMs = minFlightMs;
+        this.impactSquared = impactThreshold * impactThreshold;
+        this.impactWindowMs = impactWindowMs;
+        float low = Math.max(0f, G - stillTolerance);
+        this.stillLowSquared = low * low;
+        this.stillHighSquared = (G + stillTolerance) * (G + stillTolerance);
+        this.stillMs = stillMs;
+        this.stillDeadlineMs = stillDeadlineMs;
+    }
+
+    /**
+     * @param timeMs the sample's own timestamp; samples must arrive in order
+     * @return true once per recognized fall
+     */
+    public boolean onSample(float x, float y, float z, long timeMs) {
+        float magnitudeSquared = x * x + y * y + z * z;
+
+        switch (phase) {
+            case WATCHING:
+                if (magnitudeSquared < freeFallSquared) {
+                    startFreeFall(timeMs);
+                    trackFlight(magnitudeSquared, timeMs);
+                }
+                return false;
+
+            case FREE_FALL:
+                if (magnitudeSquared < freeFallSquared) {
+                    trackFlight(magnitudeSquared, timeMs);
+                    return false;
+                }
+                // The first sample out of free fall may already be the impact
+                freeFallEndMs = timeMs;
+                if (timeMs - freeFallStartMs < minFreeFallMs || flew) {
+                    phase = Phase.WATCHING;
+                    return false;
+                }
+                phase = Phase.AWAITING_IMPACT;
+                return onImpactCandidate(magnitudeSquared, timeMs);
+
+            case AWAITING_IMPACT:
+                return onImpactCandidate(magnitudeSquared, timeMs);
+
+            case AWAITING_STILLNESS:
+                if (magnitudeSquared > impactSquared) {
+                    // A bounce, or a second impact; wait out the stillness from here
+                    impactMs = timeMs;
+                    stillSinceMs = timeMs;
+                    return false;
+                }
+                if (magnitudeSquared < stillLowSquared || magnitudeSquared > stillHighSquared) {
+                    stillSinceMs = timeMs;
+                    if (timeMs - impactMs > stillDeadlineMs) {
+                        phase = Phase.WATCHING;
+                    }
+                    return false;
+                }
+                if (timeMs - stillSinceMs < stillMs) {
+                    return false;
+                }
+                phase = Phase.WATCHING;
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private boolean onImpactCandidate(float magnitudeSquared, long timeMs) {
+        if (magnitudeSquared > impactSquared) {
+            phase = Phase.AWAITING_STILLNESS;
+            impactMs = timeMs;
+            stillSinceMs = timeMs;
+        } else if (timeMs - freeFallEndMs > impactWindowMs) {
+            phase = Phase.WATCHING;
+        } else if (magnitudeSquared < freeFallSquared) {
+            // Falling again without having hit anything hard
+            startFreeFall(timeMs);
+            trackFlight(magnitudeSquared, timeMs);
+        }
+        return false;
+    }
+
+    private void startFreeFall(long timeMs) {
+        phase = Phase.FREE_FALL;
+        freeFallStartMs = timeMs;
+        inFlight = false;
+        flew = false;
+    }
+
+    private void trackFlight(float magnitudeSquared, long timeMs) {
+        if (magnitudeSquared >= flightSquared) {
+            inFlight = false;
+            return;
+        }
+        if (!inFlight) {
+            inFlight = true;
+            flightStartMs = timeMs;
+        }
+        if (timeMs - flightStartMs >= minFlightMs) {
+            flew = true;
+        }
+    }
+
+    public void reset() {
+        phase = Phase.WATCHING;
+    }
+}
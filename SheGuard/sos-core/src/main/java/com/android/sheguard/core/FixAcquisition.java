@@ -0,0 +1,112 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.core.port.Clock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One race between location sources under an {@link AcquisitionPolicy}. Each source reports
+ * once through {@link #offer(Source, GeoFix)}; the first qualifying fix wins outright, otherwise
+ * the best fix wins when every source has reported or the deadline passes, whichever is first.
+ */
+public class FixAcquisition {
+
+    public enum Source {
+        CACHE, LAST_KNOWN, CURRENT
+    }
+
+    private final AcquisitionPolicy policy;
+    private final Clock clock;
+    private final long startedAt;
+    private final CompletableFuture<Outcome> result = new CompletableFuture<>();
+    private int pendingSources;
+    private GeoFix best;
+    private Source bestSource;
+
+    public FixAcquisition(AcquisitionPolicy policy, ScheduledExecutorService executor, Clock clock, int sources) {
+        this.policy = policy;
+        this.clock = clock;
+        this.startedAt = clock.elapsedMs();
+        this.pendingSources = sources;
+
+        ScheduledFuture<?> deadline = executor.schedule(this::settle, policy.getDeadlineMs(), TimeUnit.MILLISECONDS);
+        result.whenComplete((outcome, error) -> deadline.cancel(false));
+        if (sources <= 0) {
+            settle();
+        }
+    }
+
+    public CompletableFuture<Outcome> result() {
+        return result;
+    }
+
+    /**
+     * @param fix {@code null} if the source came up empty or failed
+     */
+    public void offer(Source source, GeoFix fix) {
+        Outcome outcome = null;
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            pendingSources--;
+            long now = clock.elapsedMs();
+            if (policy.qualifies(fix, now)) {
+                outcome = new Outcome(fix, source, now - startedAt);
+            } else {
+                if (policy.better(best, fix, now) != best) {
+                    best = fix;
+                    bestSource = source;
+                }
+                if (pendingSources <= 0) {
+                    outcome = new Outcome(best, bestSource, now - startedAt);
+                }
+            }
+        }
+        if (outcome != null) {
+            result.complete(outcome);
+        }
+    }
+
+    private void settle() {
+        Outcome outcome;
+        synchronized (this) {
+            outcome = new Outcome(best, bestSource, clock.elapsedMs() - startedAt);
+        }
+        result.complete(outcome);
+    }
+
+    public static class Outcome {
+
+        private final GeoFix fix;
+        private final Source source;
+        private final long latencyMs;
+
+        Outcome(GeoFix fix, Source source, long latencyMs) {
+            this.fix = fix;
+            this.source = source;
+            this.latencyMs = latencyMs;
+        }
+
+        /**
+         * @return the winning fix, or {@code null} if no source had one
+         */
+        public GeoFix getFix() {
+            return fix;
+        }
+
+        /**
+         * @return where the fix came from, or {@code null} with no fix
+         */
+        public Source getSource() {
+            return source;
+        }
+
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+    }
+}
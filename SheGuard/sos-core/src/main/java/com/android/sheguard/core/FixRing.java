@@ -0,0 +1,98 @@
+package com.android.sheguard.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last few fixes, newest overwriting oldest. {@link #latest()} is a single volatile read so
+ * an SOS trigger never waits on the lock; {@link #best(long, long)} scans the few slots there are.
+ */
+public class FixRing {
+
+    public static final int DEFAULT_CAPACITY = 8;
+    // How fast an old fix is assumed to drift from where the person is now: a brisk walk
+    static final float DRIFT_METERS_PER_SECOND = 1.5f;
+
+    private final GeoFix[] fixes;
+    private int next = 0;
+    private int size = 0;
+    private volatile GeoFix latest;
+
+    public FixRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FixRing(int capacity) {
+        this.fixes = new GeoFix[capacity];
+    }
+
+    /**
+     * Fixes older than the latest one are dropped; providers can deliver out of order.
+     */
+    public synchronized void add(GeoFix fix) {
+        if (fix == null || (latest != null && fix.getElapsedMs() < latest.getElapsedMs())) {
+            return;
+        }
+        fixes[next] = fix;
+        next = (next + 1) % fixes.length;
+        size = Math.min(size + 1, fixes.length);
+        latest = fix;
+    }
+
+    public GeoFix latest() {
+        return latest;
+    }
+
+    /**
+     * The fix most likely to show where the person is now: its accuracy radius plus how far they
+     * could have moved since, smallest wins.
+     *
+     * @return {@code null} if no fix is younger than {@code maxAgeMs}
+     */
+    public synchronized GeoFix best(long nowMs, long maxAgeMs) {
+        GeoFix best = null;
+        float bestRadius = Float.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            GeoFix fix = fixes[i];
+            long ageMs = fix.ageMs(nowMs);
+            if (ageMs > maxAgeMs) {
+                continue;
+            }
+            float radius = effectiveRadius(fix, ageMs);
+            if (radius < bestRadius) {
+                best = fix;
+                bestRadius = radius;
+            }
+        }
+        return best;
+    }
+
+    public static float effectiveRadius(GeoFix fix, long ageMs) {
+        return fix.getAccuracyMeters() + ageMs / 1000f * DRIFT_METERS_PER_SECOND;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the fixes held, oldest first
+     */
+    public synchronized List<GeoFix> snapshot() {
+        List<GeoFix> list = new ArrayList<>(size);
+        int start = size < fixes.length ? 0 : next;
+        for (int i = 0; i < size; i++) {
+            list.add(fixes[(start + i) % fixes.length]);
+        }
+        return list;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < fixes.length; i++) {
+            fixes[i] = null;
+        }
+        next = 0;
+        size = 0;
+        latest = null;
+    }
+}
@@ -0,0 +1,286 @@
+package com.android.sheguard.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the wearable's RFCOMM byte stream into frames and classifies them in place, without
+ * turning bytes into Strings. Two formats share the stream: {@link WearableProtocol binary frames},
+ * which start with a magic byte that never occurs in text, and the newline-terminated text lines
+ * older firmware sends. A frame may arrive split over any number of reads; the partial frame waits
+ * in a fixed buffer until the rest shows up.
+ * <p>
+ * A text line that outgrows its buffer can't be a frame the wearable sends, so it is dropped up to
+ * the next newline. A binary frame with a bad version, length or CRC is dropped from its magic
+ * byte only: the bytes after it are read again, since a real frame may start among them.
+ * <p>
+ * The sequence number, device time and payload of the frame being delivered can be read from the
+ * decoder inside {@link Sink#onFrame(Frame)}. One instance per stream, fed from one thread.
+ */
+public class FrameDecoder {
+
+    public enum Frame {
+        /** One button press, sent as {@code P} or a binary PRESS. */
+        PRESS,
+        /** The wearable counted a burst of presses itself. */
+        TRIPLE_PRESS,
+        /** Binary firmware answering the app's HELLO. */
+        HELLO,
+        ACK,
+        /** A well-formed line or frame this app doesn't understand. */
+        UNKNOWN
+    }
+
+    public interface Sink {
+
+        void onFrame(Frame frame);
+    }
+
+    // Comfortably above the longest frame the wearable sends
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 64;
+    public static final int NO_SEQUENCE = -1;
+
+    private static final byte NEWLINE = '\n';
+    private static final byte PRESS = 'P';
+    private static final byte[] TRIPLE_PRESS = "TRIPLE_PRESS_ACTION".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] line;
+    private int length;
+    private boolean discarding;
+    private long discarded;
+
+    private final byte[] frame = new byte[WearableProtocol.MAX_FRAME_SIZE];
+    private int frameLength;
+    private boolean inFrame;
+    // Bytes of a rejected frame still to be read again, at frame[replayStart, replayEnd)
+    private int replayStart;
+    private int replayEnd;
+    private long rejected;
+
+    private boolean binary;
+    private int sequence = NO_SEQUENCE;
+    private long deviceTimeMs;
+    private int payloadLength;
+
+    public FrameDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(int maxFrameLength) {
+        if (maxFrameLength < TRIPLE_PRESS.length) {
+            throw new IllegalArgumentException("maxFrameLength " + maxFrameLength);
+        }
+        this.line = new byte[maxFrameLength];
+    }
+
+    /**
+     * @return the number of frames delivered to {@code sink}
+     */
+    public int feed(byte[] data, int offset, int count, Sink sink) {
+        int frames = 0;
+        int i = offset;
+        int end = offset + count;
+        while (true) {
+            byte b;
+            if (replayStart < replayEnd) {
+                b = frame[replayStart++];
+            } else if (i < end) {
+                b = data[i++];
+            } else {
+                return frames;
+            }
+            if (inFrame) {
+                frames += acceptFrameByte(b, sink);
+            } else if (b == WearableProtocol.MAGIC) {
+                // Whatever text came before is cut short; binary firmware finishes its lines first
+                inFrame = true;
+                frame[0] = b;
+                frameLength = 1;
+                length = 0;
+                discarding = false;
+            } else {
+                frames += acceptTextByte(b, sink);
+            }
+        }
+    }
+
+    /**
+     * @return whether the frame being delivered is binary; the accessors below only mean
+     * something for binary frames
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * @return the frame's sequence number, or {@link #NO_SEQUENCE} for a text frame
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the device's millisecond clock when it built the frame, an unsigned 32-bit value
+     */
+    public long getDeviceTimeMs() {
+        return deviceTimeMs;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    public int getPayloadByte(int index) {
+        if (index >= payloadLength) {
+            throw new IndexOutOfBoundsException("index " + index);
+        }
+        return frame[WearableProtocol.HEADER_SIZE + index] & 0xFF;
+    }
+
+    /**
+     * @return lines dropped for outgrowing the buffer since this decoder was created
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * @return binary frames dropped for a bad version, length or CRC since this decoder was created
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void reset() {
+        length = 0;
+        discarding = false;
+        inFrame = false;
+        frameLength = 0;
+        replayStart = 0;
+        replayEnd = 0;
+    }
+
+    private int acceptTextByte(byte b, Sink sink) {
+        if (b == NEWLINE) {
+            int delivered = 0;
+            if (!discarding) {
+                Frame classified = classify();
+                if (classified != null) {
+                    binary = false;
+                    sequence = NO_SEQUENCE;
+                    deviceTimeMs = 0;
+                    payloadLength = 0;
+                    sink.onFrame(classified);
+                    delivered = 1;
+                }
+            }
+            discarding = false;
+            length = 0;
+            return delivered;
+        }
+        if (discarding) {
+            return 0;
+        }
+        if (length == line.length) {
+            discarding = true;
+            discarded++;
+            length = 0;
+        } else {
+            line[length++] = b;
+        }
+        return 0;
+    }
+
+    private int acceptFrameByte(byte b, Sink sink) {
+        frame[frameLength++] = b;
+        if (frameLength == 2 && b != WearableProtocol.VERSION) {
+            reject();
+            return 0;
+        }
+        if (frameLength < WearableProtocol.HEADER_SIZE) {
+            return 0;
+        }
+        int declared = frame[9] & 0xFF;
+        if (declared > WearableProtocol.MAX_PAYLOAD) {
+            reject();
+            return 0;
+        }
+        int crcAt = WearableProtocol.HEADER_SIZE + declared;
+        if (frameLength <= crcAt) {
+            return 0;
+        }
+        if (WearableProtocol.crc8(frame, 1, crcAt - 1) != frame[crcAt]) {
+            reject();
+            return 0;
+        }
+        inFrame = false;
+        frameLength = 0;
+        binary = true;
+        sequence = (frame[3] & 0xFF) | (frame[4] & 0xFF) << 8;
+        deviceTimeMs = (frame[5] & 0xFFL) | (frame[6] & 0xFFL) << 8 | (frame[7] & 0xFFL) << 16 | (frame[8] & 0xFFL) << 24;
+        payloadLength = declared;
+        sink.onFrame(frameType(frame[2] & 0xFF));
+        return 1;
+    }
+
+    private void reject() {
+        rejected++;
+        inFrame = false;
+        // Everything after the magic byte is read again, ahead of any replay still outstanding.
+        // frameLength never passes replayStart, so this only moves bytes down.
+        int outstanding = replayEnd - replayStart;
+        System.arraycopy(frame, replayStart, frame, frameLength, outstanding);
+        replayStart = 1;
+        replayEnd = frameLength + outstanding;
+        frameLength = 0;
+    }
+
+    private static Frame frameType(int type) {
+        switch (type) {
+            case WearableProtocol.TYPE_PRESS:
+                return Frame.PRESS;
+            case WearableProtocol.TYPE_TRIPLE_PRESS:
+                return Frame.TRIPLE_PRESS;
+            case WearableProtocol.TYPE_HELLO:
+                return Frame.HELLO;
+            case WearableProtocol.TYPE_ACK:
+                return Frame.ACK;
+            default:
+                return Frame.UNKNOWN;
+        }
+    }
+
+    private Frame classify() {
+        // Same whitespace as String.trim(), which also takes care of "\r\n" from println()
+        int start = 0;
+        int stop = length;
+        while (start < stop && (line[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (stop > start && (line[stop - 1] & 0xFF) <= ' ') {
+            stop--;
+        }
+        if (start == stop) {
+            return null;
+        }
+        if (stop - start == 1 && line[start] == PRESS) {
+            return Frame.PRESS;
+        }
+        if (contains(start, stop, TRIPLE_PRESS)) {
+            return Frame.TRIPLE_PRESS;
+        }
+        return Frame.UNKNOWN;
+    }
+
+    private boolean contains(int start, int stop, byte[] pattern) {
+        for (int i = start; i + pattern.length <= stop; i++) {
+            int j = 0;
+            while (j < pattern.length && line[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package com.android.sheguard.core;
+
+@SuppressWarnings("unused")
+public class GeoFix {
+
+    private static final double EARTH_RADIUS_METERS = 6371000;
+
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final long elapsedMs;
+
+    public GeoFix(double latitude, double longitude, float accuracyMeters, long elapsedMs) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public long ageMs(long nowElapsedMs) {
+        return Math.max(0, nowElapsedMs - elapsedMs);
+    }
+
+    /**
+     * Equirectangular approximation; good to well under a metre at the distances an accuracy
+     * radius covers.
+     */
+    public double distanceTo(GeoFix other) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(other.latitude);
+        double x = Math.toRadians(other.longitude - longitude) * Math.cos((lat1 + lat2) / 2);
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+}
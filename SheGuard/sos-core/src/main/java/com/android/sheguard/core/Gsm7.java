@@ -0,0 +1,55 @@
+package com.android.sheguard.core;
+
+/**
+ * Segment arithmetic for SMS bodies. Text that fits the GSM 03.38 default alphabet is sent as
+ * 7-bit septets (160 per single segment, 153 per part when concatenated; extension-table
+ * characters take two). Anything else forces UCS-2 (70 per segment, 67 per part).
+ */
+public final class Gsm7 {
+
+    public static final int SINGLE_SEGMENT_SEPTETS = 160;
+    public static final int MULTIPART_SEPTETS = 153;
+    public static final int SINGLE_SEGMENT_UCS2 = 70;
+    public static final int MULTIPART_UCS2 = 67;
+
+    private static final String BASIC = "@\u00A3$\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\n\u00D8\u00F8\r\u00C5\u00E5"
+            + "\u0394_\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E\u00C6\u00E6\u00DF\u00C9"
+            + " !\"#\u00A4%&'()*+,-./0123456789:;<=>?"
+            + "\u00A1ABCDEFGHIJKLMNOPQRSTUVWXYZ\u00C4\u00D6\u00D1\u00DC\u00A7"
+            + "\u00BFabcdefghijklmnopqrstuvwxyz\u00E4\u00F6\u00F1\u00FC\u00E0";
+    private static final String EXTENDED = "\f^{}\\[~]|\u20AC";
+
+    private Gsm7() {
+    }
+
+    /**
+     * @return septets needed for the text, or -1 if it cannot be sent as GSM-7
+     */
+    public static int septets(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (BASIC.indexOf(c) >= 0) {
+                count++;
+            } else if (EXTENDED.indexOf(c) >= 0) {
+                count += 2;
+            } else {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    public static boolean isEncodable(CharSequence text) {
+        return septets(text) >= 0;
+    }
+
+    public static int segments(CharSequence text) {
+        int septets = septets(text);
+        if (septets >= 0) {
+            return septets <= SINGLE_SEGMENT_SEPTETS ? 1 : (septets + MULTIPART_SEPTETS - 1) / MULTIPART_SEPTETS;
+        }
+        int units = text.length();
+        return units <= SINGLE_SEGMENT_UCS2 ? 1 : (units + MULTIPART_UCS2 - 1) / MULTIPART_UCS2;
+    }
+}
@@ -0,0 +1,104 @@
+package com.android.sheguard.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which live-location samples are worth writing and when. Samples that moved less than
+ * the distance threshold are dropped, the rest are batched, and a batch is flushed on an interval
+ * that stretches when the person is still or the battery is low. No more than
+ * {@code maxWritesPerMinute} flushes happen in any sliding minute.
+ */
+public class LiveTrackBatcher {
+
+    public static final float DEFAULT_MIN_DISTANCE_METERS = 15f;
+    public static final long DEFAULT_BASE_INTERVAL_MS = 10000;
+    public static final int DEFAULT_MAX_WRITES_PER_MINUTE = 6;
+
+    static final float STILL_BELOW_MPS = 0.5f;
+    static final float VEHICLE_ABOVE_MPS = 5f;
+    static final int LOW_BATTERY_PERCENT = 20;
+
+    private final float minDistanceMeters;
+    private final long baseIntervalMs;
+    private final long[] writeTimes;
+    private final List<GeoFix> pending = new ArrayList<>();
+    private GeoFix lastKept;
+    private long lastWriteMs = Long.MIN_VALUE;
+    private int writeIndex = 0;
+    private int writeCount = 0;
+
+    public LiveTrackBatcher() {
+        this(DEFAULT_MIN_DISTANCE_METERS, DEFAULT_BASE_INTERVAL_MS, DEFAULT_MAX_WRITES_PER_MINUTE);
+    }
+
+    public LiveTrackBatcher(float minDistanceMeters, long baseIntervalMs, int maxWritesPerMinute) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.baseIntervalMs = baseIntervalMs;
+        this.writeTimes = new long[maxWritesPerMinute];
+    }
+
+    /**
+     * @return true if the sample was kept for the next batch
+     */
+    public synchronized boolean offer(GeoFix fix) {
+        if (lastKept != null && fix.distanceTo(lastKept) < Math.max(minDistanceMeters, fix.getAccuracyMeters())) {
+            return false;
+        }
+        lastKept = fix;
+        pending.add(fix);
+        return true;
+    }
+
+    /**
+     * Flush interval for the current speed and battery: twice as often in a vehicle, a third as
+     * often when still, and three times less often on low battery.
+     */
+    public long intervalMs(float speedMps, int batteryPercent) {
+        long interval = baseIntervalMs;
+        if (speedMps >= VEHICLE_ABOVE_MPS) {
+            interval /= 2;
+        } else if (speedMps < STILL_BELOW_MPS) {
+            interval *= 3;
+        }
+        if (batteryPercent >= 0 && batteryPercent < LOW_BATTERY_PERCENT) {
+            interval *= 3;
+        }
+        return interval;
+    }
+
+    public synchronized boolean shouldFlush(long nowMs, float speedMps, int batteryPercent) {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        if (lastWriteMs != Long.MIN_VALUE && nowMs - lastWriteMs < intervalMs(speedMps, batteryPercent)) {
+            return false;
+        }
+        return withinBudget(nowMs);
+    }
+
+    /**
+     * Takes the pending batch and counts it as one write.
+     */
+    public synchronized List<GeoFix> drain(long nowMs) {
+        List<GeoFix> batch = new ArrayList<>(pending);
+        pending.clear();
+        lastWriteMs = nowMs;
+        writeTimes[writeIndex] = nowMs;
+        writeIndex = (writeIndex + 1) % writeTimes.length;
+        writeCount = Math.min(writeCount + 1, writeTimes.length);
+        return batch;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private boolean withinBudget(long nowMs) {
+        if (writeCount < writeTimes.length) {
+            return true;
+        }
+        // writeIndex points at the oldest of the last maxWritesPerMinute writes
+        return nowMs - writeTimes[writeIndex] >= 60000;
+    }
+}
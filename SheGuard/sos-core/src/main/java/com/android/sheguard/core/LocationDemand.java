@@ -0,0 +1,93 @@
+package com.android.sheguard.core;
+
+import java.util.Collection;
+
+/**
+ * How much location one consumer needs. Several demands are served by one hardware request,
+ * {@link #merge(Collection)}: the most accurate priority, the shortest interval and the shortest
+ * minimum interval among them. A {@link Accuracy#PASSIVE passive} demand only asks for the fixes
+ * other requests cause, so its interval never shortens an active one's.
+ */
+public class LocationDemand {
+
+    /**
+     * Most demanding first.
+     */
+    public enum Accuracy {
+        HIGH, BALANCED, LOW_POWER, PASSIVE
+    }
+
+    private final Accuracy accuracy;
+    private final long intervalMs;
+    private final long minUpdateIntervalMs;
+
+    /**
+     * @param minUpdateIntervalMs fixes may arrive this often when other requests cause them
+     */
+    public LocationDemand(Accuracy accuracy, long intervalMs, long minUpdateIntervalMs) {
+        this.accuracy = accuracy;
+        this.intervalMs = intervalMs;
+        this.minUpdateIntervalMs = Math.min(minUpdateIntervalMs, intervalMs);
+    }
+
+    public Accuracy getAccuracy() {
+        return accuracy;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public long getMinUpdateIntervalMs() {
+        return minUpdateIntervalMs;
+    }
+
+    /**
+     * @return the demand that satisfies all of them, or {@code null} if there are none
+     */
+    public static LocationDemand merge(Collection<LocationDemand> demands) {
+        Accuracy accuracy = null;
+        long interval = Long.MAX_VALUE;
+        long passiveInterval = Long.MAX_VALUE;
+        long minUpdateInterval = Long.MAX_VALUE;
+        for (LocationDemand demand : demands) {
+            if (accuracy == null || demand.accuracy.compareTo(accuracy) < 0) {
+                accuracy = demand.accuracy;
+            }
+            if (demand.accuracy == Accuracy.PASSIVE) {
+                passiveInterval = Math.min(passiveInterval, demand.intervalMs);
+            } else {
+                interval = Math.min(interval, demand.intervalMs);
+            }
+            minUpdateInterval = Math.min(minUpdateInterval, demand.minUpdateIntervalMs);
+        }
+        if (accuracy == null) {
+            return null;
+        }
+        return new LocationDemand(accuracy, accuracy == Accuracy.PASSIVE ? passiveInterval : interval, minUpdateInterval);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocationDemand)) {
+            return false;
+        }
+        LocationDemand other = (LocationDemand) o;
+        return accuracy == other.accuracy && intervalMs == other.intervalMs && minUpdateIntervalMs == other.minUpdateIntervalMs;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = accuracy.hashCode();
+        result = 31 * result + Long.hashCode(intervalMs);
+        return 31 * result + Long.hashCode(minUpdateIntervalMs);
+    }
+
+    @Override
+    public String toString() {
+        return accuracy + "/" + intervalMs + "ms (min " + minUpdateIntervalMs + "ms)";
+    }
+}
@@ -0,0 +1,79 @@
+package com.android.sheguard.core;
+
+/**
+ * Decides how closely the accelerometer needs watching. The gate idles until a sample's
+ * magnitude strays more than {@code wakeThreshold} from gravity (or an external motion trigger
+ * fires), goes active, and drops back to idle after {@code quietMs} without such a sample.
+ * Orientation doesn't matter since only the magnitude is compared, squared so there is no sqrt.
+ */
+public class MotionGate {
+
+    public enum Tier {
+        IDLE,
+        ACTIVE
+    }
+
+    public static final float DEFAULT_WAKE_THRESHOLD = 3f;
+    public static final long DEFAULT_QUIET_MS = 10000;
+
+    private static final float G = ShakeDetector.GRAVITY_EARTH;
+
+    private final float lowSquared;
+    private final float highSquared;
+    private final long quietMs;
+
+    private Tier tier = Tier.IDLE;
+    private long lastMotionMs;
+
+    public MotionGate() {
+        this(DEFAULT_WAKE_THRESHOLD, DEFAULT_QUIET_MS);
+    }
+
+    /**
+     * @param wakeThreshold m/s^2 away from gravity, either way, that counts as motion
+     */
+    public MotionGate(float wakeThreshold, long quietMs) {
+        float low = Math.max(0f, G - wakeThreshold);
+        this.lowSquared = low * low;
+        this.highSquared = (G + wakeThreshold) * (G + wakeThreshold);
+        this.quietMs = quietMs;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * @return true if the tier changed
+     */
+    public boolean onSample(float x, float y, float z, long timeMs) {
+        float magnitudeSquared = x * x + y * y + z * z;
+        if (magnitudeSquared < lowSquared || magnitudeSquared > highSquared) {
+            return onMotion(timeMs);
+        }
+        if (tier == Tier.ACTIVE && timeMs - lastMotionMs > quietMs) {
+            tier = Tier.IDLE;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Motion reported by something other than the accelerometer stream, e.g. a
+     * significant-motion trigger.
+     *
+     * @return true if the tier changed
+     */
+    public boolean onMotion(long timeMs) {
+        lastMotionMs = timeMs;
+        if (tier == Tier.ACTIVE) {
+            return false;
+        }
+        tier = Tier.ACTIVE;
+        return true;
+    }
+
+    public void reset() {
+        tier = Tier.IDLE;
+    }
+}
@@ -0,0 +1,74 @@
+package com.android.sheguard.core;
+
+/**
+ * Open Location Code (plus code) encoder. A 10-digit code such as {@code 7MMGRCW6+X2} pins a
+ * roughly 14 m square; 8 digits about 275 m, 11 digits about 3 m.
+ */
+public final class PlusCode {
+
+    private static final String ALPHABET = "23456789CFGHJMPQRVWX";
+    private static final int BASE = 20;
+    private static final int PAIR_DIGITS = 10;
+    private static final int GRID_ROWS = 5;
+    private static final int GRID_COLUMNS = 4;
+    // Everything is done in integers at the finest resolution, as the reference implementation does
+    private static final long PAIR_PRECISION = 8000;
+    private static final long LAT_GRID = 3125;
+    private static final long LNG_GRID = 1024;
+    private static final long LAT_UNITS = PAIR_PRECISION * LAT_GRID;
+    private static final long LNG_UNITS = PAIR_PRECISION * LNG_GRID;
+
+    private PlusCode() {
+    }
+
+    /**
+     * @param codeLength 2, 4, 6, 8, 10 or up to 15 digits
+     */
+    public static String encode(double latitude, double longitude, int codeLength) {
+        // Clipping and wrapping happen on whole grid units, so no digit depends on a float sum
+        long latVal = Math.min(Math.max(toUnits(latitude, LAT_UNITS) + 90 * LAT_UNITS, 0), 180 * LAT_UNITS - 1);
+        long lngVal = Math.floorMod(toUnits(longitude, LNG_UNITS) + 180 * LNG_UNITS, 360 * LNG_UNITS);
+
+        char[] code = new char[15];
+        if (codeLength > PAIR_DIGITS) {
+            for (int i = 0; i < 5; i++) {
+                int latDigit = (int) (latVal % GRID_ROWS);
+                int lngDigit = (int) (lngVal % GRID_COLUMNS);
+                code[14 - i] = ALPHABET.charAt(latDigit * GRID_COLUMNS + lngDigit);
+                latVal /= GRID_ROWS;
+                lngVal /= GRID_COLUMNS;
+            }
+        } else {
+            latVal /= LAT_GRID;
+            lngVal /= LNG_GRID;
+        }
+        for (int i = 0; i < PAIR_DIGITS / 2; i++) {
+            code[9 - i * 2] = ALPHABET.charAt((int) (lngVal % BASE));
+            code[8 - i * 2] = ALPHABET.charAt((int) (latVal % BASE));
+            latVal /= BASE;
+            lngVal /= BASE;
+        }
+
+        StringBuilder result = new StringBuilder(16);
+        int digits = Math.min(codeLength, 15);
+        for (int i = 0; i < Math.max(digits, 8); i++) {
+            if (i == 8) {
+                result.append('+');
+            }
+            result.append(i < digits ? code[i] : '0');
+        }
+        if (digits <= 8) {
+            result.append('+');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Degrees to whole units of the finest grid. The product is rounded to a millionth of a unit
+     * before flooring, so a coordinate sitting on a cell edge isn't pushed into the cell below by
+     * the multiplication's float error.
+     */
+    private static long toUnits(double degrees, long unitsPerDegree) {
+        return Math.floorDiv(Math.round(degrees * unitsPerDegree * 1e6), 1_000_000L);
+    }
+}
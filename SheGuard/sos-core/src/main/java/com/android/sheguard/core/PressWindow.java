@@ -0,0 +1,49 @@
+package com.android.sheguard.core;
+
+/**
+ * Counts wearable button presses and reports when enough of them land inside one window.
+ */
+public class PressWindow {
+
+    public static final long DEFAULT_WINDOW_MS = 2000;
+    public static final int DEFAULT_REQUIRED_PRESSES = 3;
+
+    private final long windowMs;
+    private final int requiredPresses;
+    private int pressCount = 0;
+    private long windowStartMs = 0L;
+
+    public PressWindow() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_REQUIRED_PRESSES);
+    }
+
+    public PressWindow(long windowMs, int requiredPresses) {
+        this.windowMs = windowMs;
+        this.requiredPresses = requiredPresses;
+    }
+
+    /**
+     * @return true when this press completes a burst; the window is reset in that case
+     */
+    public synchronized boolean onPress(long nowMs) {
+        if (pressCount == 0 || nowMs - windowStartMs > windowMs) {
+            windowStartMs = nowMs;
+            pressCount = 0;
+        }
+        pressCount++;
+        if (pressCount >= requiredPresses) {
+            reset();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void reset() {
+        pressCount = 0;
+        windowStartMs = 0L;
+    }
+
+    public synchronized int getPressCount() {
+        return pressCount;
+    }
+}
@@ -0,0 +1,82 @@
+package com.android.sheguard.core;
+
+/**
+ * When the first alert goes out and which refined locations are worth a follow-up. The first
+ * alert never waits longer than {@code firstAlertDeadlineMs}, whatever fix is at hand; after
+ * that a new fix is sent only if it is clearly more accurate, or shows the person has moved,
+ * and no sooner than {@code minUpdateIntervalMs} after the previous one.
+ * <p>
+ * Only the first {@code maxSmsUpdates} follow-ups are also texted; later ones go by push alone.
+ * Texts share the platform's SMS budget with the first alert, and an update held back by it is
+ * stale by the time it goes out.
+ */
+public class ProgressivePolicy {
+
+    public static final ProgressivePolicy DEFAULT = new ProgressivePolicy(250, 0.5f, 15000, 25f, 5, 2, 120000);
+
+    private final long firstAlertDeadlineMs;
+    private final float improvementRatio;
+    private final long minUpdateIntervalMs;
+    private final float targetAccuracyMeters;
+    private final int maxUpdates;
+    private final int maxSmsUpdates;
+    private final long maxDurationMs;
+
+    public ProgressivePolicy(long firstAlertDeadlineMs, float improvementRatio, long minUpdateIntervalMs,
+                             float targetAccuracyMeters, int maxUpdates, int maxSmsUpdates, long maxDurationMs) {
+        this.firstAlertDeadlineMs = firstAlertDeadlineMs;
+        this.improvementRatio = improvementRatio;
+        this.minUpdateIntervalMs = minUpdateIntervalMs;
+        this.targetAccuracyMeters = targetAccuracyMeters;
+        this.maxUpdates = maxUpdates;
+        this.maxSmsUpdates = maxSmsUpdates;
+        this.maxDurationMs = maxDurationMs;
+    }
+
+    public long getFirstAlertDeadlineMs() {
+        return firstAlertDeadlineMs;
+    }
+
+    public long getMinUpdateIntervalMs() {
+        return minUpdateIntervalMs;
+    }
+
+    public long getMaxDurationMs() {
+        return maxDurationMs;
+    }
+
+    /**
+     * @param lastSent     the fix in the previous message, or {@code null} if it had none
+     * @param lastSentAtMs when the previous message went out
+     * @param updatesSent  follow-ups sent so far, not counting the first alert
+     */
+    public boolean shouldSend(GeoFix candidate, GeoFix lastSent, long lastSentAtMs, int updatesSent, long nowMs) {
+        if (candidate == null || updatesSent >= maxUpdates) {
+            return false;
+        }
+        if (lastSent == null) {
+            return true;
+        }
+        if (nowMs - lastSentAtMs < minUpdateIntervalMs) {
+            return false;
+        }
+        if (candidate.getAccuracyMeters() <= lastSent.getAccuracyMeters() * improvementRatio) {
+            return true;
+        }
+        return candidate.distanceTo(lastSent) > candidate.getAccuracyMeters() + lastSent.getAccuracyMeters();
+    }
+
+    /**
+     * @param update the follow-up's number, starting at 1
+     */
+    public boolean shouldText(int update) {
+        return update <= maxSmsUpdates;
+    }
+
+    /**
+     * @return true once nothing more needs streaming
+     */
+    public boolean isComplete(GeoFix lastSent, int updatesSent) {
+        return updatesSent >= maxUpdates || (lastSent != null && lastSent.getAccuracyMeters() <= targetAccuracyMeters);
+    }
+}
@@ -0,0 +1,154 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.core.port.ContactSource;
+import com.android.sheguard.model.ContactModel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends SOS pushes to the trusted contacts. An alert to several contacts goes out as a single
+ * publish on the user's SOS topic when every contact who joined that topic is one of this alert's
+ * recipients; everyone else, and everyone when the publish fails, gets a push to their own device
+ * token.
+ * <p>
+ * The topic is named by a secret the contacts only learn from an invite, and a contact counts as
+ * joined only once they accepted it. Since nobody can be taken off a topic, the topic is never
+ * published on while anyone on it is no longer a recipient; the app rotates to a new topic when a
+ * contact is removed.
+ * <p>
+ * The recipient is checked against the contact list on every send, retries included, so a contact
+ * who was removed gets nothing from then on, even for alerts queued before the removal.
+ */
+public class PushFanout {
+
+    // A topic publish only pays off when it replaces more than one send
+    private static final int MIN_TOPIC_MEMBERS = 2;
+
+    public interface TokenLookup {
+
+        /**
+         * @return the contact's device token, or {@code null} if they have no account; fails if
+         * the lookup itself failed
+         */
+        CompletableFuture<String> tokenFor(String phone);
+    }
+
+    public interface Transport {
+
+        /**
+         * @param to a device token, or a topic name for the topic transport
+         */
+        CompletableFuture<PushResult> send(String to, String title, String message);
+    }
+
+    public interface Topics {
+
+        /**
+         * @return the topic the user publishes on, or {@code null} if there is none yet
+         */
+        String currentTopic();
+
+        /**
+         * @return the phones of the contacts who accepted an invite to this topic and joined it
+         */
+        Set<String> members(String topic);
+    }
+
+    private final ContactSource contacts;
+    private final TokenLookup tokens;
+    private final Transport transport;
+    private final Topics topics;
+    private final Transport topicTransport;
+
+    public PushFanout(ContactSource contacts, TokenLookup tokens, Transport transport) {
+        this(contacts, tokens, transport, null, null);
+    }
+
+    public PushFanout(ContactSource contacts, TokenLookup tokens, Transport transport, Topics topics, Transport topicTransport) {
+        this.contacts = contacts;
+        this.tokens = tokens;
+        this.transport = transport;
+        this.topics = topics;
+        this.topicTransport = topicTransport;
+    }
+
+    public CompletableFuture<PushResult> send(String phone, String title, String message) {
+        if (!isContact(phone)) {
+            return CompletableFuture.completedFuture(PushResult.NOT_TRUSTED);
+        }
+        return tokens.tokenFor(phone).handle((token, error) -> {
+            if (error != null) {
+                return CompletableFuture.completedFuture(PushResult.LOOKUP_FAILED);
+            }
+            if (token == null) {
+                return CompletableFuture.completedFuture(PushResult.NO_ACCOUNT);
+            }
+            // The contact may have been removed while the token was being looked up
+            if (!isContact(phone)) {
+                return CompletableFuture.completedFuture(PushResult.NOT_TRUSTED);
+            }
+            return transport.send(token, title, message);
+        }).thenCompose(send -> send);
+    }
+
+    /**
+     * Sends one alert to several contacts, through the topic where it can.
+     *
+     * @return each phone's result, in the order given
+     */
+    public CompletableFuture<Map<String, PushResult>> sendAll(List<String> phones, String title, String message) {
+        Map<String, CompletableFuture<PushResult>> sends = new LinkedHashMap<>();
+        String topic = topics != null ? topics.currentTopic() : null;
+        Set<String> members = topic != null ? topics.members(topic) : null;
+
+        if (members != null && members.size() >= MIN_TOPIC_MEMBERS && coversOnly(members, phones)) {
+            CompletableFuture<PushResult> publish = topicTransport.send(topic, title, message);
+            for (String phone : members) {
+                sends.put(phone, publish.thenCompose(result -> {
+                    if (result == PushResult.ACCEPTED || result == PushResult.CANCELLED) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    return send(phone, title, message);
+                }));
+            }
+        }
+        for (String phone : phones) {
+            if (!sends.containsKey(phone)) {
+                sends.put(phone, send(phone, title, message));
+            }
+        }
+
+        return CompletableFuture.allOf(sends.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, PushResult> results = new LinkedHashMap<>();
+            for (String phone : phones) {
+                results.put(phone, sends.get(phone).join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * @return whether everyone on the topic is still a contact and meant to get this alert
+     */
+    private boolean coversOnly(Set<String> members, List<String> phones) {
+        List<String> trusted = new ArrayList<>();
+        for (ContactModel contact : contacts.loadContacts()) {
+            trusted.add(contact.getPhone());
+        }
+        return trusted.containsAll(members) && phones.containsAll(members);
+    }
+
+    private boolean isContact(String phone) {
+        for (ContactModel contact : contacts.loadContacts()) {
+            if (phone.equals(contact.getPhone())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package com.android.sheguard.core;
+
+/**
+ * How a push to one contact ended.
+ */
+public enum PushResult {
+    ACCEPTED,
+    /** FCM no longer knows the token; the contact has to open the app again. */
+    UNREGISTERED,
+    FAILED,
+    TIMED_OUT,
+    CANCELLED,
+    /** The send queue was full. */
+    REJECTED,
+    /** Their token could not be looked up; worth retrying. */
+    LOOKUP_FAILED,
+    /** The contact has no account, so there is no token to push to. */
+    NO_ACCOUNT,
+    /** The recipient is no longer one of the user's contacts. */
+    NOT_TRUSTED
+}
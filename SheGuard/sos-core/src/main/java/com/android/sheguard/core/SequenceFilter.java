@@ -0,0 +1,60 @@
+package com.android.sheguard.core;
+
+/**
+ * Lets each 16-bit sequence number through once. Remembers the highest number seen and which of
+ * the {@value #WINDOW} before it have arrived, so retransmissions that overtake each other are
+ * still told apart. Anything older than the window is taken for a duplicate. Sequence numbers
+ * restart when the device reboots, so the filter starts over whenever the device's boot nonce
+ * changes.
+ */
+public class SequenceFilter {
+
+    public static final int WINDOW = 64;
+
+    private boolean started;
+    private long epoch;
+    private int highest;
+    // Bit i set: highest - i has been seen
+    private long seen;
+
+    /**
+     * @return true the first time {@code sequence} is offered since the last epoch change
+     */
+    public boolean accept(int sequence) {
+        sequence &= 0xFFFF;
+        if (!started) {
+            started = true;
+            highest = sequence;
+            seen = 1L;
+            return true;
+        }
+        int ahead = (short) (sequence - highest);
+        if (ahead > 0) {
+            seen = ahead >= WINDOW ? 1L : (seen << ahead) | 1L;
+            highest = sequence;
+            return true;
+        }
+        int behind = -ahead;
+        if (behind >= WINDOW) {
+            return false;
+        }
+        long bit = 1L << behind;
+        if ((seen & bit) != 0) {
+            return false;
+        }
+        seen |= bit;
+        return true;
+    }
+
+    public void setEpoch(long epoch) {
+        if (epoch != this.epoch) {
+            this.epoch = epoch;
+            reset();
+        }
+    }
+
+    public void reset() {
+        started = false;
+        seen = 0L;
+    }
+}
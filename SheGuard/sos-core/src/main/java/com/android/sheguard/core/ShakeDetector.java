@@ -0,0 +1,51 @@
+package com.android.sheguard.core;
+
+/**
+ * Flags a shake when the acceleration magnitude, minus gravity, crosses a threshold. Runs on
+ * every accelerometer sample, so it compares squared magnitudes and allocates nothing.
+ */
+public class ShakeDetector {
+
+    public static final float GRAVITY_EARTH = 9.80665f;
+    public static final float DEFAULT_THRESHOLD = 10.2f;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+
+    private final float threshold;
+    // (threshold + g)^2: |a| - g > threshold exactly when |a|^2 exceeds this
+    private final float thresholdSquared;
+    private final long minIntervalMs;
+    private long lastShakeMs = Long.MIN_VALUE / 2;
+
+    public ShakeDetector() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    public ShakeDetector(float threshold, long minIntervalMs) {
+        this.threshold = threshold;
+        this.thresholdSquared = (threshold + GRAVITY_EARTH) * (threshold + GRAVITY_EARTH);
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param timeMs the sample's own timestamp; batched samples arrive late but in order
+     */
+    public boolean onSample(float x, float y, float z, long timeMs) {
+        if (timeMs - lastShakeMs <= minIntervalMs) {
+            return false;
+        }
+
+        if (x * x + y * y + z * z > thresholdSquared) {
+            lastShakeMs = timeMs;
+            return true;
+        }
+        return false;
+    }
+
+    public void reset() {
+        lastShakeMs = Long.MIN_VALUE / 2;
+    }
+}
@@ -0,0 +1,164 @@
+package com.android.sheguard.core;
+
+/**
+ * Recognizes a deliberate shake: {@code requiredPeaks} acceleration peaks within
+ * {@code windowMs}, each pointing roughly opposite to the one before. Gravity is tracked with a
+ * low-pass filter and taken out first, so only the hand's own motion counts. After a peak the
+ * motion has to drop below {@code releaseThreshold} before another one is counted (hysteresis),
+ * which keeps one long jolt from counting twice.
+ * <p>
+ * A dropped phone gives one impact spike and a bus gives scattered one-way jolts; neither gets
+ * through. Runs per sample, so there is no sqrt and no allocation.
+ */
+public class ShakeRecognizer {
+
+    public static final float DEFAULT_PEAK_THRESHOLD = 12f;
+    public static final float DEFAULT_RELEASE_THRESHOLD = 5f;
+    public static final int DEFAULT_REQUIRED_PEAKS = 4;
+    public static final long DEFAULT_WINDOW_MS = 1500;
+    public static final long DEFAULT_COOLDOWN_MS = 2000;
+    // Time constant of the gravity estimate; slow next to a shake, fast next to turning the phone
+    static final float GRAVITY_TAU_MS = 500f;
+
+    private final float peakSquared;
+    private final float releaseSquared;
+    private final int requiredPeaks;
+    private final long windowMs;
+    private final long cooldownMs;
+
+    private float gravityX;
+    private float gravityY;
+    private float gravityZ;
+    private long lastSampleMs;
+    private boolean hasGravity;
+    private boolean released;
+    private float peakX;
+    private float peakY;
+    private float peakZ;
+    private float peakSquaredSoFar;
+    private float lastPeakX;
+    private float lastPeakY;
+    private float lastPeakZ;
+    private int peaks;
+    private long firstPeakMs;
+    private long lastShakeMs;
+
+    public ShakeRecognizer() {
+        this(DEFAULT_PEAK_THRESHOLD, DEFAULT_RELEASE_THRESHOLD, DEFAULT_REQUIRED_PEAKS, DEFAULT_WINDOW_MS, DEFAULT_COOLDOWN_MS);
+    }
+
+    /**
+     * @param peakThreshold    m/s^2 of motion, gravity removed, that counts as a peak
+     * @param releaseThreshold m/s^2 the motion must fall below before the next peak
+     */
+    public ShakeRecognizer(float peakThreshold, float releaseThreshold, int requiredPeaks, long windowMs, long cooldownMs) {
+        this.peakSquared = peakThreshold * peakThreshold;
+        this.releaseSquared = releaseThreshold * releaseThreshold;
+        this.requiredPeaks = requiredPeaks;
+        this.windowMs = windowMs;
+        this.cooldownMs = cooldownMs;
+        reset();
+    }
+
+    /**
+     * @param timeMs the sample's own timestamp; samples must arrive in order
+     * @return true once per recognized shake
+     */
+    public boolean onSample(float x, float y, float z, long timeMs) {
+        if (!hasGravity) {
+            gravityX = x;
+            gravityY = y;
+            gravityZ = z;
+            lastSampleMs = timeMs;
+            hasGravity = true;
+            return false;
+        }
+
+        long dt = Math.max(0, timeMs - lastSampleMs);
+        lastSampleMs = timeMs;
+        float alpha = dt / (GRAVITY_TAU_MS + dt);
+        gravityX += alpha * (x - gravityX);
+        gravityY += alpha * (y - gravityY);
+        gravityZ += alpha * (z - gravityZ);
+
+        float lx = x - gravityX;
+        float ly = y - gravityY;
+        float lz = z - gravityZ;
+        float magnitudeSquared = lx * lx + ly * ly + lz * lz;
+
+        if (peaks > 0 && timeMs - firstPeakMs > windowMs) {
+            peaks = 0;
+        }
+
+        if (released) {
+            if (magnitudeSquared > peakSquared) {
+                // A peak starts; follow it to its top before judging its direction
+                released = false;
+                peakX = lx;
+                peakY = ly;
+                peakZ = lz;
+                peakSquaredSoFar = magnitudeSquared;
+            }
+            return false;
+        }
+
+        if (peakSquaredSoFar > 0 && magnitudeSquared > peakSquared && lx * peakX + ly * peakY + lz * peakZ < 0) {
+            // Swung straight through to the other side between two samples
+            boolean shake = onPeak(timeMs);
+            peakX = lx;
+            peakY = ly;
+            peakZ = lz;
+            peakSquaredSoFar = magnitudeSquared;
+            return shake;
+        }
+        if (peakSquaredSoFar > 0 && magnitudeSquared > peakSquaredSoFar) {
+            peakX = lx;
+            peakY = ly;
+            peakZ = lz;
+            peakSquaredSoFar = magnitudeSquared;
+        }
+        if (magnitudeSquared >= releaseSquared) {
+            return false;
+        }
+
+        released = true;
+        if (peakSquaredSoFar == 0) {
+            // Still settling after the first sample
+            return false;
+        }
+        peakSquaredSoFar = 0;
+        return onPeak(timeMs);
+    }
+
+    private boolean onPeak(long timeMs) {
+        boolean opposite = lastPeakX * peakX + lastPeakY * peakY + lastPeakZ * peakZ < 0;
+        if (peaks == 0 || !opposite) {
+            // Start a new run from this peak
+            peaks = 1;
+            firstPeakMs = timeMs;
+        } else {
+            peaks++;
+        }
+        lastPeakX = peakX;
+        lastPeakY = peakY;
+        lastPeakZ = peakZ;
+
+        if (peaks < requiredPeaks || timeMs - lastShakeMs <= cooldownMs) {
+            return false;
+        }
+        peaks = 0;
+        lastShakeMs = timeMs;
+        return true;
+    }
+
+    public void reset() {
+        hasGravity = false;
+        released = false;
+        peakSquaredSoFar = 0;
+        peaks = 0;
+        lastPeakX = 0;
+        lastPeakY = 0;
+        lastPeakZ = 0;
+        lastShakeMs = Long.MIN_VALUE / 2;
+    }
+}
@@ -0,0 +1,70 @@
+package com.android.sheguard.core;
+
+import java.util.ArrayDeque;
+
+/**
+ * Paces outgoing SMS under the platform's per-app limit (by default Android prompts the user
+ * after 30 messages in 30 minutes, counting every part of a multipart message) and keeps a
+ * minimum gap between sends so the radio is not flooded.
+ */
+public class SmsRateLimiter {
+
+    public static final int DEFAULT_MAX_PARTS = 30;
+    public static final long DEFAULT_WINDOW_MS = 30 * 60 * 1000L;
+    public static final long DEFAULT_MIN_SPACING_MS = 500;
+
+    private final int maxParts;
+    private final long windowMs;
+    private final long minSpacingMs;
+    private final ArrayDeque<Long> sentAt = new ArrayDeque<>();
+    private long lastSendMs = Long.MIN_VALUE;
+
+    public SmsRateLimiter() {
+        this(DEFAULT_MAX_PARTS, DEFAULT_WINDOW_MS, DEFAULT_MIN_SPACING_MS);
+    }
+
+    public SmsRateLimiter(int maxParts, long windowMs, long minSpacingMs) {
+        this.maxParts = maxParts;
+        this.windowMs = windowMs;
+        this.minSpacingMs = minSpacingMs;
+    }
+
+    /**
+     * @return the earliest time a message of {@code parts} parts may go out; {@code nowMs} if
+     * it may go right away
+     */
+    public synchronized long nextAllowedAt(long nowMs, int parts) {
+        evict(nowMs);
+        long at = nowMs;
+        if (lastSendMs != Long.MIN_VALUE) {
+            at = Math.max(at, lastSendMs + minSpacingMs);
+        }
+
+        int overflow = sentAt.size() + Math.min(parts, maxParts) - maxParts;
+        if (overflow > 0) {
+            // Wait until enough of the oldest parts have left the window
+            int skipped = 0;
+            for (long time : sentAt) {
+                if (++skipped == overflow) {
+                    at = Math.max(at, time + windowMs);
+                    break;
+                }
+            }
+        }
+        return at;
+    }
+
+    public synchronized void record(long nowMs, int parts) {
+        evict(nowMs);
+        for (int i = 0; i < parts; i++) {
+            sentAt.addLast(nowMs);
+        }
+        lastSendMs = nowMs;
+    }
+
+    private void evict(long nowMs) {
+        while (!sentAt.isEmpty() && nowMs - sentAt.peekFirst() >= windowMs) {
+            sentAt.removeFirst();
+        }
+    }
+}
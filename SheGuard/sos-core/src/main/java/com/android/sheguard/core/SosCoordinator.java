@@ -0,0 +1,474 @@
+package com.android.sheguard.core;
+
+import com.android.sheguard.core.port.AlertGateway;
+import com.android.sheguard.core.port.Clock;
+import com.android.sheguard.core.port.ContactSource;
+import com.android.sheguard.core.port.DeviceActions;
+import com.android.sheguard.core.port.LocationSource;
+import com.android.sheguard.core.port.SosSettings;
+import com.android.sheguard.model.ContactModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs one SOS session at a time as a small dependency graph: call and siren start right away,
+ * location runs alongside them, and SMS and push wait only on location. A trigger that arrives
+ * while a session is still dispatching is coalesced into it.
+ * <p>
+ * With a {@link ProgressivePolicy} set, the first alert waits only for the policy's deadline and
+ * goes out with whatever fix is already known; refined fixes then follow as update messages.
+ */
+public class SosCoordinator {
+
+    public enum Stage {
+        CALL, SIREN, LOCATION, SMS, PUSH
+    }
+
+    public interface Listener {
+
+        void onTriggerCoalesced(SosTrigger trigger, SosTrigger activeTrigger);
+
+        void onStageDone(SosTrigger trigger, Stage stage, long elapsedMs);
+
+        void onSessionDone(SosTrigger trigger, long elapsedMs, Throwable error);
+
+        void onLocationUpdateSent(SosTrigger trigger, int update, GeoFix fix, long elapsedMs);
+
+        void onSmsFailed(SosTrigger trigger, int failed, int total);
+    }
+
+    public static final long DEFAULT_LOCATION_TIMEOUT_MS = 15000;
+
+    private final ScheduledExecutorService executor;
+    private final Clock clock;
+    private final SosSettings settings;
+    private final ContactSource contactSource;
+    private final LocationSource locationSource;
+    private final AlertGateway alerts;
+    private final DeviceActions device;
+    private final SosMessageFormatter formatter;
+    private final AtomicReference<Session> current = new AtomicReference<>();
+    private volatile Listener listener;
+    private volatile long locationTimeoutMs = DEFAULT_LOCATION_TIMEOUT_MS;
+    private volatile ProgressivePolicy progressivePolicy;
+
+    public SosCoordinator(ScheduledExecutorService executor, Clock clock, SosSettings settings,
+                          ContactSource contactSource, LocationSource locationSource,
+                          AlertGateway alerts, DeviceActions device, SosMessageFormatter formatter) {
+        this.executor = executor;
+        this.clock = clock;
+        this.settings = settings;
+        this.contactSource = contactSource;
+        this.locationSource = locationSource;
+        this.alerts = alerts;
+        this.device = device;
+        this.formatter = formatter;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setLocationTimeoutMs(long locationTimeoutMs) {
+        this.locationTimeoutMs = locationTimeoutMs;
+    }
+
+    /**
+     * @param progressivePolicy the policy for progressive dispatch, or {@code null} to hold
+     *                          alerts until a current fix arrives
+     */
+    public void setProgressivePolicy(ProgressivePolicy progressivePolicy) {
+        this.progressivePolicy = progressivePolicy;
+    }
+
+    /**
+     * @return the session started by this trigger, or {@code null} if it was coalesced into
+     * one that is still dispatching
+     */
+    public Session trigger(SosTrigger trigger) {
+        Session active = current.get();
+        if (active != null && !active.isFinished()) {
+            Listener l = listener;
+            if (l != null) {
+                l.onTriggerCoalesced(trigger, active.trigger);
+            }
+            return null;
+        }
+
+        Session session = new Session(trigger, clock.elapsedMs());
+        if (!current.compareAndSet(active, session)) {
+            Session winner = current.get();
+            Listener l = listener;
+            if (l != null && winner != null) {
+                l.onTriggerCoalesced(trigger, winner.trigger);
+            }
+            return null;
+        }
+
+        if (active != null) {
+            active.stopUpdates();
+        }
+        session.start();
+        return session;
+    }
+
+    public Session current() {
+        return current.get();
+    }
+
+    public boolean isActive() {
+        Session session = current.get();
+        return session != null && !session.isFinished();
+    }
+
+    public void stop() {
+        Session session = current.getAndSet(null);
+        if (session != null) {
+            session.cancel();
+        }
+    }
+
+    public class Session {
+
+        private final String id = UUID.randomUUID().toString();
+        private final SosTrigger trigger;
+        private final long startedAt;
+        private final AtomicInteger claimedStages = new AtomicInteger();
+        private final AtomicLongArray stageLatency = new AtomicLongArray(Stage.values().length);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final ProgressivePolicy policy = progressivePolicy;
+        private volatile boolean cancelled = false;
+        // Guarded by this session, so a stream can't start after stopUpdates() has run
+        private UpdateStream updates;
+        private boolean updatesStopped = false;
+
+        Session(SosTrigger trigger, long startedAt) {
+            this.trigger = trigger;
+            this.startedAt = startedAt;
+            for (int i = 0; i < stageLatency.length(); i++) {
+                stageLatency.set(i, -1);
+            }
+        }
+
+        /**
+         * Unique per session, for idempotency keys that must survive a process restart.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public SosTrigger getTrigger() {
+            return trigger;
+        }
+
+        public CompletableFuture<Void> done() {
+            return done;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFinished() {
+            return cancelled || done.isDone();
+        }
+
+        /**
+         * @return milliseconds from trigger to stage completion, or -1 if the stage has not
+         * finished (or was skipped)
+         */
+        public long getStageLatency(Stage stage) {
+            return stageLatency.get(stage.ordinal());
+        }
+
+        void cancel() {
+            cancelled = true;
+            done.complete(null);
+            stopUpdates();
+        }
+
+        void stopUpdates() {
+            UpdateStream stream;
+            synchronized (this) {
+                updatesStopped = true;
+                stream = updates;
+            }
+            if (stream != null) {
+                stream.stop();
+            }
+        }
+
+        /**
+         * Claims a stage for this session. Each stage runs at most once even if the graph
+         * is re-entered from several threads.
+         */
+        boolean claim(Stage stage) {
+            int bit = 1 << stage.ordinal();
+            while (true) {
+                int claimed = claimedStages.get();
+                if ((claimed & bit) != 0) {
+                    return false;
+                }
+                if (claimedStages.compareAndSet(claimed, claimed | bit)) {
+                    return true;
+                }
+            }
+        }
+
+        void completed(Stage stage) {
+            long elapsed = clock.elapsedMs() - startedAt;
+            stageLatency.set(stage.ordinal(), elapsed);
+            Listener l = listener;
+            if (l != null) {
+                l.onStageDone(trigger, stage, elapsed);
+            }
+        }
+
+        private CompletableFuture<Void> runStage(Stage stage, boolean enabled, Runnable body) {
+            if (!enabled || cancelled || !claim(stage)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(() -> {
+                if (!cancelled) {
+                    body.run();
+                }
+                completed(stage);
+            }, executor);
+        }
+
+        void start() {
+            CompletableFuture<Void> call = runStage(Stage.CALL, settings.isCallEmergencyEnabled(), device::callEmergency);
+            CompletableFuture<Void> siren = runStage(Stage.SIREN, settings.isSirenEnabled(), device::playSiren);
+
+            CompletableFuture<List<ContactModel>> contacts = CompletableFuture.supplyAsync(contactSource::loadContacts, executor);
+            CompletableFuture<GeoFix> location = policy != null ? requestFirstFix() : requestLocation();
+            CompletableFuture<Dispatch> dispatched = location.thenCombine(contacts,
+                    (fix, list) -> new Dispatch(fix, list, formatter.push(fix, clock.elapsedMs())));
+
+            CompletableFuture<Map<String, PushResult>> push = dispatched
+                    .thenCompose(dispatch -> {
+                        if (!settings.isPushEnabled() || cancelled || !claim(Stage.PUSH)) {
+                            return CompletableFuture.completedFuture(Collections.<String, PushResult>emptyMap());
+                        }
+                        return alerts.sendPush(id, dispatch.contacts, settings.getSenderName(), dispatch.pushMessage)
+                                .thenApply(results -> {
+                                    completed(Stage.PUSH);
+                                    return results;
+                                });
+                    });
+
+            CompletableFuture<Void> sms = dispatched.thenCompose(dispatch -> sendSmsStage(dispatch, push));
+
+            if (policy != null) {
+                dispatched.thenAccept(dispatch -> {
+                    UpdateStream stream = new UpdateStream(dispatch);
+                    synchronized (this) {
+                        if (cancelled || updatesStopped) {
+                            return;
+                        }
+                        updates = stream;
+                    }
+                    stream.start();
+                });
+            }
+
+            CompletableFuture.allOf(call, siren, sms, push).whenComplete((ignored, error) -> {
+                done.complete(null);
+                Listener l = listener;
+                if (l != null) {
+                    l.onSessionDone(trigger, clock.elapsedMs() - startedAt, error);
+                }
+            });
+        }
+
+        /**
+         * Texts every contact. Contacts whose SMS fails are re-routed to push once the push stage
+         * is done, unless their own push from it was accepted.
+         */
+        private CompletableFuture<Void> sendSmsStage(Dispatch dispatch, CompletableFuture<Map<String, PushResult>> push) {
+            if (!settings.isSmsEnabled() || cancelled || !claim(Stage.SMS)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            long now = clock.elapsedMs();
+            List<ContactModel> failed = new ArrayList<>();
+            List<CompletableFuture<Void>> sends = new ArrayList<>();
+            for (ContactModel contact : dispatch.contacts) {
+                if (cancelled) {
+                    break;
+                }
+                sends.add(alerts.sendSms(id, contact, formatter.sms(contact.getName(), dispatch.fix, now))
+                        .handle((sent, error) -> {
+                            if (!Boolean.TRUE.equals(sent)) {
+                                synchronized (failed) {
+                                    failed.add(contact);
+                                }
+                            }
+                            return null;
+                        }));
+            }
+
+            return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).thenCompose(ignored -> {
+                completed(Stage.SMS);
+                Listener l = listener;
+                if (l != null && !failed.isEmpty()) {
+                    l.onSmsFailed(trigger, failed.size(), dispatch.contacts.size());
+                }
+                if (failed.isEmpty() || cancelled) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return push.handle((results, error) -> results != null ? results : Collections.<String, PushResult>emptyMap())
+                        .thenCompose(results -> {
+                            List<ContactModel> unreached = new ArrayList<>();
+                            for (ContactModel contact : failed) {
+                                if (results.get(contact.getPhone()) != PushResult.ACCEPTED) {
+                                    unreached.add(contact);
+                                }
+                            }
+                            if (unreached.isEmpty() || cancelled) {
+                                return CompletableFuture.completedFuture(null);
+                            }
+                            return alerts.sendPush(id, unreached, settings.getSenderName(), dispatch.pushMessage)
+                                    .thenAccept(rerouted -> {
+                                    });
+                        });
+            });
+        }
+
+        private CompletableFuture<GeoFix> requestLocation() {
+            CompletableFuture<GeoFix> result = new CompletableFuture<>();
+            if (!claim(Stage.LOCATION)) {
+                result.complete(null);
+                return result;
+            }
+            result.thenRun(() -> completed(Stage.LOCATION));
+
+            ScheduledFuture<?> timeout = executor.schedule(() -> result.complete(null), locationTimeoutMs, TimeUnit.MILLISECONDS);
+            result.whenComplete((fix, error) -> timeout.cancel(false));
+            locationSource.currentFix().whenComplete((fix, error) -> result.complete(error == null ? fix : null));
+            return result;
+        }
+
+        /**
+         * Progressive mode: whatever fix is already known, as long as it shows up before the
+         * policy's deadline.
+         */
+        private CompletableFuture<GeoFix> requestFirstFix() {
+            CompletableFuture<GeoFix> result = new CompletableFuture<>();
+            if (!claim(Stage.LOCATION)) {
+                result.complete(null);
+                return result;
+            }
+            result.thenRun(() -> completed(Stage.LOCATION));
+
+            ScheduledFuture<?> timeout = executor.schedule(() -> result.complete(null), policy.getFirstAlertDeadlineMs(), TimeUnit.MILLISECONDS);
+            result.whenComplete((fix, error) -> timeout.cancel(false));
+            locationSource.bestAvailableFix().whenComplete((fix, error) -> result.complete(error == null ? fix : null));
+            return result;
+        }
+
+        /**
+         * Follow-up location messages after the first alert, sent as the policy allows.
+         */
+        private class UpdateStream {
+
+            private final List<ContactModel> contacts;
+            private GeoFix lastSent;
+            private long lastSentAt;
+            private int updatesSent = 0;
+            private boolean stopped = false;
+            private Runnable unsubscribe;
+            private ScheduledFuture<?> expiry;
+
+            UpdateStream(Dispatch dispatch) {
+                this.contacts = dispatch.contacts;
+                this.lastSent = dispatch.fix;
+                this.lastSentAt = clock.elapsedMs();
+            }
+
+            synchronized void start() {
+                if (stopped || policy.isComplete(lastSent, updatesSent)) {
+                    return;
+                }
+                expiry = executor.schedule(this::stop, policy.getMaxDurationMs(), TimeUnit.MILLISECONDS);
+                unsubscribe = locationSource.subscribeFixes(fix -> executor.execute(() -> onFix(fix)));
+            }
+
+            synchronized void stop() {
+                if (stopped) {
+                    return;
+                }
+                stopped = true;
+                if (unsubscribe != null) {
+                    unsubscribe.run();
+                }
+                if (expiry != null) {
+                    expiry.cancel(false);
+                }
+            }
+
+            private void onFix(GeoFix fix) {
+                int update;
+                synchronized (this) {
+                    long now = clock.elapsedMs();
+                    if (stopped || cancelled || !policy.shouldSend(fix, lastSent, lastSentAt, updatesSent, now)) {
+                        return;
+                    }
+                    lastSent = fix;
+                    lastSentAt = now;
+                    update = ++updatesSent;
+                }
+
+                long now = clock.elapsedMs();
+                String message = formatter.update(fix, now);
+                if (settings.isSmsEnabled() && policy.shouldText(update)) {
+                    for (ContactModel contact : contacts) {
+                        if (cancelled) {
+                            return;
+                        }
+                        alerts.sendSms(id, contact, message);
+                    }
+                }
+                if (settings.isPushEnabled()) {
+                    alerts.sendPush(id, contacts, settings.getSenderName(), message);
+                }
+
+                Listener l = listener;
+                if (l != null) {
+                    l.onLocationUpdateSent(trigger, update, fix, now - startedAt);
+                }
+
+                synchronized (this) {
+                    if (policy.isComplete(lastSent, updatesSent)) {
+                        stop();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Dispatch {
+
+        final GeoFix fix;
+        final List<ContactModel> contacts;
+        // Shared by the push stage and the SMS re-route, so both make the same message
+        final String pushMessage;
+
+        Dispatch(GeoFix fix, List<ContactModel> contacts, String pushMessage) {
+            this.fix = fix;
+            this.contacts = contacts;
+            this.pushMessage = pushMessage;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.android.sheguard.core;
+
+import java.util.TimeZone;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Builds SMS and push bodies from the string templates the app ships with. Templates use
+ * {@link String#format} placeholders: the SMS one takes the contact name and the location,
+ * the push and update ones take only the location.
+ * <p>
+ * SOS and update texts are fitted into a single SMS segment: the location is tried in ever
+ * shorter {@link CompactLocation} forms, then the contact name is shortened, until the body fits.
+ */
+public class SosMessageFormatter {
+
+    // Past these a fix is labelled with its accuracy and age
+    static final float COARSE_ABOVE_METERS = 100f;
+    static final long STALE_AFTER_MS = 60000;
+    private static final int SHORT_NAME_LENGTH = 12;
+
+    private final String smsTemplate;
+    private final String pushTemplate;
+    private String updateTemplate;
+    private TimeZone timeZone;
+    private LongSupplier wallClock;
+    private Function<GeoFix, String> addressLookup;
+
+    public SosMessageFormatter(String smsTemplate, String pushTemplate) {
+        this.smsTemplate = smsTemplate;
+        this.pushTemplate = pushTemplate;
+        this.updateTemplate = pushTemplate;
+    }
+
+    public void setUpdateTemplate(String updateTemplate) {
+        this.updateTemplate = updateTemplate;
+    }
+
+    /**
+     * Stamps SOS texts with the time of the fix in this zone, space permitting. Off when null.
+     *
+     * @param wallClock milliseconds since the epoch, to place the fix's age on the wall clock
+     */
+    public void setTimeZone(TimeZone timeZone, LongSupplier wallClock) {
+        this.timeZone = timeZone;
+        this.wallClock = wallClock;
+    }
+
+    /**
+     * Adds a street address under the link in push bodies. The lookup must answer at once,
+     * from a cache, and return {@code null} when it has nothing.
+     */
+    public void setAddressLookup(Function<GeoFix, String> addressLookup) {
+        this.addressLookup = addressLookup;
+    }
+
+    public static String mapsLink(GeoFix fix) {
+        if (fix == null) {
+            return "";
+        }
+        return "https://maps.google.com/maps?q=loc:" + fix.getLatitude() + "," + fix.getLongitude();
+    }
+
+    /**
+     * The maps link, followed by the accuracy and age of the fix when it is coarse or stale.
+     */
+    public static String location(GeoFix fix, long nowMs) {
+        if (fix == null) {
+            return "";
+        }
+
+        String link = mapsLink(fix);
+        boolean coarse = fix.getAccuracyMeters() > COARSE_ABOVE_METERS;
+        long ageMs = fix.ageMs(nowMs);
+        boolean stale = ageMs > STALE_AFTER_MS;
+        if (!coarse && !stale) {
+            return link;
+        }
+
+        StringBuilder label = new StringBuilder(link).append(" (");
+        if (coarse) {
+            label.append("\u00B1").append(Math.round(fix.getAccuracyMeters())).append(" m");
+        }
+        if (stale) {
+            if (coarse) {
+                label.append(", ");
+            }
+            long minutes = ageMs / 60000;
+            if (minutes < 60) {
+                label.append(minutes).append(" min old");
+            } else {
+                label.append(minutes / 60).append(" h old");
+            }
+        }
+        return label.append(')').toString();
+    }
+
+    public String sms(String contactName, GeoFix fix, long nowMs) {
+        String[] locations = compactLocations(fix, nowMs);
+        String[] names = {contactName, shortName(contactName), ""};
+        String message = null;
+        for (String name : names) {
+            for (String location : locations) {
+                message = String.format(smsTemplate, name, location);
+                if (Gsm7.segments(message) == 1) {
+                    return message;
+                }
+            }
+        }
+        // Nothing fits; send the shortest form as a multipart text
+        return message;
+    }
+
+    /**
+     * Location forms for an SMS, longest and most convenient first.
+     */
+    private String[] compactLocations(GeoFix fix, long nowMs) {
+        if (fix == null) {
+            return new String[]{""};
+        }
+
+        String label = CompactLocation.label(fix, nowMs);
+        String link = CompactLocation.mapsLink(fix) + label;
+        String geo = CompactLocation.geoUri(fix) + label;
+        String plusCode = CompactLocation.plusCode(fix);
+        if (timeZone == null || wallClock == null) {
+            return new String[]{link, geo, plusCode + label, plusCode};
+        }
+        String time = CompactLocation.time(fix, nowMs, wallClock.getAsLong(), timeZone);
+        return new String[]{link + time, link, geo, plusCode + label, plusCode};
+    }
+
+    private static String shortName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String first = name.trim().split("\\s+", 2)[0];
+        return first.length() > SHORT_NAME_LENGTH ? first.substring(0, SHORT_NAME_LENGTH) : first;
+    }
+
+    public String push(GeoFix fix, long nowMs) {
+        String location = location(fix, nowMs);
+        String address = fix != null && addressLookup != null ? addressLookup.apply(fix) : null;
+        if (address != null && !address.isEmpty()) {
+            location += "\n" + address;
+        }
+        return String.format(pushTemplate, location);
+    }
+
+    /**
+     * The follow-up text for a refined fix. It goes out as SMS as well as push, so it is fitted
+     * the same way as {@link #sms(String, GeoFix, long)}.
+     */
+    public String update(GeoFix fix, long nowMs) {
+        String message = null;
+        for (String location : compactLocations(fix, nowMs)) {
+            message = String.format(updateTemplate, location);
+            if (Gsm7.segments(message) == 1) {
+                return message;
+            }
+        }
+        return message;
+    }
+}
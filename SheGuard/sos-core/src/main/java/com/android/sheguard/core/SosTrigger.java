@@ -0,0 +1,5 @@
+package com.android.sheguard.core;
+
+public enum SosTrigger {
+    BUTTON, SHAKE, FALL, BLUETOOTH
+}
@@ -0,0 +1,120 @@
+package com.android.sheguard.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contact phone -> uid -> FCM token, so the SOS path can push without looking anything up.
+ * Contacts known to have no account are cached too (with a null token), on a shorter TTL.
+ * Times are wall-clock milliseconds because entries outlive the process.
+ */
+public class TokenCache {
+
+    public static final long DEFAULT_TTL_MS = 12 * 60 * 60 * 1000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 60 * 60 * 1000L;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final long negativeTtlMs;
+
+    public TokenCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_NEGATIVE_TTL_MS);
+    }
+
+    public TokenCache(long ttlMs, long negativeTtlMs) {
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+    }
+
+    public Entry get(String phone) {
+        return entries.get(phone);
+    }
+
+    public void put(String phone, String uid, String token, long nowMs) {
+        entries.put(phone, new Entry(phone, uid, token, nowMs));
+    }
+
+    public boolean isStale(Entry entry, long nowMs) {
+        long ttl = entry.token != null ? ttlMs : negativeTtlMs;
+        return nowMs - entry.fetchedAtMs > ttl;
+    }
+
+    public List<String> stalePhones(Collection<String> phones, long nowMs) {
+        List<String> stale = new ArrayList<>();
+        for (String phone : phones) {
+            Entry entry = entries.get(phone);
+            if (entry == null || isStale(entry, nowMs)) {
+                stale.add(phone);
+            }
+        }
+        return stale;
+    }
+
+    public void evict(String phone) {
+        entries.remove(phone);
+    }
+
+    /**
+     * Drops every entry holding this token, e.g. after FCM answered UNREGISTERED for it.
+     *
+     * @return the phones that were invalidated
+     */
+    public List<String> invalidateToken(String token) {
+        List<String> invalidated = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (token.equals(entry.token) && entries.remove(entry.phone, entry)) {
+                invalidated.add(entry.phone);
+            }
+        }
+        return invalidated;
+    }
+
+    public List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public void restore(Collection<Entry> saved) {
+        entries.clear();
+        if (saved == null) {
+            return;
+        }
+        for (Entry entry : saved) {
+            if (entry != null && entry.phone != null) {
+                entries.put(entry.phone, entry);
+            }
+        }
+    }
+
+    public static class Entry {
+
+        private final String phone;
+        private final String uid;
+        private final String token;
+        private final long fetchedAtMs;
+
+        public Entry(String phone, String uid, String token, long fetchedAtMs) {
+            this.phone = phone;
+            this.uid = uid;
+            this.token = token;
+            this.fetchedAtMs = fetchedAtMs;
+        }
+
+        public String getPhone() {
+            return phone;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public long getFetchedAtMs() {
+            return fetchedAtMs;
+        }
+    }
+}
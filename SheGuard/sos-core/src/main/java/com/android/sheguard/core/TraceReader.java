@@ -0,0 +1,119 @@
+package com.android.sheguard.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns a ring written by {@link TraceWriter} back into the stream of samples it recorded,
+ * oldest first, so a trace from the field can be replayed against the recognizers. Empty and
+ * damaged blocks are skipped; each block decodes on its own, so one bad block costs only its
+ * own samples.
+ */
+public final class TraceReader {
+
+    public interface Sink {
+
+        void onSample(long timeNanos, float x, float y, float z);
+    }
+
+    private TraceReader() {
+    }
+
+    /**
+     * @return the number of samples delivered
+     */
+    public static int read(File file, Sink sink) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in, sink);
+        }
+    }
+
+    public static int read(InputStream in, Sink sink) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[TraceWriter.BLOCK_SIZE];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return read(bytes.toByteArray(), sink);
+    }
+
+    public static int read(byte[] ring, Sink sink) {
+        List<long[]> blocks = new ArrayList<>();
+        ByteBuffer data = ByteBuffer.wrap(ring);
+        for (int offset = 0; offset + TraceWriter.HEADER_SIZE <= ring.length; offset += TraceWriter.BLOCK_SIZE) {
+            if (data.getInt(offset) == TraceWriter.MAGIC && data.get(offset + 4) == TraceWriter.VERSION) {
+                blocks.add(new long[]{data.getInt(offset + 8), offset});
+            }
+        }
+        Collections.sort(blocks, (a, b) -> Long.compare(a[0], b[0]));
+
+        int samples = 0;
+        for (long[] block : blocks) {
+            samples += readBlock(ring, (int) block[1], sink);
+        }
+        return samples;
+    }
+
+    private static int readBlock(byte[] ring, int offset, Sink sink) {
+        ByteBuffer header = ByteBuffer.wrap(ring, offset, TraceWriter.HEADER_SIZE);
+        int count = header.getShort(offset + 6) & 0xFFFF;
+        int length = header.getShort(offset + 12) & 0xFFFF;
+        int start = offset + TraceWriter.HEADER_SIZE;
+        if (count == 0 || length > TraceWriter.BLOCK_SIZE - TraceWriter.HEADER_SIZE || start + length > ring.length) {
+            return 0;
+        }
+
+        ByteBuffer payload = ByteBuffer.wrap(ring, start, length);
+        int delivered = 0;
+        try {
+            long micros = payload.getLong();
+            int x = 0;
+            int y = 0;
+            int z = 0;
+            for (int i = 0; i < count; i++) {
+                micros += unzigzag(getVarLong(payload));
+                x += unzigzag(getVarInt(payload));
+                y += unzigzag(getVarInt(payload));
+                z += unzigzag(getVarInt(payload));
+                sink.onSample(micros * 1000, x / TraceWriter.SCALE, y / TraceWriter.SCALE, z / TraceWriter.SCALE);
+                delivered++;
+            }
+        } catch (BufferUnderflowException e) {
+            // Truncated block; keep what decoded
+        }
+        return delivered;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        return (int) getVarLong(buffer);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,182 @@
+package com.android.sheguard.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Records accelerometer samples into a ring of fixed-size blocks in one file, so the file never
+ * grows past {@code blockCount * BLOCK_SIZE} and the oldest block is the one overwritten. Each
+ * block stands alone: a header, the first sample's time, then per sample the time step in
+ * microseconds and each axis' change in 1/100 m/s^2, all as zigzag varints. A sample at 50 Hz
+ * usually takes 6-9 bytes instead of 20. {@link TraceReader} puts the blocks back in order.
+ * <p>
+ * Block header, big-endian: magic "SGTR", version, reserved byte, sample count (u16), sequence
+ * number (i32), payload length (u16), two reserved bytes.
+ */
+public class TraceWriter implements Closeable {
+
+    public static final int BLOCK_SIZE = 4096;
+    static final int MAGIC = 0x53475452;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final float SCALE = 100f;
+    // A long varint plus three int varints
+    private static final int MAX_SAMPLE_SIZE = 10 + 3 * 5;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int blockCount;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private int sequence;
+    private int count;
+    private long previousMicros;
+    private int previousX;
+    private int previousY;
+    private int previousZ;
+    private boolean dirty;
+
+    /**
+     * Opens or creates the ring, continuing after the newest block already in it.
+     */
+    public TraceWriter(File path, int blockCount) throws IOException {
+        this.blockCount = blockCount;
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        if (file.length() > (long) blockCount * BLOCK_SIZE) {
+            file.setLength((long) blockCount * BLOCK_SIZE);
+        }
+        sequence = newestSequence() + 1;
+        startBlock();
+    }
+
+    public void record(long timeNanos, float x, float y, float z) throws IOException {
+        if (block.remaining() < MAX_SAMPLE_SIZE) {
+            writeBlock();
+            sequence++;
+            startBlock();
+        }
+
+        long micros = timeNanos / 1000;
+        int qx = Math.round(x * SCALE);
+        int qy = Math.round(y * SCALE);
+        int qz = Math.round(z * SCALE);
+        if (count == 0) {
+            block.putLong(micros);
+            previousMicros = micros;
+        }
+        putVarLong(block, zigzag(micros - previousMicros));
+        putVarInt(block, zigzag(qx - previousX));
+        putVarInt(block, zigzag(qy - previousY));
+        putVarInt(block, zigzag(qz - previousZ));
+        previousMicros = micros;
+        previousX = qx;
+        previousY = qy;
+        previousZ = qz;
+        count++;
+        dirty = true;
+    }
+
+    /**
+     * Writes the block being filled to disk; it stays open and is rewritten as it fills up.
+     */
+    public void flush() throws IOException {
+        if (dirty) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Flushes, then copies the whole ring as it is on disk.
+     */
+    public void copyTo(OutputStream out) throws IOException {
+        flush();
+        byte[] buffer = new byte[BLOCK_SIZE];
+        file.seek(0);
+        int read;
+        while ((read = file.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void startBlock() {
+        block.clear();
+        block.position(HEADER_SIZE);
+        count = 0;
+        previousX = 0;
+        previousY = 0;
+        previousZ = 0;
+        dirty = false;
+    }
+
+    private void writeBlock() throws IOException {
+        int length = block.position();
+        block.putInt(0, MAGIC);
+        block.put(4, (byte) VERSION);
+        block.put(5, (byte) 0);
+        block.putShort(6, (short) count);
+        block.putInt(8, sequence);
+        block.putShort(12, (short) (length - HEADER_SIZE));
+        block.putShort(14, (short) 0);
+
+        // Zero the tail so the slot keeps no stale bytes from its previous lap
+        Arrays.fill(block.array(), length, BLOCK_SIZE, (byte) 0);
+        ByteBuffer out = ByteBuffer.wrap(block.array());
+        long position = (long) Math.floorMod(sequence, blockCount) * BLOCK_SIZE;
+        while (out.hasRemaining()) {
+            channel.write(out, position + out.position());
+        }
+        dirty = false;
+    }
+
+    private int newestSequence() throws IOException {
+        int newest = -1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        for (long position = 0; position + HEADER_SIZE <= file.length(); position += BLOCK_SIZE) {
+            file.seek(position);
+            file.readFully(header.array());
+            if (header.getInt(0) == MAGIC && header.get(4) == VERSION) {
+                newest = Math.max(newest, header.getInt(8));
+            }
+        }
+        return newest;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.android.sheguard.core;
+
+/**
+ * The binary frame format shared with the ESP32 sketch. Every frame is
+ * <pre>
+ *   0xA5 | version | type | sequence (u16) | device time ms (u32) | payload length | payload | CRC-8
+ * </pre>
+ * little-endian, with the CRC (polynomial 0x07, initial value 0) taken over everything between the
+ * magic byte and the CRC itself. The app opens each connection with a {@link #TYPE_HELLO}; firmware
+ * that understands it answers with its own HELLO and switches to binary frames, while older
+ * firmware ignores it and keeps sending text lines, which {@link FrameDecoder} still reads.
+ * <p>
+ * Every device frame other than HELLO carries a fresh sequence number and is sent again until the
+ * app {@link #TYPE_ACK acknowledges} it, so the app sees each press at least once and uses
+ * {@link SequenceFilter} to see it at most once.
+ */
+public final class WearableProtocol {
+
+    public static final byte MAGIC = (byte) 0xA5;
+    public static final byte VERSION = 1;
+
+    public static final int TYPE_PRESS = 0x01;
+    public static final int TYPE_TRIPLE_PRESS = 0x02;
+    // Device HELLO payload: a 4-byte nonce drawn at boot, so the app can tell a reboot, which
+    // restarts the sequence numbers, from a reconnect, which doesn't
+    public static final int TYPE_HELLO = 0x03;
+    // App to device; the sequence field holds the sequence number being acknowledged
+    public static final int TYPE_ACK = 0x04;
+
+    public static final int HEADER_SIZE = 10;
+    public static final int MAX_PAYLOAD = 16;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_PAYLOAD + 1;
+
+    private static final byte[] CRC_TABLE = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? (crc << 1) ^ 0x07 : crc << 1;
+            }
+            CRC_TABLE[i] = (byte) crc;
+        }
+    }
+
+    private WearableProtocol() {
+    }
+
+    public static byte crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC_TABLE[(crc ^ data[i]) & 0xFF] & 0xFF;
+        }
+        return (byte) crc;
+    }
+
+    /**
+     * Writes one frame into {@code out}, which must have room for {@link #MAX_FRAME_SIZE} bytes.
+     *
+     * @return the frame's length
+     */
+    public static int encode(byte[] out, int type, int sequence, long deviceTimeMs, byte[] payload, int payloadLength) {
+        if (payloadLength > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("payloadLength " + payloadLength);
+        }
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        out[2] = (byte) type;
+        out[3] = (byte) sequence;
+        out[4] = (byte) (sequence >>> 8);
+        out[5] = (byte) deviceTimeMs;
+        out[6] = (byte) (deviceTimeMs >>> 8);
+        out[7] = (byte) (deviceTimeMs >>> 16);
+        out[8] = (byte) (deviceTimeMs >>> 24);
+        out[9] = (byte) payloadLength;
+        if (payloadLength > 0) {
+            System.arraycopy(payload, 0, out, HEADER_SIZE, payloadLength);
+        }
+        int crcAt = HEADER_SIZE + payloadLength;
+        out[crcAt] = crc8(out, 1, crcAt - 1);
+        return crcAt + 1;
+    }
+}
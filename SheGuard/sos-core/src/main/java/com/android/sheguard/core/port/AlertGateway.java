@@ -0,0 +1,28 @@
+package com.android.sheguard.core.port;
+
+import com.android.sheguard.core.PushResult;
+import com.android.sheguard.model.ContactModel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AlertGateway {
+
+    /**
+     * Completes with whether the text left the device; a failure here is a candidate for
+     * re-routing to push.
+     *
+     * @param sessionId the {@link com.android.sheguard.core.SosCoordinator.Session#getId() session}
+     *                  the alert belongs to, for its idempotency key
+     */
+    CompletableFuture<Boolean> sendSms(String sessionId, ContactModel contact, String message);
+
+    /**
+     * Completes once every contact's push has been handed off, whether or not it could be sent.
+     *
+     * @return how the push ended for each contact's phone; contacts it did not attempt, such as
+     * ones already sent this message in the session, are left out
+     */
+    CompletableFuture<Map<String, PushResult>> sendPush(String sessionId, List<ContactModel> contacts, String title, String message);
+}
@@ -0,0 +1,11 @@
+package com.android.sheguard.core.port;
+
+public interface Clock {
+
+    Clock SYSTEM = () -> System.nanoTime() / 1_000_000L;
+
+    /**
+     * Monotonic milliseconds; only differences between two readings are meaningful.
+     */
+    long elapsedMs();
+}
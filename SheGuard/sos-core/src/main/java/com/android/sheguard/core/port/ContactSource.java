@@ -0,0 +1,10 @@
+package com.android.sheguard.core.port;
+
+import com.android.sheguard.model.ContactModel;
+
+import java.util.List;
+
+public interface ContactSource {
+
+    List<ContactModel> loadContacts();
+}
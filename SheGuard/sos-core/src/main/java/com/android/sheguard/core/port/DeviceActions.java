@@ -0,0 +1,8 @@
+package com.android.sheguard.core.port;
+
+public interface DeviceActions {
+
+    void callEmergency();
+
+    void playSiren();
+}
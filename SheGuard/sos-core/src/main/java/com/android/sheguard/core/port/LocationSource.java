@@ -0,0 +1,26 @@
+package com.android.sheguard.core.port;
+
+import com.android.sheguard.core.GeoFix;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public interface LocationSource {
+
+    /**
+     * Completes with the best fix that could be obtained, or with {@code null} when location
+     * is unavailable. Must not complete exceptionally for ordinary "no fix" outcomes.
+     */
+    CompletableFuture<GeoFix> currentFix();
+
+    /**
+     * Completes quickly with whatever fix is already known, however old or coarse, or with
+     * {@code null} if there is none.
+     */
+    CompletableFuture<GeoFix> bestAvailableFix();
+
+    /**
+     * Streams fresh fixes to the listener, on any thread, until the returned handle is run.
+     */
+    Runnable subscribeFixes(Consumer<GeoFix> listener);
+}
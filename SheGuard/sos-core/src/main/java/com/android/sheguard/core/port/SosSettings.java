@@ -0,0 +1,14 @@
+package com.android.sheguard.core.port;
+
+public interface SosSettings {
+
+    boolean isCallEmergencyEnabled();
+
+    boolean isSirenEnabled();
+
+    boolean isSmsEnabled();
+
+    boolean isPushEnabled();
+
+    String getSenderName();
+}
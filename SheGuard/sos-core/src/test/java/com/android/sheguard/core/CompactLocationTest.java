@@ -0,0 +1,52 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+public class CompactLocationTest {
+
+    private static final long NOW = 10_000_000L;
+
+    @Test
+    public void keepsTheDecimalsTheAccuracyJustifies() {
+        assertEquals(5, CompactLocation.decimalsFor(1f));
+        assertEquals(4, CompactLocation.decimalsFor(5f));
+        assertEquals(3, CompactLocation.decimalsFor(110f));
+        assertEquals(2, CompactLocation.decimalsFor(2000f));
+    }
+
+    @Test
+    public void roundsAndTrimsCoordinates() {
+        assertEquals("51.5007,-0.1246", CompactLocation.coordinates(new GeoFix(51.500729, -0.124625, 8f, NOW)));
+        assertEquals("51.5,-0.12", CompactLocation.coordinates(new GeoFix(51.5, -0.12, 3f, NOW)));
+        assertEquals("https://maps.google.com/?q=51.5,-0.12", CompactLocation.mapsLink(new GeoFix(51.4981, -0.1229, 900f, NOW)));
+        assertEquals("geo:51.501,-0.125", CompactLocation.geoUri(new GeoFix(51.500729, -0.124625, 40f, NOW)));
+    }
+
+    @Test
+    public void sizesThePlusCodeToTheFix() {
+        assertEquals("6FH32222+222", CompactLocation.plusCode(new GeoFix(1, 1, 2f, NOW)));
+        assertEquals("6FH32222+22", CompactLocation.plusCode(new GeoFix(1, 1, 10f, NOW)));
+        assertEquals("6FH32222+", CompactLocation.plusCode(new GeoFix(1, 1, 50f, NOW)));
+    }
+
+    @Test
+    public void labelsOnlyCoarseOrStaleFixes() {
+        assertEquals("", CompactLocation.label(new GeoFix(1, 1, 20f, NOW - 1000), NOW));
+        assertEquals(" (~250m)", CompactLocation.label(new GeoFix(1, 1, 250f, NOW), NOW));
+        assertEquals(" (3min old)", CompactLocation.label(new GeoFix(1, 1, 20f, NOW - 3 * 60000), NOW));
+        assertEquals(" (~250m, 2h old)", CompactLocation.label(new GeoFix(1, 1, 250f, NOW - 125 * 60000), NOW));
+    }
+
+    @Test
+    public void stampsTheTimeTheFixWasTaken() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        // 14:05 UTC on the wall clock, fix taken 10 minutes earlier
+        long wallNow = 14 * 3600_000L + 5 * 60_000L;
+        assertEquals(" @13:55", CompactLocation.time(new GeoFix(1, 1, 5f, NOW - 10 * 60000), NOW, wallNow, utc));
+        assertEquals(" @14:05", CompactLocation.time(new GeoFix(1, 1, 5f, NOW), NOW, wallNow, utc));
+    }
+}
@@ -0,0 +1,116 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Feeds {@link FallDetector} synthetic 50 Hz traces, the magnitude all on one axis.
+ */
+public class FallDetectorTest {
+
+    private static final float G = ShakeDetector.GRAVITY_EARTH;
+    private static final long PERIOD_MS = 20;
+
+    private FallDetector detector;
+    private long timeMs;
+    private int detections;
+
+    @Before
+    public void setUp() {
+        detector = new FallDetector();
+        timeMs = 0;
+        detections = 0;
+    }
+
+    @Test
+    public void freeFallImpactAndStillnessIsAFall() {
+        hold(G, 1000);
+        hold(0.4f * G, 300);
+        hold(4 * G, 60);
+        hold(G, 3000);
+
+        assertEquals(1, detections);
+    }
+
+    @Test
+    public void fallIsReportedOnceHoweverLongItStaysStill() {
+        hold(G, 1000);
+        hold(0.4f * G, 300);
+        hold(4 * G, 60);
+        hold(G, 20000);
+
+        assertEquals(1, detections);
+    }
+
+    @Test
+    public void phoneSetDownIsNotAFall() {
+        hold(G, 1000);
+        hold(0.8f * G, 200);
+        hold(1.4f * G, 100);
+        hold(G, 5000);
+
+        assertEquals(0, detections);
+    }
+
+    @Test
+    public void droppedPhoneIsNotAFall() {
+        // Near zero for most of the drop: the phone was flying on its own
+        hold(G, 1000);
+        hold(0.05f * G, 300);
+        hold(5 * G, 40);
+        hold(G, 5000);
+
+        assertEquals(0, detections);
+    }
+
+    @Test
+    public void walkingIsNotAFall() {
+        walk(20000);
+
+        assertEquals(0, detections);
+    }
+
+    @Test
+    public void impactWithoutStillnessIsNotAFall() {
+        hold(G, 1000);
+        hold(0.4f * G, 300);
+        hold(4 * G, 60);
+        walk(10000);
+
+        assertEquals(0, detections);
+    }
+
+    @Test
+    public void impactTooLongAfterFreeFallIsNotAFall() {
+        hold(G, 1000);
+        hold(0.4f * G, 300);
+        hold(G, 1500);
+        hold(4 * G, 60);
+        hold(G, 5000);
+
+        assertEquals(0, detections);
+    }
+
+    private void hold(float magnitude, long durationMs) {
+        for (long end = timeMs + durationMs; timeMs < end; timeMs += PERIOD_MS) {
+            sample(magnitude);
+        }
+    }
+
+    /**
+     * Steps at 2 Hz, swinging half a g either side of gravity.
+     */
+    private void walk(long durationMs) {
+        for (long end = timeMs + durationMs; timeMs < end; timeMs += PERIOD_MS) {
+            sample(G + 0.5f * G * (float) Math.sin(2 * Math.PI * 2 * timeMs / 1000.0));
+        }
+    }
+
+    private void sample(float magnitude) {
+        if (detector.onSample(0, 0, magnitude, timeMs)) {
+            detections++;
+        }
+    }
+}
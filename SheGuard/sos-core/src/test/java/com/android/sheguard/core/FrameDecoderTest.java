@@ -0,0 +1,329 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Targeted cases for the binary and text framing, then a bounded fuzz run: random streams of text
+ * lines, CR/LF variants, stray whitespace, binary frames, corrupted binary frames, garbage and
+ * oversized lines, cut at random points, each checked against a reading of the whole stream at
+ * once that uses Strings and looks ahead instead of buffering and replaying.
+ */
+public class FrameDecoderTest {
+
+    private static final int FUZZ_ROUNDS = 5000;
+    private static final long FUZZ_SEED = 0x5EED;
+    private static final String[] FRAMES = {"P", "TRIPLE_PRESS_ACTION", "HELLO", "", " P ", "PP", "xxTRIPLE_PRESS_ACTIONyy"};
+
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final List<String> frames = new ArrayList<>();
+    private final FrameDecoder.Sink sink = frame -> frames.add(describe(decoder, frame));
+
+    @Test
+    public void textLines() {
+        feed("P\r\nTRIPLE_PRESS_ACTION\nsomething else\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals(Arrays.asList("PRESS", "TRIPLE_PRESS", "UNKNOWN"), frames);
+    }
+
+    @Test
+    public void binaryFrame() {
+        feed(frame(WearableProtocol.TYPE_PRESS, 7, 123456L, new byte[]{1, 2}));
+
+        assertEquals(Arrays.asList("PRESS#7@123456[0102]"), frames);
+    }
+
+    @Test
+    public void crcMismatchIsRejected() {
+        byte[] corrupt = frame(WearableProtocol.TYPE_PRESS, 1, 1000L, new byte[0]);
+        corrupt[corrupt.length - 1] ^= 0x01;
+
+        feed(corrupt);
+
+        assertEquals(0, frames.size());
+        assertEquals(1, decoder.getRejected());
+    }
+
+    @Test
+    public void frameAfterACrcMismatchStillGetsThrough() {
+        byte[] corrupt = frame(WearableProtocol.TYPE_PRESS, 1, 1000L, new byte[0]);
+        corrupt[5] ^= 0x40;
+
+        feed(concat(corrupt, frame(WearableProtocol.TYPE_PRESS, 2, 2000L, new byte[0])));
+
+        assertEquals(Arrays.asList("PRESS#2@2000[]"), frames);
+    }
+
+    @Test
+    public void partialFrameWaitsForTheRest() {
+        byte[] whole = frame(WearableProtocol.TYPE_TRIPLE_PRESS, 9, 5000L, new byte[]{3});
+        for (int i = 0; i < whole.length - 1; i++) {
+            assertEquals(0, decoder.feed(whole, i, 1, sink));
+        }
+        assertEquals(1, decoder.feed(whole, whole.length - 1, 1, sink));
+
+        assertEquals(Arrays.asList("TRIPLE_PRESS#9@5000[03]"), frames);
+    }
+
+    @Test
+    public void truncatedFrameDoesNotHideTheNextOne() {
+        byte[] cut = Arrays.copyOf(frame(WearableProtocol.TYPE_PRESS, 1, 1000L, new byte[]{1, 2, 3, 4}), 8);
+
+        feed(concat(cut, frame(WearableProtocol.TYPE_PRESS, 2, 2000L, new byte[0])));
+
+        assertEquals(Arrays.asList("PRESS#2@2000[]"), frames);
+    }
+
+    @Test
+    public void resyncsAfterGarbage() {
+        byte[] garbage = {(byte) 0xA5, 0x00, (byte) 0xA5, WearableProtocol.VERSION, (byte) 0xFF, 0x13, 0x37, (byte) 0xA5};
+
+        feed(concat(garbage, frame(WearableProtocol.TYPE_PRESS, 3, 3000L, new byte[0]), "P\n".getBytes(StandardCharsets.ISO_8859_1)));
+
+        assertEquals(Arrays.asList("PRESS#3@3000[]", "PRESS"), frames);
+    }
+
+    @Test
+    public void sequenceWrapsAround() {
+        SequenceFilter filter = new SequenceFilter();
+        List<Integer> accepted = new ArrayList<>();
+        FrameDecoder.Sink filtered = frame -> {
+            if (filter.accept(decoder.getSequence())) {
+                accepted.add(decoder.getSequence());
+            }
+        };
+
+        for (int sequence : new int[]{65534, 65535, 0, 65535, 1, 0}) {
+            byte[] bytes = frame(WearableProtocol.TYPE_PRESS, sequence, 1000L, new byte[0]);
+            decoder.feed(bytes, 0, bytes.length, filtered);
+        }
+
+        // The retransmitted 65535 and 0 are caught even across the wrap
+        assertEquals(Arrays.asList(65534, 65535, 0, 1), accepted);
+    }
+
+    @Test
+    public void randomStreamsMatchTheReference() {
+        Random random = new Random(FUZZ_SEED);
+        for (int round = 0; round < FUZZ_ROUNDS; round++) {
+            byte[] stream = randomStream(random);
+            List<String> expected = reference(stream, FrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+            FrameDecoder fresh = new FrameDecoder();
+            List<String> actual = new ArrayList<>();
+            FrameDecoder.Sink sink = frame -> actual.add(describe(fresh, frame));
+            for (int offset = 0; offset < stream.length; ) {
+                int n = Math.min(stream.length - offset, 1 + random.nextInt(300));
+                fresh.feed(stream, offset, n, sink);
+                offset += n;
+            }
+            // Anything extra would be a false accept, anything missing a lost frame
+            if (!expected.equals(actual)) {
+                assertEquals("round " + round + ", input " + hex(stream), expected, actual);
+            }
+        }
+    }
+
+    private void feed(byte[] bytes) {
+        decoder.feed(bytes, 0, bytes.length, sink);
+    }
+
+    private static byte[] frame(int type, int sequence, long deviceTimeMs, byte[] payload) {
+        byte[] out = new byte[WearableProtocol.MAX_FRAME_SIZE];
+        int length = WearableProtocol.encode(out, type, sequence, deviceTimeMs, payload, payload.length);
+        return Arrays.copyOf(out, length);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomStream(Random random) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        StringBuilder text = new StringBuilder();
+        int lines = random.nextInt(40);
+        for (int i = 0; i < lines; i++) {
+            if (random.nextInt(3) == 0) {
+                stream.write(text.toString().getBytes(StandardCharsets.ISO_8859_1), 0, text.length());
+                text.setLength(0);
+                byte[] frame = randomFrame(random);
+                stream.write(frame, 0, frame.length);
+                continue;
+            }
+            switch (random.nextInt(6)) {
+                case 0:
+                    // Binary garbage, possibly with newlines of its own
+                    for (int j = random.nextInt(20); j > 0; j--) {
+                        text.append((char) (random.nextInt(8) == 0 ? 0xA5 : random.nextInt(256)));
+                    }
+                    break;
+                case 1:
+                    // Oversized, or right at the limit
+                    int length = FrameDecoder.DEFAULT_MAX_FRAME_LENGTH - 2 + random.nextInt(200);
+                    for (int j = 0; j < length; j++) {
+                        text.append((char) ('A' + random.nextInt(26)));
+                    }
+                    break;
+                default:
+                    text.append(FRAMES[random.nextInt(FRAMES.length)]);
+                    break;
+            }
+            text.append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        if (random.nextBoolean()) {
+            // A partial frame left hanging at the end
+            text.append("TRIPLE_PR");
+        }
+        stream.write(text.toString().getBytes(StandardCharsets.ISO_8859_1), 0, text.length());
+        if (random.nextBoolean()) {
+            // A partial binary frame left hanging at the end
+            byte[] frame = randomFrame(random);
+            stream.write(frame, 0, random.nextInt(frame.length));
+        }
+        return stream.toByteArray();
+    }
+
+    private static byte[] randomFrame(Random random) {
+        byte[] payload = new byte[WearableProtocol.MAX_PAYLOAD];
+        random.nextBytes(payload);
+        byte[] frame = new byte[WearableProtocol.MAX_FRAME_SIZE];
+        int length = WearableProtocol.encode(frame, 1 + random.nextInt(5), random.nextInt(65536),
+                random.nextLong() & 0xFFFFFFFFL, payload, random.nextInt(WearableProtocol.MAX_PAYLOAD + 1));
+        if (random.nextInt(4) == 0) {
+            // Corrupt one byte, which may be the version, the length or the CRC
+            frame[1 + random.nextInt(length - 1)] ^= (byte) (1 + random.nextInt(255));
+        }
+        return Arrays.copyOf(frame, length);
+    }
+
+    private static String describe(FrameDecoder decoder, FrameDecoder.Frame frame) {
+        if (!decoder.isBinary()) {
+            return frame.toString();
+        }
+        StringBuilder out = new StringBuilder(frame + "#" + decoder.getSequence() + "@" + decoder.getDeviceTimeMs() + "[");
+        for (int i = 0; i < decoder.getPayloadLength(); i++) {
+            out.append(String.format(Locale.ROOT, "%02x", decoder.getPayloadByte(i)));
+        }
+        return out.append(']').toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : bytes) {
+            out.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+        }
+        return out.toString();
+    }
+
+    private static List<String> reference(byte[] stream, int maxFrameLength) {
+        List<String> frames = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        boolean overflowed = false;
+        int i = 0;
+        while (i < stream.length) {
+            if (stream[i] == WearableProtocol.MAGIC) {
+                line.setLength(0);
+                overflowed = false;
+                int size = binaryFrameAt(stream, i);
+                if (size == 0) {
+                    // Not complete yet, and nothing rules it out
+                    break;
+                }
+                if (size < 0) {
+                    i++;
+                    continue;
+                }
+                frames.add(describe(stream, i));
+                i += size;
+                continue;
+            }
+            char c = (char) (stream[i++] & 0xFF);
+            if (c != '\n') {
+                line.append(c);
+                overflowed |= line.length() > maxFrameLength;
+                continue;
+            }
+            String frame = line.toString().trim();
+            boolean skip = overflowed || frame.isEmpty();
+            line.setLength(0);
+            overflowed = false;
+            if (skip) {
+                continue;
+            }
+            if (frame.equals("P")) {
+                frames.add(FrameDecoder.Frame.PRESS.toString());
+            } else if (frame.contains("TRIPLE_PRESS_ACTION")) {
+                frames.add(FrameDecoder.Frame.TRIPLE_PRESS.toString());
+            } else {
+                frames.add(FrameDecoder.Frame.UNKNOWN.toString());
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return the size of the valid frame at {@code at}, -1 if there is no valid frame there, or 0
+     * if the stream ends before that can be told
+     */
+    private static int binaryFrameAt(byte[] stream, int at) {
+        int available = stream.length - at;
+        if (available >= 2 && stream[at + 1] != WearableProtocol.VERSION) {
+            return -1;
+        }
+        if (available < WearableProtocol.HEADER_SIZE) {
+            return 0;
+        }
+        int payload = stream[at + 9] & 0xFF;
+        if (payload > WearableProtocol.MAX_PAYLOAD) {
+            return -1;
+        }
+        int size = WearableProtocol.HEADER_SIZE + payload + 1;
+        if (available < size) {
+            return 0;
+        }
+        byte crc = WearableProtocol.crc8(stream, at + 1, size - 2);
+        return crc == stream[at + size - 1] ? size : -1;
+    }
+
+    private static String describe(byte[] stream, int at) {
+        ByteBuffer frame = ByteBuffer.wrap(stream, at, stream.length - at).order(ByteOrder.LITTLE_ENDIAN);
+        int type = stream[at + 2] & 0xFF;
+        String name;
+        switch (type) {
+            case WearableProtocol.TYPE_PRESS:
+                name = "PRESS";
+                break;
+            case WearableProtocol.TYPE_TRIPLE_PRESS:
+                name = "TRIPLE_PRESS";
+                break;
+            case WearableProtocol.TYPE_HELLO:
+                name = "HELLO";
+                break;
+            case WearableProtocol.TYPE_ACK:
+                name = "ACK";
+                break;
+            default:
+                name = "UNKNOWN";
+                break;
+        }
+        StringBuilder out = new StringBuilder(name + "#" + (frame.getShort(at + 3) & 0xFFFF) + "@" + (frame.getInt(at + 5) & 0xFFFFFFFFL) + "[");
+        for (int i = 0; i < (stream[at + 9] & 0xFF); i++) {
+            out.append(String.format(Locale.ROOT, "%02x", stream[at + WearableProtocol.HEADER_SIZE + i] & 0xFF));
+        }
+        return out.append(']').toString();
+    }
+}
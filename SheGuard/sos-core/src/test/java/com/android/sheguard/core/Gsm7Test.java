@@ -0,0 +1,57 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class Gsm7Test {
+
+    @Test
+    public void countsBasicCharactersAsOneSeptet() {
+        assertEquals(0, Gsm7.septets(""));
+        assertEquals(11, Gsm7.septets("Hey Anna @5"));
+        assertEquals(3, Gsm7.septets("\u00E9\u00DF\u0394"));
+    }
+
+    @Test
+    public void countsExtensionCharactersAsTwoSeptets() {
+        assertEquals(2, Gsm7.septets("\u20AC"));
+        assertEquals(7, Gsm7.septets("[a]{"));
+    }
+
+    @Test
+    public void rejectsCharactersOutsideTheAlphabet() {
+        assertEquals(-1, Gsm7.septets("\u00B1100 m"));
+        assertFalse(Gsm7.isEncodable("caf\u00E7"));
+        assertTrue(Gsm7.isEncodable("https://maps.google.com/?q=51.5007,-0.1246 (~250m)"));
+    }
+
+    @Test
+    public void segmentsGsm7Text() {
+        assertEquals(1, Gsm7.segments(repeat('a', 160)));
+        assertEquals(2, Gsm7.segments(repeat('a', 161)));
+        assertEquals(2, Gsm7.segments(repeat('a', 306)));
+        assertEquals(3, Gsm7.segments(repeat('a', 307)));
+        // Extension characters fill a segment twice as fast
+        assertEquals(1, Gsm7.segments(repeat('\u20AC', 80)));
+        assertEquals(2, Gsm7.segments(repeat('\u20AC', 81)));
+    }
+
+    @Test
+    public void segmentsUcs2Text() {
+        assertEquals(1, Gsm7.segments("\u00B1" + repeat('a', 69)));
+        assertEquals(2, Gsm7.segments("\u00B1" + repeat('a', 70)));
+        assertEquals(2, Gsm7.segments("\u00B1" + repeat('a', 133)));
+        assertEquals(3, Gsm7.segments("\u00B1" + repeat('a', 134)));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class LocationDemandTest {
+
+    private static final LocationDemand PASSIVE = new LocationDemand(LocationDemand.Accuracy.PASSIVE, 10000, 0);
+    private static final LocationDemand BALANCED = new LocationDemand(LocationDemand.Accuracy.BALANCED, 120000, 60000);
+    private static final LocationDemand HIGH = new LocationDemand(LocationDemand.Accuracy.HIGH, 5000, 2000);
+
+    @Test
+    public void nothingToMerge() {
+        assertNull(LocationDemand.merge(Collections.<LocationDemand>emptyList()));
+    }
+
+    @Test
+    public void passiveAloneKeepsItsInterval() {
+        assertEquals(PASSIVE, LocationDemand.merge(Collections.singletonList(PASSIVE)));
+    }
+
+    @Test
+    public void passiveDoesNotShortenAnActiveInterval() {
+        assertEquals(new LocationDemand(LocationDemand.Accuracy.BALANCED, 120000, 0),
+                LocationDemand.merge(Arrays.asList(PASSIVE, BALANCED)));
+    }
+
+    @Test
+    public void activeDemandsTakeTheMostDemandingOfEach() {
+        assertEquals(new LocationDemand(LocationDemand.Accuracy.HIGH, 5000, 2000),
+                LocationDemand.merge(Arrays.asList(BALANCED, HIGH)));
+    }
+}
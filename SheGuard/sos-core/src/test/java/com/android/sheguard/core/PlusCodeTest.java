@@ -0,0 +1,63 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PlusCodeTest {
+
+    // latitude, longitude, length, code; from the Open Location Code encoding test data
+    private static final Object[][] REFERENCE = {
+            {20.375, 2.775, 6, "7FG49Q00+"},
+            {20.3700625, 2.7821875, 10, "7FG49QCJ+2V"},
+            {20.3701125, 2.782234375, 11, "7FG49QCJ+2VX"},
+            {20.3701135, 2.78223535156, 13, "7FG49QCJ+2VXGJ"},
+            {47.0000625, 8.0000625, 10, "8FVC2222+22"},
+            {-41.2730625, 174.7859375, 10, "4VCPPQGP+Q9"},
+            {0.5, -179.5, 4, "62G20000+"},
+            {-89.5, -179.5, 4, "22220000+"},
+            {20.5, 2.5, 4, "7FG40000+"},
+            {-89.9999375, -179.9999375, 10, "22222222+22"},
+            {0.5, 179.5, 4, "6VGX0000+"},
+            {1, 1, 11, "6FH32222+222"},
+            {90, 1, 4, "CFX30000+"},
+            {92, 1, 4, "CFX30000+"},
+            {1, 180, 4, "62H20000+"},
+            {1, 181, 4, "62H30000+"},
+            {90, 180, 4, "C2X20000+"},
+    };
+
+    @Test
+    public void matchesReferenceVectors() {
+        for (Object[] vector : REFERENCE) {
+            double latitude = ((Number) vector[0]).doubleValue();
+            double longitude = ((Number) vector[1]).doubleValue();
+            int length = (Integer) vector[2];
+            assertEquals(latitude + "," + longitude + " @" + length, vector[3], PlusCode.encode(latitude, longitude, length));
+        }
+    }
+
+    @Test
+    public void coordinatesOnCellEdgesStayInTheirCell() {
+        // Each of these sits exactly on a grid line; a float sum nudges it into the cell below
+        assertEquals("7FG49QCJ+2VG", PlusCode.encode(20.3700625, 2.7821875, 11));
+        assertEquals("7FG49QCJ+2VGCCCC", PlusCode.encode(20.3700625, 2.7821875, 15));
+        assertEquals("7FG49QGG+22", PlusCode.encode(20.375, 2.775, 10));
+        assertEquals("6JC7Q9R4+QR", PlusCode.encode(-1.208087, 65.357, 10));
+        assertEquals("2H5J79FW+H2C", PlusCode.encode(-86.726054, 52.395, 11));
+    }
+
+    @Test
+    public void wrapsLongitudeWithoutMovingTheCell() {
+        assertEquals("527JV8RH+Q6", PlusCode.encode(-24.108118, 192.328, 10));
+        assertEquals("467RPQ3G+2R6", PlusCode.encode(-44.297464, 276.777, 11));
+        assertEquals(PlusCode.encode(1, 1, 11), PlusCode.encode(1, 361, 11));
+        assertEquals(PlusCode.encode(1, 1, 11), PlusCode.encode(1, -359, 11));
+    }
+
+    @Test
+    public void clipsLatitude() {
+        assertEquals(PlusCode.encode(-90, 1, 10), PlusCode.encode(-91, 1, 10));
+        assertEquals(PlusCode.encode(90, 1, 10), PlusCode.encode(95, 1, 10));
+    }
+}
@@ -0,0 +1,313 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.sheguard.model.ContactModel;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link PushFanout} against a local stand-in for the FCM v1 send endpoint, which counts
+ * the messages it is asked to deliver.
+ */
+public class PushFanoutTest {
+
+    private static final Gson GSON = new Gson();
+    private static final String DEAD_TOKEN = "token-dead";
+    private static final String FAILING_TOKEN = "token-failing";
+    private static final String FAILING_TOPIC = "sos_failing";
+
+    private final List<ContactModel> contacts = new CopyOnWriteArrayList<>();
+    private final Map<String, String> accounts = new HashMap<>();
+    private final List<JsonObject> received = new CopyOnWriteArrayList<>();
+    private final Set<String> members = new HashSet<>();
+    private String topic = "sos_3f9c2a7be41d4c08a6e5d1b2c7f80e93";
+    private HttpServer server;
+    private ExecutorService pool;
+    private PushFanout fanout;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/projects/test/messages:send", this::handle);
+        server.start();
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/projects/test/messages:send";
+
+        pool = Executors.newFixedThreadPool(4);
+        fanout = new PushFanout(() -> new ArrayList<>(contacts),
+                phone -> CompletableFuture.completedFuture(accounts.get(phone)),
+                (token, title, message) -> CompletableFuture.supplyAsync(() -> post(endpoint, "token", token, title, message), pool),
+                new PushFanout.Topics() {
+                    @Override
+                    public String currentTopic() {
+                        return topic;
+                    }
+
+                    @Override
+                    public Set<String> members(String topic) {
+                        return new HashSet<>(members);
+                    }
+                },
+                (topic, title, message) -> CompletableFuture.supplyAsync(() -> post(endpoint, "topic", topic, title, message), pool));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void sendsOnePushPerContactToTheirToken() {
+        for (int i = 0; i < 5; i++) {
+            addContact("+88017000000" + i, "token-" + i);
+        }
+
+        List<CompletableFuture<PushResult>> sends = new ArrayList<>();
+        for (ContactModel contact : contacts) {
+            sends.add(fanout.send(contact.getPhone(), "SOS", "My location: geo:23.8103,90.4125"));
+        }
+        for (CompletableFuture<PushResult> send : sends) {
+            assertEquals(PushResult.ACCEPTED, send.join());
+        }
+
+        assertEquals(5, received.size());
+        List<String> tokens = new ArrayList<>();
+        for (JsonObject body : received) {
+            JsonObject message = body.getAsJsonObject("message");
+            assertFalse(message.has("topic"));
+            tokens.add(message.get("token").getAsString());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(tokens.contains("token-" + i));
+        }
+    }
+
+    @Test
+    public void removedContactGetsNothing() {
+        addContact("+8801700000001", "token-1");
+        addContact("+8801700000002", "token-2");
+        contacts.remove(1);
+
+        assertEquals(PushResult.NOT_TRUSTED, fanout.send("+8801700000002", "SOS", "help").join());
+        assertEquals(0, received.size());
+    }
+
+    @Test
+    public void contactRemovedDuringTokenLookupGetsNothing() {
+        addContact("+8801700000001", "token-1");
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        PushFanout slow = new PushFanout(() -> new ArrayList<>(contacts), phone -> lookup,
+                (token, title, message) -> CompletableFuture.completedFuture(PushResult.ACCEPTED));
+
+        CompletableFuture<PushResult> send = slow.send("+8801700000001", "SOS", "help");
+        contacts.clear();
+        lookup.complete("token-1");
+
+        assertEquals(PushResult.NOT_TRUSTED, send.join());
+    }
+
+    @Test
+    public void contactWithoutAccountIsNotSentTo() {
+        contacts.add(new ContactModel("No app", "+8801700000009"));
+
+        assertEquals(PushResult.NO_ACCOUNT, fanout.send("+8801700000009", "SOS", "help").join());
+        assertEquals(0, received.size());
+    }
+
+    @Test
+    public void failedLookupIsNotMistakenForNoAccount() {
+        contacts.add(new ContactModel("Offline", "+8801700000008"));
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        lookup.completeExceptionally(new IOException("unavailable"));
+        PushFanout failing = new PushFanout(() -> new ArrayList<>(contacts), phone -> lookup,
+                (token, title, message) -> CompletableFuture.completedFuture(PushResult.ACCEPTED));
+
+        assertEquals(PushResult.LOOKUP_FAILED, failing.send("+8801700000008", "SOS", "help").join());
+    }
+
+    @Test
+    public void reportsUnregisteredAndFailedTokens() {
+        addContact("+8801700000001", DEAD_TOKEN);
+        addContact("+8801700000002", FAILING_TOKEN);
+
+        assertEquals(PushResult.UNREGISTERED, fanout.send("+8801700000001", "SOS", "help").join());
+        assertEquals(PushResult.FAILED, fanout.send("+8801700000002", "SOS", "help").join());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void publishesOnceToTheTopicForContactsWhoJoined() {
+        List<String> phones = addContacts(5);
+        members.addAll(phones.subList(0, 3));
+
+        Map<String, PushResult> results = fanout.sendAll(phones, "SOS", "help").join();
+
+        for (String phone : phones) {
+            assertEquals(PushResult.ACCEPTED, results.get(phone));
+        }
+        assertEquals(3, received.size());
+        assertEquals(1, count("topic"));
+        assertEquals(2, count("token"));
+    }
+
+    @Test
+    public void failedTopicPublishFallsBackToTokens() {
+        List<String> phones = addContacts(3);
+        members.addAll(phones);
+        topic = FAILING_TOPIC;
+
+        Map<String, PushResult> results = fanout.sendAll(phones, "SOS", "help").join();
+
+        for (String phone : phones) {
+            assertEquals(PushResult.ACCEPTED, results.get(phone));
+        }
+        assertEquals(1, count("topic"));
+        assertEquals(3, count("token"));
+    }
+
+    @Test
+    public void topicIsNotUsedWhileARemovedContactIsStillOnIt() {
+        List<String> phones = addContacts(3);
+        members.addAll(phones);
+        contacts.remove(2);
+
+        Map<String, PushResult> results = fanout.sendAll(phones, "SOS", "help").join();
+
+        assertEquals(PushResult.NOT_TRUSTED, results.get(phones.get(2)));
+        assertEquals(0, count("topic"));
+        assertEquals(2, count("token"));
+    }
+
+    @Test
+    public void topicIsNotUsedWhenItWouldReachContactsOutsideTheAlert() {
+        List<String> phones = addContacts(3);
+        members.addAll(phones);
+
+        fanout.sendAll(phones.subList(0, 2), "SOS", "help").join();
+
+        assertEquals(0, count("topic"));
+        assertEquals(2, count("token"));
+    }
+
+    private List<String> addContacts(int n) {
+        List<String> phones = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            addContact("+88017000000" + i, "token-" + i);
+            phones.add("+88017000000" + i);
+        }
+        return phones;
+    }
+
+    private int count(String target) {
+        int n = 0;
+        for (JsonObject body : received) {
+            if (body.getAsJsonObject("message").has(target)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void addContact(String phone, String token) {
+        contacts.add(new ContactModel("Contact " + phone, phone));
+        accounts.put(phone, token);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonObject body;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            body = GSON.fromJson(reader, JsonObject.class);
+        }
+        received.add(body);
+
+        JsonObject message = body.getAsJsonObject("message");
+        String to = message.has("token") ? message.get("token").getAsString() : message.get("topic").getAsString();
+        int code;
+        String response;
+        if (DEAD_TOKEN.equals(to)) {
+            code = 404;
+            response = "{\"error\":{\"code\":404,\"status\":\"NOT_FOUND\",\"details\":[{\"errorCode\":\"UNREGISTERED\"}]}}";
+        } else if (FAILING_TOKEN.equals(to) || FAILING_TOPIC.equals(to)) {
+            code = 500;
+            response = "{\"error\":{\"code\":500,\"status\":\"INTERNAL\"}}";
+        } else {
+            code = 200;
+            response = "{\"name\":\"projects/test/messages/" + received.size() + "\"}";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static PushResult post(String endpoint, String target, String to, String title, String message) {
+        JsonObject notification = new JsonObject();
+        notification.addProperty("title", title);
+        notification.addProperty("body", message);
+        JsonObject inner = new JsonObject();
+        inner.addProperty(target, to);
+        inner.add("notification", notification);
+        inner.add("data", notification.deepCopy());
+        JsonObject body = new JsonObject();
+        body.add("message", inner);
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(5));
+            connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(5));
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(GSON.toJson(body).getBytes(StandardCharsets.UTF_8));
+            }
+
+            int code = connection.getResponseCode();
+            if (code / 100 == 2) {
+                return PushResult.ACCEPTED;
+            }
+            String error;
+            try (Reader reader = new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8)) {
+                error = GSON.fromJson(reader, JsonObject.class).toString();
+            }
+            return code == 404 && error.contains("UNREGISTERED") ? PushResult.UNREGISTERED : PushResult.FAILED;
+        } catch (IOException e) {
+            return PushResult.FAILED;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays the shake corpus through the recognizer ShakeMonitor runs, and fails once it gets more
+ * traces wrong than allowed. {@code shakeCorpusReport} prints the per-trace detail.
+ */
+public class ShakeCorpusTest {
+
+    // Raise these only with a reason; the corpus is what a threshold change is measured against
+    private static final int MAX_FALSE_NEGATIVES = 0;
+    private static final int MAX_FALSE_POSITIVES = 0;
+
+    private static List<ShakeCorpus.Trace> corpus;
+
+    @BeforeClass
+    public static void loadCorpus() throws IOException {
+        corpus = ShakeCorpus.load();
+    }
+
+    @Test
+    public void corpusHasBothKinds() {
+        int shakes = 0;
+        for (ShakeCorpus.Trace trace : corpus) {
+            if (trace.label.equals("shake")) {
+                shakes++;
+            }
+        }
+        assertTrue(shakes > 0);
+        assertTrue(corpus.size() > shakes);
+    }
+
+    @Test
+    public void shakeRecognizerStaysWithinThresholds() {
+        ShakeRecognizer recognizer = new ShakeRecognizer();
+        assertWithinThresholds(new ShakeCorpusReport.Recognizer() {
+            @Override
+            public boolean onSample(float x, float y, float z, long timeMs) {
+                return recognizer.onSample(x, y, z, timeMs);
+            }
+
+            @Override
+            public void reset() {
+                recognizer.reset();
+            }
+        });
+    }
+
+    @Test
+    public void shakeRecognizerBehindMotionGateStaysWithinThresholds() {
+        // ShakeMonitor's idle tier, with a batch left in the FIFO for as long as it may be
+        assertWithinThresholds(new ShakeCorpusReport.Tiered(200, 500));
+    }
+
+    private static void assertWithinThresholds(ShakeCorpusReport.Recognizer recognizer) {
+        List<String> falseNegatives = new ArrayList<>();
+        List<String> falsePositives = new ArrayList<>();
+        for (ShakeCorpus.Trace trace : corpus) {
+            int detections = ShakeCorpusReport.replay(trace, recognizer);
+            if (trace.label.equals("shake") && detections == 0) {
+                falseNegatives.add(trace.name);
+            } else if (!trace.label.equals("shake") && detections > 0) {
+                falsePositives.add(trace.name);
+            }
+        }
+        assertTrue("missed " + falseNegatives, falseNegatives.size() <= MAX_FALSE_NEGATIVES);
+        assertTrue("fired on " + falsePositives, falsePositives.size() <= MAX_FALSE_POSITIVES);
+    }
+}
@@ -0,0 +1,240 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.sheguard.core.port.AlertGateway;
+import com.android.sheguard.core.port.Clock;
+import com.android.sheguard.core.port.ContactSource;
+import com.android.sheguard.core.port.DeviceActions;
+import com.android.sheguard.core.port.LocationSource;
+import com.android.sheguard.core.port.SosSettings;
+import com.android.sheguard.model.ContactModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class SosCoordinatorTest {
+
+    private static final GeoFix FIX = new GeoFix(23.810331, 90.412521, 400f, 0);
+
+    private final StubPorts ports = new StubPorts();
+    private ScheduledThreadPoolExecutor executor;
+    private SosCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(2);
+        coordinator = new SosCoordinator(executor, Clock.SYSTEM, ports, ports, ports, ports, ports,
+                new SosMessageFormatter("Hey %s, my location: %s", "My location: %s"));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sendsCarryTheirOwnSessionId() {
+        SosCoordinator.Session first = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(first);
+        first.done().join();
+        SosCoordinator.Session second = coordinator.trigger(SosTrigger.SHAKE);
+        assertNotNull(second);
+        second.done().join();
+
+        assertEquals(Arrays.asList(first.getId(), first.getId(), first.getId(), second.getId(), second.getId(), second.getId()),
+                ports.sessionIds);
+    }
+
+    @Test
+    public void updatesCarryTheirSessionId() throws Exception {
+        coordinator.setProgressivePolicy(new ProgressivePolicy(250, 0.5f, 0, 25f, 5, 2, 60000));
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+        session.done().join();
+        ports.sessionIds.clear();
+
+        ports.pushes = new CountDownLatch(1);
+        ports.fixes.get(5, TimeUnit.SECONDS).accept(new GeoFix(23.810331, 90.412521, 10f, 0));
+        assertTrue(ports.pushes.await(5, TimeUnit.SECONDS));
+        coordinator.stop();
+
+        assertNull(coordinator.current());
+        assertEquals(Arrays.asList(session.getId(), session.getId(), session.getId()), ports.sessionIds);
+    }
+
+    @Test
+    public void textsOnlyTheFirstUpdates() throws Exception {
+        coordinator.setProgressivePolicy(new ProgressivePolicy(250, 0.5f, 0, 1f, 5, 2, 60000));
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+        session.done().join();
+
+        float[] accuracies = {100f, 40f, 15f, 5f};
+        int[] textsAfter = {2, 4, 4, 4};
+        for (int i = 0; i < accuracies.length; i++) {
+            ports.pushes = new CountDownLatch(1);
+            ports.fixes.get(5, TimeUnit.SECONDS).accept(new GeoFix(23.810331, 90.412521, accuracies[i], 0));
+            assertTrue(ports.pushes.await(5, TimeUnit.SECONDS));
+            assertEquals("texts after update " + (i + 1), 2 + textsAfter[i], ports.texts.get());
+        }
+    }
+
+    @Test
+    public void failedTextIsNotReroutedWhenItsPushWasAccepted() {
+        ports.smsFailsFor = "01700000001";
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+        session.done().join();
+
+        assertEquals(Collections.singletonList(Arrays.asList("01700000001", "01700000002")), ports.pushedTo);
+    }
+
+    @Test
+    public void failedTextIsReroutedWhenItsPushFailed() {
+        ports.smsFailsFor = "01700000001";
+        ports.pushResult.put("01700000001", PushResult.NO_ACCOUNT);
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+        session.done().join();
+
+        assertEquals(Arrays.asList(Arrays.asList("01700000001", "01700000002"), Collections.singletonList("01700000001")),
+                ports.pushedTo);
+    }
+
+    @Test
+    public void failedTextIsReroutedWhenPushIsOff() {
+        ports.smsFailsFor = "01700000002";
+        ports.pushEnabled = false;
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+        session.done().join();
+
+        assertEquals(Collections.singletonList(Collections.singletonList("01700000002")), ports.pushedTo);
+    }
+
+    @Test
+    public void stopBeforeDispatchStartsNoUpdates() throws Exception {
+        coordinator.setProgressivePolicy(new ProgressivePolicy(5000, 0.5f, 0, 25f, 5, 2, 60000));
+        ports.firstFix = new CompletableFuture<>();
+        SosCoordinator.Session session = coordinator.trigger(SosTrigger.BUTTON);
+        assertNotNull(session);
+
+        coordinator.stop();
+        ports.firstFix.complete(FIX);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(0, ports.subscriptions.get());
+    }
+
+    private static class StubPorts implements SosSettings, ContactSource, LocationSource, AlertGateway, DeviceActions {
+
+        final List<String> sessionIds = new CopyOnWriteArrayList<>();
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final AtomicInteger texts = new AtomicInteger();
+        volatile CompletableFuture<GeoFix> firstFix = CompletableFuture.completedFuture(FIX);
+        final CompletableFuture<Consumer<GeoFix>> fixes = new CompletableFuture<>();
+        volatile CountDownLatch pushes = new CountDownLatch(0);
+        final List<List<String>> pushedTo = new CopyOnWriteArrayList<>();
+        final Map<String, PushResult> pushResult = new HashMap<>();
+        volatile String smsFailsFor;
+        volatile boolean pushEnabled = true;
+
+        @Override
+        public boolean isCallEmergencyEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isSirenEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isSmsEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isPushEnabled() {
+            return pushEnabled;
+        }
+
+        @Override
+        public String getSenderName() {
+            return "Test";
+        }
+
+        @Override
+        public List<ContactModel> loadContacts() {
+            return Arrays.asList(new ContactModel("Anna", "01700000001"), new ContactModel("Ben", "01700000002"));
+        }
+
+        @Override
+        public CompletableFuture<GeoFix> currentFix() {
+            return firstFix;
+        }
+
+        @Override
+        public CompletableFuture<GeoFix> bestAvailableFix() {
+            return firstFix;
+        }
+
+        @Override
+        public Runnable subscribeFixes(Consumer<GeoFix> listener) {
+            subscriptions.incrementAndGet();
+            fixes.complete(listener);
+            return () -> {
+            };
+        }
+
+        @Override
+        public CompletableFuture<Boolean> sendSms(String sessionId, ContactModel contact, String message) {
+            sessionIds.add(sessionId);
+            texts.incrementAndGet();
+            return CompletableFuture.completedFuture(!contact.getPhone().equals(smsFailsFor));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, PushResult>> sendPush(String sessionId, List<ContactModel> contacts, String title, String message) {
+            sessionIds.add(sessionId);
+            List<String> phones = new ArrayList<>();
+            Map<String, PushResult> results = new HashMap<>();
+            for (ContactModel contact : contacts) {
+                phones.add(contact.getPhone());
+                PushResult result = pushResult.get(contact.getPhone());
+                results.put(contact.getPhone(), result != null ? result : PushResult.ACCEPTED);
+            }
+            pushedTo.add(phones);
+            pushes.countDown();
+            return CompletableFuture.completedFuture(results);
+        }
+
+        @Override
+        public void callEmergency() {
+        }
+
+        @Override
+        public void playSiren() {
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+public class SosMessageFormatterTest {
+
+    private static final long NOW = 10_000_000L;
+
+    private final SosMessageFormatter formatter = new SosMessageFormatter(
+            "Hey %s,\nI'm in Danger!\nMy location: %s", "I'm in Danger! My location: %s");
+
+    @Test
+    public void updateFitsOneGsm7Segment() {
+        formatter.setUpdateTemplate("Updated location: %s");
+        GeoFix fix = new GeoFix(-33.856784123, 151.215297456, 250f, NOW - 5 * 60000);
+
+        String update = formatter.update(fix, NOW);
+
+        assertEquals("Updated location: https://maps.google.com/?q=-33.86,151.22 (~250m, 5min old)", update);
+        assertTrue(Gsm7.isEncodable(update));
+        assertEquals(1, Gsm7.segments(update));
+    }
+
+    @Test
+    public void updateFallsBackToShorterForms() {
+        formatter.setUpdateTemplate("Live location from your emergency contact, sent as they move; "
+                + "open it on a map or copy it into any navigation app to follow them: %s");
+        GeoFix fix = new GeoFix(-33.856784123, 151.215297456, 2f, NOW);
+
+        String update = formatter.update(fix, NOW);
+
+        assertTrue(update.endsWith(": geo:-33.8568,151.2153"));
+        assertEquals(1, Gsm7.segments(update));
+    }
+
+    @Test
+    public void stampsSmsWithTheInjectedWallClock() {
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"), () -> 9 * 3600_000L + 30 * 60_000L);
+        GeoFix fix = new GeoFix(51.5007, -0.1246, 8f, NOW - 2 * 60000);
+
+        String sms = formatter.sms("Anna", fix, NOW);
+
+        assertEquals("Hey Anna,\nI'm in Danger!\nMy location: https://maps.google.com/?q=51.5007,-0.1246 (2min old) @9:28", sms);
+    }
+}
@@ -0,0 +1,152 @@
+package com.android.sheguard.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes rings with {@link TraceWriter} and reads them back with {@link TraceReader}.
+ */
+public class TraceRingTest {
+
+    private static final int BLOCK_COUNT = 4;
+    private static final long PERIOD_NANOS = 20000000L;
+    // Axes are stored in 1/100 m/s^2
+    private static final float DELTA = 0.006f;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("trace", ".sgt");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void samplesComeBackAsRecorded() throws IOException {
+        try (TraceWriter writer = new TraceWriter(file, BLOCK_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                record(writer, i);
+            }
+        }
+
+        List<float[]> samples = readFile();
+
+        assertEquals(100, samples.size());
+        for (int i = 0; i < 100; i++) {
+            assertSample(i, samples.get(i));
+        }
+    }
+
+    @Test
+    public void oldestBlocksAreEvictedOnceTheRingIsFull() throws IOException {
+        int recorded = 0;
+        try (TraceWriter writer = new TraceWriter(file, BLOCK_COUNT)) {
+            // Several laps' worth
+            while (file.length() < (long) BLOCK_COUNT * TraceWriter.BLOCK_SIZE || recorded < 10000) {
+                record(writer, recorded++);
+            }
+        }
+        assertEquals((long) BLOCK_COUNT * TraceWriter.BLOCK_SIZE, file.length());
+
+        List<float[]> samples = readFile();
+
+        // The newest samples survive, oldest first and without gaps; the first ones are gone
+        int first = index(samples.get(0));
+        assertTrue(first > 0);
+        assertEquals(recorded - first, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertSample(first + i, samples.get(i));
+        }
+    }
+
+    @Test
+    public void copyToKeepsTheRingInOrderAndIncludesTheOpenBlock() throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        int recorded = 0;
+        try (TraceWriter writer = new TraceWriter(file, BLOCK_COUNT)) {
+            for (; recorded < 6000; recorded++) {
+                record(writer, recorded);
+            }
+            // Not flushed yet: copyTo has to write the block being filled first
+            writer.copyTo(copy);
+        }
+
+        List<float[]> samples = new ArrayList<>();
+        TraceReader.read(copy.toByteArray(), (timeNanos, x, y, z) -> samples.add(new float[]{timeNanos / PERIOD_NANOS, x, y, z}));
+
+        assertEquals(recorded - 1, index(samples.get(samples.size() - 1)));
+        for (int i = 1; i < samples.size(); i++) {
+            assertEquals(index(samples.get(i - 1)) + 1, index(samples.get(i)));
+        }
+    }
+
+    @Test
+    public void reopenedRingContinuesAfterItsNewestBlock() throws IOException {
+        int recorded = 0;
+        try (TraceWriter writer = new TraceWriter(file, BLOCK_COUNT)) {
+            for (; recorded < 3000; recorded++) {
+                record(writer, recorded);
+            }
+        }
+        try (TraceWriter writer = new TraceWriter(file, BLOCK_COUNT)) {
+            for (; recorded < 4000; recorded++) {
+                record(writer, recorded);
+            }
+        }
+
+        List<float[]> samples = readFile();
+
+        assertEquals(recorded - 1, index(samples.get(samples.size() - 1)));
+        for (int i = 1; i < samples.size(); i++) {
+            assertTrue(index(samples.get(i - 1)) < index(samples.get(i)));
+        }
+    }
+
+    private static void record(TraceWriter writer, int i) throws IOException {
+        writer.record(i * PERIOD_NANOS, x(i), y(i), z(i));
+    }
+
+    private List<float[]> readFile() throws IOException {
+        List<float[]> samples = new ArrayList<>();
+        TraceReader.read(file, (timeNanos, x, y, z) -> samples.add(new float[]{timeNanos / PERIOD_NANOS, x, y, z}));
+        return samples;
+    }
+
+    private static int index(float[] sample) {
+        return (int) sample[0];
+    }
+
+    private static void assertSample(int i, float[] sample) {
+        assertEquals(i, index(sample));
+        assertEquals(x(i), sample[1], DELTA);
+        assertEquals(y(i), sample[2], DELTA);
+        assertEquals(z(i), sample[3], DELTA);
+    }
+
+    private static float x(int i) {
+        return (float) (3 * Math.sin(i / 7.0));
+    }
+
+    private static float y(int i) {
+        return (float) (2 * Math.cos(i / 5.0));
+    }
+
+    private static float z(int i) {
+        return 9.81f + (i % 11) / 10f;
+    }
+}